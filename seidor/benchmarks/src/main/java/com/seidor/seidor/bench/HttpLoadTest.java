@@ -0,0 +1,248 @@
+package com.seidor.seidor.bench;
+
+import com.seidor.seidor.SeidorApplication;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Closed-loop HTTP load test of the token API over H2 with a simulated database latency:
+ * 80% {@code GET /api/tokens/{token}}, 20% {@code POST /api/tokens}.
+ *
+ * <pre>
+ * mvn package exec:exec@load -Dload.args="--mode=platform"
+ * mvn -Pjava21 package exec:exec@load -Dload.args="--mode=virtual --concurrency=800"
+ * </pre>
+ */
+public final class HttpLoadTest {
+
+    private static final Pattern TOKEN = Pattern.compile("\"token\"\\s*:\\s*\"([^\"]+)\"");
+
+    private HttpLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = parse(args);
+        String mode = opts.getOrDefault("mode", "platform");
+        int concurrency = Integer.parseInt(opts.getOrDefault("concurrency", "400"));
+        Duration warmup = Duration.parse(opts.getOrDefault("warmup", "PT5S"));
+        Duration duration = Duration.parse(opts.getOrDefault("duration", "PT20S"));
+        Duration dbLatency = Duration.parse(opts.getOrDefault("db-latency", "PT0.02S"));
+        int poolSize = Integer.parseInt(opts.getOrDefault("pool-size", "30"));
+        int tomcatThreads = Integer.parseInt(opts.getOrDefault("tomcat-threads", "200"));
+        int seeded = Integer.parseInt(opts.getOrDefault("seed", "1000"));
+
+        if (mode.equals("virtual") && Runtime.version().feature() < 21) {
+            System.err.println("WARN: --mode=virtual on Java " + Runtime.version().feature()
+                    + ": spring.threads.virtual.enabled is ignored, this measures the thread pool");
+        }
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(SeidorApplication.class)
+                .initializers(ctx -> ctx.getBeanFactory().addBeanPostProcessor(new SlowDatabase(dbLatency)))
+                // command-line style so they win over application.yml and the profile
+                .run("--spring.profiles.active=" + (mode.equals("virtual") ? "virtual-threads" : ""),
+                        "--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:load;MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.hikari.maximum-pool-size=" + poolSize,
+                        "--spring.datasource.hikari.minimum-idle=" + poolSize,
+                        "--server.tomcat.threads.max=" + tomcatThreads,
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.properties.hibernate.show_sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN",
+                        "--seidor.tokens.purge.enabled=false",
+                        "--seidor.tokens.cache.max-size=0");
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            Client client = new Client("http://localhost:" + port + "/api/tokens");
+
+            String[] tokens = new String[seeded];
+            for (int i = 0; i < seeded; i++) {
+                tokens[i] = client.create("seed" + i + "@example.com").token;
+            }
+
+            run(client, tokens, concurrency, warmup);
+            Result r = run(client, tokens, concurrency, duration);
+
+            System.out.printf("mode=%s java=%d concurrency=%d db-latency=%dms pool=%d tomcat-threads=%d%n",
+                    mode, Runtime.version().feature(), concurrency, dbLatency.toMillis(), poolSize, tomcatThreads);
+            System.out.printf("requests=%d errors=%d throughput=%.1f req/s p50=%.1fms p99=%.1fms max=%.1fms%n",
+                    r.latencies.length, r.errors, r.latencies.length / (duration.toNanos() / 1e9),
+                    r.percentile(0.50), r.percentile(0.99), r.percentile(1.0));
+        } finally {
+            context.close();
+        }
+    }
+
+    private static Result run(Client client, String[] tokens, int concurrency, Duration duration) throws Exception {
+        long deadline = System.nanoTime() + duration.toNanos();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<Worker>> futures = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                futures.add(workers.submit(() -> new Worker().loop(client, tokens, deadline)));
+            }
+
+            Result total = new Result();
+            for (Future<Worker> f : futures) {
+                total.add(f.get());
+            }
+            return total;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            opts.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return opts;
+    }
+
+    private static final class Worker {
+        long[] latencies = new long[1024];
+        int count;
+        int errors;
+
+        Worker loop(Client client, String[] tokens, long deadline) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < deadline) {
+                long start = System.nanoTime();
+                Client.Response r = random.nextInt(10) < 8
+                        ? client.get(tokens[random.nextInt(tokens.length)])
+                        : client.create("load" + random.nextLong() + "@example.com");
+                if (r.ok) {
+                    if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+                    latencies[count++] = System.nanoTime() - start;
+                } else {
+                    errors++;
+                }
+            }
+            return this;
+        }
+    }
+
+    private static final class Result {
+        long[] latencies = new long[0];
+        int errors;
+
+        void add(Worker w) {
+            int from = latencies.length;
+            latencies = Arrays.copyOf(latencies, from + w.count);
+            System.arraycopy(w.latencies, 0, latencies, from, w.count);
+            errors += w.errors;
+        }
+
+        double percentile(double p) {
+            if (latencies.length == 0) return Double.NaN;
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+
+    private static final class Client {
+        private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        private final String base;
+
+        Client(String base) {
+            this.base = base;
+        }
+
+        Response get(String token) {
+            return send(HttpRequest.newBuilder(URI.create(base + "/" + token)).GET());
+        }
+
+        Response create(String mail) {
+            String body = "{\"mail\":\"" + mail + "\",\"category\":\"promo\",\"subcategory\":\"load\"}";
+            return send(HttpRequest.newBuilder(URI.create(base))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body)));
+        }
+
+        private Response send(HttpRequest.Builder request) {
+            try {
+                HttpResponse<String> r = http.send(request.timeout(Duration.ofSeconds(30)).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                Matcher m = TOKEN.matcher(r.body());
+                return new Response(r.statusCode() / 100 == 2, m.find() ? m.group(1) : null);
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+                return new Response(false, null);
+            }
+        }
+
+        record Response(boolean ok, String token) {
+        }
+    }
+
+    /** Delays every statement execution by a fixed latency, holding the pooled connection meanwhile. */
+    private static final class SlowDatabase implements BeanPostProcessor {
+        private final long sleepMillis;
+
+        SlowDatabase(Duration latency) {
+            this.sleepMillis = latency.toMillis();
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+            if (!(bean instanceof DataSource) || sleepMillis <= 0) return bean;
+            return proxy(DataSource.class, bean);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T proxy(Class<T> type, Object target) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (p, method, args) -> {
+                String name = method.getName();
+                if (name.startsWith("execute")) {
+                    Thread.sleep(sleepMillis);
+                }
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                Class<?> returns = method.getReturnType();
+                if (result != null && (returns == Connection.class || (Statement.class.isAssignableFrom(returns) && returns.isInterface()))) {
+                    return proxy(returns, result);
+                }
+                return result;
+            });
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.seidor.seidor.bench;
+
+import com.seidor.seidor.service.MailNormalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/** The previous regex-based helper against {@link MailNormalizer}, with and without its cache. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MailNormalizationBenchmark {
+
+    @Param({"plain", "base64", "untrimmed"})
+    public String input;
+
+    private String mail;
+    private MailNormalizer uncached;
+    private MailNormalizer cached;
+
+    @Setup
+    public void setup() {
+        mail = switch (input) {
+            case "plain" -> "john.doe+newsletter@example.com";
+            case "base64" -> "am9obi5kb2UrbmV3c2xldHRlckBleGFtcGxlLmNvbQ==";
+            default -> " am9obi5kb2UrbmV3c2xldHRlckBleGFtcGxlLmNvbQ== ";
+        };
+        uncached = new MailNormalizer(0);
+        cached = new MailNormalizer(1024);
+    }
+
+    /** The safeBase64 helper both services carried before MailNormalizer. */
+    @Benchmark
+    public String regexBaseline() {
+        String s = mail.trim();
+        if (!s.contains("@") && s.length() >= 16 && s.matches("^[A-Za-z0-9+/_=\\-]+$")) return s;
+        return Base64.getEncoder().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public String normalizer() {
+        return uncached.normalize(mail);
+    }
+
+    @Benchmark
+    public String normalizerCached() {
+        return cached.normalize(mail);
+    }
+}
@@ -0,0 +1,143 @@
+package com.seidor.seidor.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.seidor.seidor.config.JacksonConfig;
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.pojo.TokenRefreshResponse;
+import com.seidor.seidor.pojo.TokenResponse;
+import com.seidor.seidor.pojo.TokenSummaryResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/** Per-row HashMap bodies, as the controllers used to build them, against the response records. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseJsonBenchmark {
+
+    private static final int ROWS = 1_000;
+
+    private ObjectMapper mapper;
+    private ObjectMapper configured;
+    private UserToken row;
+    private List<UserToken> rows;
+
+    @Setup
+    public void setup() {
+        mapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        JacksonConfig config = new JacksonConfig();
+        configured = Jackson2ObjectMapperBuilder.json()
+                .modulesToInstall(config.blackbirdModule(), config.isoDateTimeModule())
+                .build();
+
+        row = new UserToken();
+        row.setId(42L);
+        row.setMailBase64("am9obi5kb2UrbmV3c2xldHRlckBleGFtcGxlLmNvbQ==");
+        row.setToken(UUID.randomUUID().toString());
+        row.setCategory("promo");
+        row.setSubcategory("black-friday");
+        row.setDateSent(LocalDateTime.now());
+
+        rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            UserToken t = new UserToken();
+            t.setId((long) i);
+            t.setToken(UUID.randomUUID().toString());
+            t.setDateSent(LocalDateTime.now().minusMinutes(i));
+            rows.add(t);
+        }
+    }
+
+    /** The map body UserTokenController#getByToken used to build. */
+    @Benchmark
+    public Map<String, Object> tokenBodyMap() {
+        return tokenBody(row);
+    }
+
+    @Benchmark
+    public byte[] tokenBodyJson() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(tokenBody(row));
+    }
+
+    @Benchmark
+    public byte[] tokenRecordJson() throws JsonProcessingException {
+        return configured.writeValueAsBytes(TokenResponse.of(row));
+    }
+
+    @Benchmark
+    public byte[] refreshRecordJson() throws JsonProcessingException {
+        return configured.writeValueAsBytes(TokenRefreshResponse.of(row, false, true));
+    }
+
+    @Benchmark
+    public byte[] tokenListMapsJson() throws JsonProcessingException {
+        List<Map<String, Object>> body = new ArrayList<>(rows.size());
+        for (UserToken t : rows) {
+            Map<String, Object> m = new HashMap<>();
+            m.put("id", t.getId());
+            m.put("token", t.getToken());
+            m.put("dateSent", t.getDateSent().toString());
+            body.add(m);
+        }
+        return mapper.writeValueAsBytes(body);
+    }
+
+    @Benchmark
+    public byte[] tokenListRecordsJson() throws JsonProcessingException {
+        return configured.writeValueAsBytes(rows.stream().map(TokenSummaryResponse::of).toList());
+    }
+
+    /** Records through the plain mapper, to separate the record shape from the mapper modules. */
+    @Benchmark
+    public byte[] tokenListRecordsReflectiveJson() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(rows.stream().map(TokenSummaryResponse::of).toList());
+    }
+
+    /** The map body UserTokenController#refresh used to build. */
+    @Benchmark
+    public byte[] refreshBodyJson() throws JsonProcessingException {
+        Map<String, Object> body = new HashMap<>();
+        body.put("id", row.getId());
+        body.put("token", row.getToken());
+        body.put("category", row.getCategory());
+        body.put("subcategory", row.getSubcategory());
+        body.put("dateSent", row.getDateSent());
+        body.put("created", false);
+        body.put("refreshed", true);
+        return mapper.writeValueAsBytes(body);
+    }
+
+    private static Map<String, Object> tokenBody(UserToken t) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("id", t.getId());
+        body.put("mailBase64", t.getMailBase64());
+        body.put("token", t.getToken());
+        body.put("category", t.getCategory());
+        body.put("subcategory", t.getSubcategory());
+        body.put("dateSent", t.getDateSent().toString());
+        return body;
+    }
+}
@@ -0,0 +1,136 @@
+package com.seidor.seidor.bench;
+
+import com.seidor.seidor.SeidorApplication;
+import com.seidor.seidor.model.User;
+import com.seidor.seidor.pojo.SubscriptionResponse;
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.pojo.TokenRequest;
+import com.seidor.seidor.pojo.UserRequest;
+import com.seidor.seidor.service.UserService;
+import com.seidor.seidor.service.UserTokenService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/** Service calls through the real Spring context over H2 in SQL Server mode. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceEndToEndBenchmark {
+
+    private static final int SEEDED = 1_000;
+
+    /** Token lookup cache size; 0 sends every findByToken to the database. */
+    @Param({"0", "10000"})
+    public int cacheSize;
+
+    /** Hibernate second-level cache for subscriptions and segment queries. */
+    @Param({"true", "false"})
+    public boolean subscriptionCache;
+
+    private ConfigurableApplicationContext context;
+    private UserTokenService tokens;
+    private UserService users;
+    private String[] seededTokens;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(SeidorApplication.class)
+                .web(WebApplicationType.NONE)
+                // command-line style so they win over application.yml
+                .run("--spring.datasource.url=jdbc:h2:mem:bench;MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.properties.hibernate.show_sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN",
+                        "--seidor.tokens.purge.enabled=false",
+                        "--seidor.tokens.cache.max-size=" + cacheSize,
+                        "--seidor.subscriptions.cache.enabled=" + subscriptionCache);
+        tokens = context.getBean(UserTokenService.class);
+        users = context.getBean(UserService.class);
+
+        seededTokens = new String[SEEDED];
+        for (int i = 0; i < SEEDED; i++) {
+            seededTokens[i] = tokens.create(tokenRequest("seed" + i + "@example.com")).getToken();
+            users.subscribe(userRequest("seed" + i + "@example.com"));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<UserToken> findByToken() {
+        return tokens.findByToken(seededTokens[ThreadLocalRandom.current().nextInt(SEEDED)]);
+    }
+
+    @Benchmark
+    public UserToken createToken() {
+        return tokens.create(tokenRequest("new" + ThreadLocalRandom.current().nextInt() + "@example.com"));
+    }
+
+    /** Existing, recent token: the common read-mostly path of refresh. */
+    @Benchmark
+    public UserTokenService.RefreshResult refreshExisting() {
+        return tokens.refreshOrCreate("seed" + ThreadLocalRandom.current().nextInt(SEEDED) + "@example.com",
+                "promo", "black-friday");
+    }
+
+    /** Already subscribed: the idempotent no-insert path. */
+    @Benchmark
+    public User subscribeExisting() {
+        return users.subscribe(userRequest("seed" + ThreadLocalRandom.current().nextInt(SEEDED) + "@example.com"));
+    }
+
+    /** Mails of a 1000-row segment: a query cache hit when the second-level cache is on. */
+    @Benchmark
+    public List<String> segmentMails() {
+        return users.findMailsByCategoryAndSubcategory("promo", "black-friday");
+    }
+
+    @Benchmark
+    public List<SubscriptionResponse> usersFirstPage() {
+        return users.findPage(null, 100);
+    }
+
+    private static TokenRequest tokenRequest(String mail) {
+        TokenRequest req = new TokenRequest();
+        req.setMailBase64(mail);
+        req.setCategory("promo");
+        req.setSubcategory("black-friday");
+        return req;
+    }
+
+    private static UserRequest userRequest(String mail) {
+        UserRequest req = new UserRequest();
+        req.setMailBase64(mail);
+        req.setCategory("promo");
+        req.setSubcategory("black-friday");
+        return req;
+    }
+}
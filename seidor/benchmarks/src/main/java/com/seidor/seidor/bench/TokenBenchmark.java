@@ -0,0 +1,75 @@
+package com.seidor.seidor.bench;
+
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.service.UserTokenService;
+import com.seidor.seidor.token.TokenSigner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/** Token value generation and verification, and the refresh result wrapper. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenBenchmark {
+
+    private static final String MAIL = "am9obi5kb2UrbmV3c2xldHRlckBleGFtcGxlLmNvbQ==";
+
+    private TokenSigner signer;
+    private String signedToken;
+    private UserToken row;
+    private LocalDateTime now;
+
+    @Setup
+    public void setup() {
+        String keys = "k1:" + Base64.getEncoder().encodeToString(new byte[32]);
+        signer = new TokenSigner(true, "k1", keys, Duration.ofDays(30), false, false);
+        now = LocalDateTime.now();
+        signedToken = signer.mint(MAIL, "promo", "black-friday", now);
+
+        row = new UserToken();
+        row.setId(1L);
+        row.setMailBase64(MAIL);
+        row.setToken(UUID.randomUUID().toString());
+        row.setCategory("promo");
+        row.setSubcategory("black-friday");
+        row.setDateSent(now);
+    }
+
+    @Benchmark
+    public String uuidToken() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public String signedMint() {
+        return signer.mint(MAIL, "promo", "black-friday", now);
+    }
+
+    @Benchmark
+    public Optional<UserToken> signedVerify() {
+        return signer.verify(signedToken);
+    }
+
+    @Benchmark
+    public UserTokenService.RefreshResult refreshResult() {
+        return new UserTokenService.RefreshResult(row, false, true);
+    }
+}
@@ -0,0 +1,22 @@
+package com.seidor.seidor.reactive;
+
+import com.seidor.seidor.config.JacksonConfig;
+import com.seidor.seidor.service.MailNormalizer;
+import com.seidor.seidor.token.TokenSigner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
+
+/**
+ * WebFlux + R2DBC variant of {@code /api/tokens}, run as its own service next to (or
+ * instead of) the servlet application over the same USERS_TOKEN table.
+ */
+@SpringBootApplication
+@Import({MailNormalizer.class, TokenSigner.class, JacksonConfig.class})
+public class ReactiveTokensApplication {
+
+	public static void main(String[] args) {
+		SpringApplication.run(ReactiveTokensApplication.class, args);
+	}
+
+}
@@ -0,0 +1,120 @@
+package com.seidor.seidor.reactive.controller;
+
+import com.seidor.seidor.pojo.MailTokenResponse;
+import com.seidor.seidor.pojo.TokenCreatedResponse;
+import com.seidor.seidor.pojo.TokenRefreshResponse;
+import com.seidor.seidor.pojo.TokenRequest;
+import com.seidor.seidor.pojo.TokenResponse;
+import com.seidor.seidor.pojo.TokenSummaryResponse;
+import com.seidor.seidor.reactive.service.ReactiveUserTokenService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+
+/**
+ * Same paths, status codes and bodies as the servlet {@code UserTokenController}, for
+ * everything but the streaming exports and segment issuance, which stay on the batch
+ * JDBC paths of the servlet app.
+ */
+@RestController
+@RequestMapping("/api/tokens")
+public class ReactiveUserTokenController {
+
+    private final ReactiveUserTokenService service;
+    private static final Logger log = LoggerFactory.getLogger(ReactiveUserTokenController.class);
+
+    public ReactiveUserTokenController(ReactiveUserTokenService service) {
+        this.service = service;
+    }
+
+    // POST /api/tokens
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<TokenCreatedResponse>> create(@Valid @RequestBody TokenRequest req) {
+
+        log.info("⟶ POST /api/tokens (create)");
+
+        return service.create(req)
+                .map(saved -> ResponseEntity.status(HttpStatus.CREATED).body(TokenCreatedResponse.of(saved)));
+    }
+
+    // GET /api/tokens?mail=...&category=...&subcategory=...
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<List<TokenSummaryResponse>>> find(
+            @RequestParam("mail") String mailBase64OrPlain,
+            @RequestParam("category") String category,
+            @RequestParam("subcategory") String subcategory
+    ) {
+        log.info("⟶ GET /api/tokens params mail={}, category={}, sub={}", mailBase64OrPlain, category, subcategory);
+
+        return service.findByMailCategorySubcategory(mailBase64OrPlain, category, subcategory)
+                .collectList()
+                .map(response -> response.isEmpty()
+                        ? ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.emptyList())
+                        : ResponseEntity.ok(response));
+    }
+
+    // POST /api/tokens/refresh
+    @PostMapping(
+            path = "/refresh",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public Mono<ResponseEntity<TokenRefreshResponse>> refreshOrCreate(@Valid @RequestBody TokenRequest req) {
+
+        log.info("⟶ POST /api/tokens/refresh for mail={}, category={}, sub={}",
+                req.getMailBase64(), req.getCategory(), req.getSubcategory());
+
+        return service.refreshOrCreate(req.getMailBase64(), req.getCategory(), req.getSubcategory())
+                .map(result -> {
+                    var status = result.created ? HttpStatus.CREATED : HttpStatus.OK;
+                    return ResponseEntity.status(status)
+                            .body(TokenRefreshResponse.of(result.tokenRow, result.created, result.refreshed));
+                });
+    }
+
+    // GET /api/tokens/{token}
+    @GetMapping(path = "/{token}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<TokenResponse>> getByToken(@PathVariable("token") String token) {
+
+        log.info("⟶ GET /api/tokens/{}", token);
+
+        return service.findByToken(token)
+                .map(t -> ResponseEntity.ok(TokenResponse.of(t)))
+                .defaultIfEmpty(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+
+    // DELETE /api/tokens/{token}
+    @DeleteMapping("/{token}")
+    public Mono<ResponseEntity<Void>> deleteByToken(@PathVariable("token") String token) {
+        log.info("⟶ DELETE /api/tokens/{}", token);
+
+        return service.deleteByToken(token)
+                .map(deleted -> deleted
+                        ? ResponseEntity.noContent().<Void>build()
+                        : ResponseEntity.status(HttpStatus.NOT_FOUND).<Void>build());
+    }
+
+    // GET /api/tokens/mails?category=...&subcategory=...
+    @GetMapping(path = "/mails", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<List<MailTokenResponse>>> getMailsAndTokensByCategoryAndSubcategory(
+            @RequestParam String category,
+            @RequestParam String subcategory
+    ) {
+        log.info("⟶ GET /api/tokens/mails category={}, sub={}", category, subcategory);
+
+        return service.findMailsAndTokensByCategoryAndSubcategory(category, subcategory)
+                .collectList()
+                .map(result -> result.isEmpty()
+                        ? ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.emptyList())
+                        : ResponseEntity.ok(result));
+    }
+}
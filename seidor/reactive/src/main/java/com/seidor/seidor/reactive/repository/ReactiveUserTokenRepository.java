@@ -0,0 +1,238 @@
+package com.seidor.seidor.reactive.repository;
+
+import com.seidor.seidor.model.LookupKey;
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.pojo.MailTokenResponse;
+import com.seidor.seidor.pojo.TokenSummaryResponse;
+import com.seidor.seidor.token.TokenCodec;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Parameters;
+import io.r2dbc.spi.Readable;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * Non-blocking access to USERS_TOKEN through R2DBC. Runs the same statements as the
+ * servlet app's JPA/JDBC repositories: seeks on token_bin and lookup_key, and keeps the
+ * single-round-trip refresh on SQL Server with a portable fallback elsewhere (H2 in tests).
+ */
+@Repository
+public class ReactiveUserTokenRepository {
+
+    private static final String COLUMNS = "id, mail_base64, token, date_sent, category, subcategory";
+
+    // same batch as UserTokenJdbcRepository.REFRESH_SQL_SERVER, with named parameters
+    private static final String REFRESH_SQL_SERVER = """
+            SET NOCOUNT ON;
+            DECLARE @id BIGINT, @sent DATETIME2, @old NVARCHAR(256);
+            SELECT TOP 1 @id = id, @sent = date_sent, @old = token
+              FROM USERS_TOKEN WITH (UPDLOCK, HOLDLOCK)
+             WHERE (lookup_key = :key OR lookup_key IS NULL)
+               AND mail_base64 = :mail AND category = :category AND subcategory = :subcategory
+             ORDER BY date_sent DESC;
+            IF @id IS NULL
+                INSERT INTO USERS_TOKEN (mail_base64, token, token_bin, date_sent, category, subcategory, lookup_key)
+                OUTPUT inserted.id, inserted.token, inserted.date_sent,
+                       CAST(1 AS BIT) AS created, CAST(1 AS BIT) AS refreshed,
+                       CAST(NULL AS NVARCHAR(256)) AS previous_token
+                VALUES (:mail, :token, :bin, :now, :category, :subcategory, :key);
+            ELSE IF @sent IS NULL OR @sent < :cutoff
+                UPDATE USERS_TOKEN SET token = :token, token_bin = :bin, date_sent = :now
+                OUTPUT inserted.id, inserted.token, inserted.date_sent,
+                       CAST(0 AS BIT) AS created, CAST(1 AS BIT) AS refreshed,
+                       deleted.token AS previous_token
+                WHERE id = @id;
+            ELSE
+                SELECT @id AS id, @old AS token, @sent AS date_sent,
+                       CAST(0 AS BIT) AS created, CAST(0 AS BIT) AS refreshed,
+                       CAST(NULL AS NVARCHAR(256)) AS previous_token;
+            """;
+
+    private final DatabaseClient client;
+    private final boolean sqlServer;
+
+    public ReactiveUserTokenRepository(DatabaseClient client, ConnectionFactory connectionFactory) {
+        this.client = client;
+        this.sqlServer = connectionFactory.getMetadata().getName().startsWith("Microsoft SQL Server");
+    }
+
+    /** Inserts the row and returns it with its generated id. */
+    public Mono<UserToken> insert(UserToken t) {
+        return client.sql("INSERT INTO USERS_TOKEN (mail_base64, token, token_bin, date_sent, category, subcategory, "
+                        + "lookup_key) VALUES (:mail, :token, :bin, :now, :category, :subcategory, :key)")
+                .filter(s -> s.returnGeneratedValues("id"))
+                .bind("mail", t.getMailBase64())
+                .bind("token", t.getToken())
+                .bind("bin", binary(t.getTokenBin()))
+                .bind("now", t.getDateSent())
+                .bind("category", t.getCategory())
+                .bind("subcategory", t.getSubcategory())
+                .bind("key", LookupKey.of(t.getMailBase64(), t.getCategory(), t.getSubcategory()))
+                .map(row -> row.get("id", Long.class))
+                .one()
+                .map(id -> {
+                    t.setId(id);
+                    return t;
+                });
+    }
+
+    /** Seeks on token_bin when the value has a binary form, else (or if not backfilled) on token. */
+    public Mono<UserToken> findByToken(String token) {
+        Mono<UserToken> byValue = client.sql("SELECT " + COLUMNS + " FROM USERS_TOKEN WHERE token = :token")
+                .bind("token", token)
+                .map(ReactiveUserTokenRepository::tokenRow)
+                .one();
+
+        byte[] bin = TokenCodec.toBinary(token);
+        if (bin == null) {
+            return byValue;
+        }
+        return client.sql("SELECT " + COLUMNS + " FROM USERS_TOKEN WHERE token_bin = :bin AND token = :token")
+                .bind("bin", bin)
+                .bind("token", token)
+                .map(ReactiveUserTokenRepository::tokenRow)
+                .one()
+                .switchIfEmpty(byValue);
+    }
+
+    /** Reads only the columns of the response row. */
+    public Flux<TokenSummaryResponse> findSummariesByMailBase64AndCategoryAndSubcategory(String mailBase64,
+                                                                                        String category,
+                                                                                        String subcategory) {
+        return client.sql("SELECT id, token, date_sent FROM USERS_TOKEN WHERE (lookup_key = :key OR lookup_key IS NULL) "
+                        + "AND mail_base64 = :mail AND category = :category AND subcategory = :subcategory")
+                .bind("key", LookupKey.of(mailBase64, category, subcategory))
+                .bind("mail", mailBase64)
+                .bind("category", category)
+                .bind("subcategory", subcategory)
+                .map(row -> new TokenSummaryResponse(row.get("id", Long.class), row.get("token", String.class),
+                        row.get("date_sent", LocalDateTime.class)))
+                .all();
+    }
+
+    public Flux<MailTokenResponse> findMailsAndTokensByCategoryAndSubcategory(String category, String subcategory) {
+        return client.sql("SELECT mail_base64, token FROM USERS_TOKEN WHERE category = :category AND subcategory = :subcategory")
+                .bind("category", category)
+                .bind("subcategory", subcategory)
+                .map(row -> new MailTokenResponse(row.get("mail_base64", String.class), row.get("token", String.class)))
+                .all();
+    }
+
+    /** Same lookup order as {@link #findByToken}; returns the number of rows deleted. */
+    public Mono<Long> deleteByToken(String token) {
+        Mono<Long> byValue = client.sql("DELETE FROM USERS_TOKEN WHERE token = :token")
+                .bind("token", token)
+                .fetch()
+                .rowsUpdated();
+
+        byte[] bin = TokenCodec.toBinary(token);
+        if (bin == null) {
+            return byValue;
+        }
+        return client.sql("DELETE FROM USERS_TOKEN WHERE token_bin = :bin AND token = :token")
+                .bind("bin", bin)
+                .bind("token", token)
+                .fetch()
+                .rowsUpdated()
+                .flatMap(n -> n > 0 ? Mono.just(n) : byValue);
+    }
+
+    /**
+     * Returns the newest token of the triple, inserting one if none exists or rotating
+     * its value (and date) if it was sent before {@code cutoff}. Must run in a transaction.
+     */
+    public Mono<RefreshRow> refreshOrCreate(String mailBase64, String category, String subcategory,
+                                            String newToken, LocalDateTime now, LocalDateTime cutoff) {
+        return sqlServer
+                ? refreshSqlServer(mailBase64, category, subcategory, newToken, now, cutoff)
+                : refreshPortable(mailBase64, category, subcategory, newToken, now, cutoff);
+    }
+
+    private Mono<RefreshRow> refreshSqlServer(String mailBase64, String category, String subcategory,
+                                              String newToken, LocalDateTime now, LocalDateTime cutoff) {
+        return client.sql(REFRESH_SQL_SERVER)
+                .bind("key", LookupKey.of(mailBase64, category, subcategory))
+                .bind("mail", mailBase64)
+                .bind("category", category)
+                .bind("subcategory", subcategory)
+                .bind("token", newToken)
+                .bind("bin", binary(TokenCodec.toBinary(newToken)))
+                .bind("now", now)
+                .bind("cutoff", cutoff)
+                .map(row -> new RefreshRow(
+                        tokenRow(row.get("id", Long.class), mailBase64, row.get("token", String.class),
+                                row.get("date_sent", LocalDateTime.class), category, subcategory),
+                        Boolean.TRUE.equals(row.get("created", Boolean.class)),
+                        Boolean.TRUE.equals(row.get("refreshed", Boolean.class)),
+                        row.get("previous_token", String.class)))
+                .one();
+    }
+
+    private Mono<RefreshRow> refreshPortable(String mailBase64, String category, String subcategory,
+                                             String newToken, LocalDateTime now, LocalDateTime cutoff) {
+        Mono<RefreshRow> insert = Mono.defer(() -> {
+            UserToken t = tokenRow(null, mailBase64, newToken, now, category, subcategory);
+            return insert(t).map(saved -> new RefreshRow(saved, true, true, null));
+        });
+
+        return client.sql("SELECT " + COLUMNS + " FROM USERS_TOKEN WHERE (lookup_key = :key OR lookup_key IS NULL) "
+                        + "AND mail_base64 = :mail AND category = :category AND subcategory = :subcategory "
+                        + "ORDER BY date_sent DESC FETCH FIRST 1 ROWS ONLY FOR UPDATE")
+                .bind("key", LookupKey.of(mailBase64, category, subcategory))
+                .bind("mail", mailBase64)
+                .bind("category", category)
+                .bind("subcategory", subcategory)
+                .map(ReactiveUserTokenRepository::tokenRow)
+                .one()
+                .flatMap(existing -> {
+                    if (existing.getDateSent() != null && !existing.getDateSent().isBefore(cutoff)) {
+                        return Mono.just(new RefreshRow(existing, false, false, null));
+                    }
+                    String previous = existing.getToken();
+                    return client.sql("UPDATE USERS_TOKEN SET token = :token, token_bin = :bin, date_sent = :now "
+                                    + "WHERE id = :id")
+                            .bind("token", newToken)
+                            .bind("bin", binary(TokenCodec.toBinary(newToken)))
+                            .bind("now", now)
+                            .bind("id", existing.getId())
+                            .fetch()
+                            .rowsUpdated()
+                            .map(n -> {
+                                existing.setToken(newToken);
+                                existing.setDateSent(now);
+                                return new RefreshRow(existing, false, true, previous);
+                            });
+                })
+                .switchIfEmpty(insert);
+    }
+
+    private static Object binary(byte[] bin) {
+        return bin == null ? Parameters.in(byte[].class) : bin;
+    }
+
+    private static UserToken tokenRow(Readable row) {
+        return tokenRow(row.get("id", Long.class), row.get("mail_base64", String.class), row.get("token", String.class),
+                row.get("date_sent", LocalDateTime.class), row.get("category", String.class),
+                row.get("subcategory", String.class));
+    }
+
+    private static UserToken tokenRow(Long id, String mailBase64, String token, LocalDateTime dateSent,
+                                      String category, String subcategory) {
+        UserToken t = new UserToken();
+        t.setId(id);
+        t.setMailBase64(mailBase64);
+        t.setToken(token);
+        t.setDateSent(dateSent);
+        t.setCategory(category);
+        t.setSubcategory(subcategory);
+        return t;
+    }
+
+    /** Outcome of {@link #refreshOrCreate}; {@code previousToken} is set only when the value was rotated. */
+    public record RefreshRow(UserToken tokenRow, boolean created, boolean refreshed, String previousToken) {
+    }
+}
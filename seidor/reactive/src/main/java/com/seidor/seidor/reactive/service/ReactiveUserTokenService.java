@@ -0,0 +1,119 @@
+package com.seidor.seidor.reactive.service;
+
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.pojo.MailTokenResponse;
+import com.seidor.seidor.pojo.TokenRequest;
+import com.seidor.seidor.pojo.TokenSummaryResponse;
+import com.seidor.seidor.reactive.repository.ReactiveUserTokenRepository;
+import com.seidor.seidor.service.MailNormalizer;
+import com.seidor.seidor.token.TokenSigner;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Reactive counterpart of {@code UserTokenService} for the single-row endpoints: same
+ * mail normalization, token minting, 48h refresh rule and signed-token handling.
+ */
+@Service
+public class ReactiveUserTokenService {
+
+    private final ReactiveUserTokenRepository repo;
+    private final TokenSigner signer;
+    private final MailNormalizer mails;
+
+    public ReactiveUserTokenService(ReactiveUserTokenRepository repo,
+                                    TokenSigner signer,
+                                    MailNormalizer mails) {
+        this.repo = repo;
+        this.signer = signer;
+        this.mails = mails;
+    }
+
+    @Transactional
+    public Mono<UserToken> create(TokenRequest req) {
+        return Mono.defer(() -> {
+            UserToken t = new UserToken();
+            LocalDateTime now = LocalDateTime.now();
+
+            String mailB64 = mails.normalize(req.getMailBase64());
+            t.setMailBase64(mailB64);
+            t.setToken(signer.mint(mailB64, req.getCategory(), req.getSubcategory(), now));
+            t.setCategory(req.getCategory());
+            t.setSubcategory(req.getSubcategory());
+            t.setDateSent(now);
+
+            return repo.insert(t);
+        });
+    }
+
+    @Transactional(readOnly = true)
+    public Flux<TokenSummaryResponse> findByMailCategorySubcategory(String mailBase64OrPlain,
+                                                                    String category,
+                                                                    String subcategory) {
+        return Flux.defer(() -> repo.findSummariesByMailBase64AndCategoryAndSubcategory(
+                mails.normalize(mailBase64OrPlain), category, subcategory));
+    }
+
+    @Transactional
+    public Mono<RefreshResult> refreshOrCreate(String mailBase64OrPlain,
+                                               String category,
+                                               String subcategory) {
+        return Mono.defer(() -> {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime cutoff = now.minusHours(48);
+
+            String mailB64 = mails.normalize(mailBase64OrPlain);
+
+            return repo.refreshOrCreate(mailB64, category, subcategory,
+                            signer.mint(mailB64, category, subcategory, now), now, cutoff)
+                    .map(row -> new RefreshResult(row.tokenRow(), row.created(), row.refreshed()));
+        });
+    }
+
+    /**
+     * Signed tokens are verified and decoded in place; only UUID tokens (and signed ones
+     * when revocation checks are on) go to the database.
+     */
+    @Transactional(readOnly = true)
+    public Mono<UserToken> findByToken(String token) {
+        return Mono.defer(() -> {
+            if (signer.isSigned(token)) {
+                Optional<UserToken> decoded = signer.verify(token);
+                if (decoded.isEmpty()) {
+                    return Mono.empty();
+                }
+                if (!signer.isRevocationChecked()) {
+                    return Mono.just(decoded.get());
+                }
+            }
+            return repo.findByToken(token);
+        });
+    }
+
+    @Transactional
+    public Mono<Boolean> deleteByToken(String token) {
+        return repo.deleteByToken(token).map(n -> n > 0);
+    }
+
+    @Transactional(readOnly = true)
+    public Flux<MailTokenResponse> findMailsAndTokensByCategoryAndSubcategory(String category, String subcategory) {
+        return repo.findMailsAndTokensByCategoryAndSubcategory(category, subcategory);
+    }
+
+    public static class RefreshResult {
+        public final UserToken tokenRow;
+        public final boolean created;
+        public final boolean refreshed;
+
+        public RefreshResult(UserToken tokenRow, boolean created, boolean refreshed) {
+            this.tokenRow = tokenRow;
+            this.created = created;
+            this.refreshed = refreshed;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.seidor.seidor.reactive.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Runs the reactive API end to end over R2DBC H2 and checks it answers like the servlet one. */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+class ReactiveUserTokenControllerTest {
+
+    private static final String MAIL = "test@test.com";
+    private static final String MAIL_B64 = "dGVzdEB0ZXN0LmNvbQ==";
+
+    @Autowired
+    private WebTestClient web;
+
+    @Autowired
+    private DatabaseClient db;
+
+    @BeforeEach
+    void clean() {
+        db.sql("DELETE FROM USERS_TOKEN").fetch().rowsUpdated().block();
+    }
+
+    @Test
+    void create_thenGetByToken_returnsRow() {
+        Map<String, Object> created = post("/api/tokens", MAIL, 201);
+
+        assertThat(created).containsKeys("id", "token").containsEntry("category", "promo")
+                .containsEntry("subcategory", "bf");
+
+        web.get().uri("/api/tokens/{token}", created.get("token")).exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.mailBase64").isEqualTo(MAIL_B64)
+                .jsonPath("$.token").isEqualTo(created.get("token"))
+                .jsonPath("$.dateSent").isNotEmpty();
+    }
+
+    @Test
+    void create_invalidBody_returns400() {
+        web.post().uri("/api/tokens").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("mail", MAIL, "category", "promo"))
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void getAndDelete_unknownToken_return404() {
+        web.get().uri("/api/tokens/{token}", "no-such-token").exchange().expectStatus().isNotFound();
+        web.delete().uri("/api/tokens/{token}", "no-such-token").exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    void delete_existingToken_returns204_andTokenIsGone() {
+        Object token = post("/api/tokens", MAIL, 201).get("token");
+
+        web.delete().uri("/api/tokens/{token}", token).exchange().expectStatus().isNoContent();
+        web.get().uri("/api/tokens/{token}", token).exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    void refresh_createsThenKeepsThenRotatesAfter48h() {
+        Map<String, Object> first = post("/api/tokens/refresh", MAIL, 201);
+        assertThat(first).containsEntry("created", true).containsEntry("refreshed", true);
+
+        Map<String, Object> second = post("/api/tokens/refresh", MAIL_B64, 200);
+        assertThat(second).containsEntry("created", false).containsEntry("refreshed", false)
+                .containsEntry("token", first.get("token")).containsEntry("id", first.get("id"));
+
+        db.sql("UPDATE USERS_TOKEN SET date_sent = :old").bind("old", LocalDateTime.now().minusHours(49))
+                .fetch().rowsUpdated().block();
+
+        Map<String, Object> third = post("/api/tokens/refresh", MAIL, 200);
+        assertThat(third).containsEntry("created", false).containsEntry("refreshed", true)
+                .containsEntry("id", first.get("id"));
+        assertThat(third.get("token")).isNotEqualTo(first.get("token"));
+
+        web.get().uri("/api/tokens/{token}", first.get("token")).exchange().expectStatus().isNotFound();
+        web.get().uri("/api/tokens/{token}", third.get("token")).exchange().expectStatus().isOk();
+    }
+
+    @Test
+    void find_byMailAndSegment_returns404ThenRows() {
+        web.get().uri("/api/tokens?mail={m}&category=promo&subcategory=bf", MAIL).exchange()
+                .expectStatus().isNotFound()
+                .expectBody().json("[]");
+
+        Object token = post("/api/tokens", MAIL, 201).get("token");
+
+        web.get().uri("/api/tokens?mail={m}&category=promo&subcategory=bf", MAIL).exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].token").isEqualTo(token);
+    }
+
+    @Test
+    void mails_bySegment_returns404ThenMailsAndTokens() {
+        web.get().uri("/api/tokens/mails?category=promo&subcategory=bf").exchange()
+                .expectStatus().isNotFound();
+
+        Object token = post("/api/tokens", MAIL, 201).get("token");
+
+        web.get().uri("/api/tokens/mails?category=promo&subcategory=bf").exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].mailBase64").isEqualTo(MAIL_B64)
+                .jsonPath("$[0].token").isEqualTo(token);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> post(String path, String mail, int status) {
+        return web.post().uri(path).contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("mail", mail, "category", "promo", "subcategory", "bf"))
+                .exchange()
+                .expectStatus().isEqualTo(status)
+                .expectBody(Map.class)
+                .returnResult()
+                .getResponseBody();
+    }
+}
@@ -0,0 +1,66 @@
+package com.seidor.seidor.reactive.service;
+
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.reactive.repository.ReactiveUserTokenRepository;
+import com.seidor.seidor.service.MailNormalizer;
+import com.seidor.seidor.token.TokenSigner;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ReactiveUserTokenServiceTest {
+
+    private static final String KEYS = "k1:" + Base64.getEncoder().encodeToString(new byte[32]);
+
+    private final ReactiveUserTokenRepository repo = mock(ReactiveUserTokenRepository.class);
+
+    @Test
+    void findByToken_signed_isDecodedWithoutTheDatabase() {
+        TokenSigner signer = new TokenSigner(true, "k1", KEYS, Duration.ofDays(30), false, false);
+        ReactiveUserTokenService service = new ReactiveUserTokenService(repo, signer, new MailNormalizer(0));
+        String token = signer.mint("bWFpbEBleGFtcGxlLmNvbQ==", "promo", "bf", LocalDateTime.now());
+
+        StepVerifier.create(service.findByToken(token))
+                .assertNext(t -> assertThat(t.getMailBase64()).isEqualTo("bWFpbEBleGFtcGxlLmNvbQ=="))
+                .verifyComplete();
+        StepVerifier.create(service.findByToken(token.substring(0, token.length() - 2) + "AA"))
+                .verifyComplete();
+        verifyNoInteractions(repo);
+    }
+
+    @Test
+    void findByToken_signedWithRevocationCheck_alsoNeedsTheRow() {
+        TokenSigner signer = new TokenSigner(true, "k1", KEYS, Duration.ofDays(30), true, false);
+        ReactiveUserTokenService service = new ReactiveUserTokenService(repo, signer, new MailNormalizer(0));
+        String token = signer.mint("bWFpbEBleGFtcGxlLmNvbQ==", "promo", "bf", LocalDateTime.now());
+        when(repo.findByToken(token)).thenReturn(Mono.empty());
+
+        StepVerifier.create(service.findByToken(token)).verifyComplete();
+        verify(repo).findByToken(token);
+    }
+
+    @Test
+    void refreshOrCreate_normalizesMail_andMapsFlags() {
+        TokenSigner signer = new TokenSigner(false, "", "", Duration.ofDays(30), false, false);
+        ReactiveUserTokenService service = new ReactiveUserTokenService(repo, signer, new MailNormalizer(0));
+        UserToken row = new UserToken();
+        when(repo.refreshOrCreate(eq("dGVzdEB0ZXN0LmNvbQ=="), eq("promo"), eq("bf"), anyString(), any(), any()))
+                .thenReturn(Mono.just(new ReactiveUserTokenRepository.RefreshRow(row, false, true, "old")));
+
+        StepVerifier.create(service.refreshOrCreate("test@test.com", "promo", "bf"))
+                .assertNext(r -> {
+                    assertThat(r.tokenRow).isSameAs(row);
+                    assertThat(r.created).isFalse();
+                    assertThat(r.refreshed).isTrue();
+                })
+                .verifyComplete();
+    }
+}
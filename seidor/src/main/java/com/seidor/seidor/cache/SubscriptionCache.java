@@ -0,0 +1,55 @@
+package com.seidor.seidor.cache;
+
+import com.seidor.seidor.model.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/** Evicts the USER_SUBSCRIPTION cache regions after writes that bypass Hibernate. */
+@Component
+public class SubscriptionCache {
+
+    public static final String ENTITY_REGION = "subscriptions";
+
+    public static final String SEGMENT_REGION = "subscription-segments";
+
+    private final Cache cache;
+
+    public SubscriptionCache(EntityManagerFactory emf) {
+        this.cache = emf.unwrap(SessionFactory.class).getCache();
+    }
+
+    public void evictSegments() {
+        run(() -> cache.evictQueryRegion(SEGMENT_REGION));
+    }
+
+    public void evict(Long id) {
+        run(() -> {
+            cache.evictEntityData(User.class, id);
+            cache.evictQueryRegion(SEGMENT_REGION);
+        });
+    }
+
+    public void evictAll() {
+        run(() -> {
+            cache.evictEntityData(User.class);
+            cache.evictQueryRegion(SEGMENT_REGION);
+        });
+    }
+
+    // evicting only before commit would let a concurrent reader re-cache the old rows
+    private static void run(Runnable eviction) {
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+        }
+    }
+}
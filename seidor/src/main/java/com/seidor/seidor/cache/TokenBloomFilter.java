@@ -0,0 +1,175 @@
+package com.seidor.seidor.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter of the token values in USERS_TOKEN. Deleted tokens stay in it until the
+ * next rebuild; until the first build completes {@link #mightContain} is always true.
+ */
+@Component
+public class TokenBloomFilter {
+
+    private final boolean enabled;
+    private final long expectedTokens;
+    private final double fpp;
+
+    private volatile Bits current;
+    private volatile Bits building;
+
+    private final Counter absent;
+    private final Counter maybe;
+
+    public TokenBloomFilter(@Value("${seidor.tokens.bloom.enabled:false}") boolean enabled,
+                            @Value("${seidor.tokens.bloom.expected-tokens:1000000}") long expectedTokens,
+                            @Value("${seidor.tokens.bloom.fpp:0.01}") double fpp,
+                            MeterRegistry registry) {
+        this.enabled = enabled;
+        this.expectedTokens = Math.max(1, expectedTokens);
+        this.fpp = fpp;
+
+        this.absent = Counter.builder("tokens.bloom.lookups").tag("result", "absent").register(registry);
+        this.maybe = Counter.builder("tokens.bloom.lookups").tag("result", "maybe").register(registry);
+        Gauge.builder("tokens.bloom.bits", this, f -> f.current == null ? 0 : f.current.bitCount)
+                .register(registry);
+        Gauge.builder("tokens.bloom.tokens", this, f -> f.current == null ? 0 : f.current.added.sum())
+                .register(registry);
+        Gauge.builder("tokens.bloom.fpp", this, f -> f.current == null ? 1 : f.current.expectedFpp())
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean mightContain(String token) {
+        Bits bits = current;
+        if (bits == null || token == null) {
+            return true;
+        }
+        boolean result = bits.mightContain(hash(token));
+        (result ? maybe : absent).increment();
+        return result;
+    }
+
+    /** Call it before the insert so no reader misses the row. */
+    public void add(String token) {
+        if (!enabled || token == null) return;
+
+        long h = hash(token);
+        // building before current: publish() writes them in the opposite order, so a
+        // racing add lands in the new filter one way or the other
+        Bits next = building;
+        Bits bits = current;
+        if (next != null) next.put(h);
+        if (bits != null && bits != next) bits.put(h);
+    }
+
+    /** From now on {@link #add} writes to the new filter as well. */
+    public Build beginRebuild(long rowCount) {
+        long capacity = Math.max(expectedTokens, rowCount + rowCount / 2);
+        Bits next = new Bits(capacity, fpp);
+        building = next;
+        return new Build(next);
+    }
+
+    public final class Build {
+        private final Bits bits;
+
+        private Build(Bits bits) {
+            this.bits = bits;
+        }
+
+        public void add(String token) {
+            bits.put(hash(token));
+        }
+
+        public void publish() {
+            current = bits;
+            if (building == bits) building = null;
+        }
+
+        public void abandon() {
+            if (building == bits) building = null;
+        }
+
+        public long bitCount() {
+            return bits.bitCount;
+        }
+
+        public int hashCount() {
+            return bits.hashes;
+        }
+    }
+
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return fmix64(h);
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    static final class Bits {
+        final long bitCount;
+        final int hashes;
+        final AtomicLongArray words;
+        final LongAdder added = new LongAdder();
+
+        Bits(long capacity, double fpp) {
+            double ln2 = Math.log(2);
+            long bits = (long) Math.ceil(-capacity * Math.log(fpp) / (ln2 * ln2));
+            int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) >>> 6));
+            this.words = new AtomicLongArray(wordCount);
+            this.bitCount = (long) wordCount << 6;
+            this.hashes = Math.max(1, (int) Math.round((double) bitCount / capacity * ln2));
+        }
+
+        // double hashing (Kirsch-Mitzenmacher): probe i is h1 + i * h2
+        void put(long hash) {
+            long h2 = fmix64(hash ^ 0x9e3779b97f4a7c15L) | 1;
+            long combined = hash;
+            for (int i = 0; i < hashes; i++, combined += h2) {
+                long bit = Long.remainderUnsigned(combined, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long w = words.get(word);
+                while ((w & mask) == 0 && !words.weakCompareAndSetVolatile(word, w, w | mask)) {
+                    w = words.get(word);
+                }
+            }
+            added.increment();
+        }
+
+        boolean mightContain(long hash) {
+            long h2 = fmix64(hash ^ 0x9e3779b97f4a7c15L) | 1;
+            long combined = hash;
+            for (int i = 0; i < hashes; i++, combined += h2) {
+                long bit = Long.remainderUnsigned(combined, bitCount);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        double expectedFpp() {
+            return Math.pow(1 - Math.exp(-hashes * (double) added.sum() / bitCount), hashes);
+        }
+    }
+}
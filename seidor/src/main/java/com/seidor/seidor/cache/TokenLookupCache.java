@@ -0,0 +1,160 @@
+package com.seidor.seidor.cache;
+
+import com.seidor.seidor.model.UserToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/** Bounded LRU of token value -> row; writers must {@link #invalidate} rotated and deleted tokens. */
+@Component
+public class TokenLookupCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // bumped on every invalidation so a slow reader can't re-insert a row it read before the write
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter expiredEvictions;
+
+    @Autowired
+    public TokenLookupCache(@Value("${seidor.tokens.cache.max-size:10000}") int maxSize,
+                            @Value("${seidor.tokens.cache.ttl:PT5M}") Duration ttl,
+                            MeterRegistry registry) {
+        this(maxSize, ttl, registry, System::nanoTime);
+    }
+
+    TokenLookupCache(int maxSize, Duration ttl, MeterRegistry registry, LongSupplier clock) {
+        this.maxSize = Math.max(0, maxSize);
+        this.ttlNanos = ttl.toNanos();
+        this.clock = clock;
+
+        this.hits = Counter.builder("tokens.cache.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("tokens.cache.requests").tag("result", "miss").register(registry);
+        this.sizeEvictions = Counter.builder("tokens.cache.evictions").tag("cause", "size").register(registry);
+        this.expiredEvictions = Counter.builder("tokens.cache.evictions").tag("cause", "expired").register(registry);
+        Gauge.builder("tokens.cache.size", this, TokenLookupCache::size).register(registry);
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    public UserToken get(String token) {
+        if (!isEnabled() || token == null) return null;
+
+        lock.lock();
+        try {
+            Entry e = entries.get(token);
+            if (e == null) {
+                misses.increment();
+                return null;
+            }
+            if (clock.getAsLong() - e.loadedAt >= ttlNanos) {
+                entries.remove(token);
+                expiredEvictions.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return e.row;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Take it before reading from the database and pass it back to {@link #put}. */
+    public long stamp() {
+        return invalidations.get();
+    }
+
+    public void put(String token, UserToken row, long stamp) {
+        if (!isEnabled() || token == null || row == null) return;
+
+        lock.lock();
+        try {
+            if (invalidations.get() != stamp) {
+                return;
+            }
+            entries.put(token, new Entry(row, clock.getAsLong()));
+            evictOverflow();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // again after commit, so readers racing with the write never repopulate the old value
+    public void invalidate(String token) {
+        if (!isEnabled() || token == null) return;
+
+        remove(token);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remove(token);
+                }
+            });
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            invalidations.incrementAndGet();
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(String token) {
+        lock.lock();
+        try {
+            invalidations.incrementAndGet();
+            entries.remove(token);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+            sizeEvictions.increment();
+        }
+    }
+
+    private record Entry(UserToken row, long loadedAt) {
+    }
+}
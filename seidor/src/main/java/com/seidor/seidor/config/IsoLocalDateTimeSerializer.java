@@ -0,0 +1,66 @@
+package com.seidor.seidor.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/** Same output as {@link DateTimeFormatter#ISO_LOCAL_DATE_TIME}, written into a char buffer. */
+public class IsoLocalDateTimeSerializer extends StdSerializer<LocalDateTime> {
+
+    public IsoLocalDateTimeSerializer() {
+        super(LocalDateTime.class);
+    }
+
+    @Override
+    public void serialize(LocalDateTime value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        int year = value.getYear();
+        if (year < 0 || year > 9999) {
+            gen.writeString(DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(value));
+            return;
+        }
+
+        char[] buf = new char[29];
+        put4(buf, 0, year);
+        buf[4] = '-';
+        put2(buf, 5, value.getMonthValue());
+        buf[7] = '-';
+        put2(buf, 8, value.getDayOfMonth());
+        buf[10] = 'T';
+        put2(buf, 11, value.getHour());
+        buf[13] = ':';
+        put2(buf, 14, value.getMinute());
+        buf[16] = ':';
+        put2(buf, 17, value.getSecond());
+
+        int len = 19;
+        int nano = value.getNano();
+        if (nano != 0) {
+            buf[len++] = '.';
+            int digits = 9;
+            while (nano % 10 == 0) {
+                nano /= 10;
+                digits--;
+            }
+            for (int i = len + digits - 1; i >= len; i--) {
+                buf[i] = (char) ('0' + nano % 10);
+                nano /= 10;
+            }
+            len += digits;
+        }
+        gen.writeString(buf, 0, len);
+    }
+
+    private static void put4(char[] buf, int at, int v) {
+        put2(buf, at, v / 100);
+        put2(buf, at + 2, v % 100);
+    }
+
+    private static void put2(char[] buf, int at, int v) {
+        buf[at] = (char) ('0' + v / 10);
+        buf[at + 1] = (char) ('0' + v % 10);
+    }
+}
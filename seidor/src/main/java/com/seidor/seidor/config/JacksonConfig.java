@@ -0,0 +1,24 @@
+package com.seidor.seidor.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.LocalDateTime;
+
+@Configuration
+public class JacksonConfig {
+
+    @Bean
+    public Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+
+    @Bean
+    public Module isoDateTimeModule() {
+        // registered after JavaTimeModule, so it replaces its LocalDateTime serializer
+        return new SimpleModule("iso-date-time").addSerializer(LocalDateTime.class, new IsoLocalDateTimeSerializer());
+    }
+}
@@ -0,0 +1,84 @@
+package com.seidor.seidor.config;
+
+import com.seidor.seidor.datasource.ReadFromPrimary;
+import com.seidor.seidor.datasource.ReadReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Routes read-only transactions to {@code seidor.datasource.replicas.urls} when it is set. */
+@Configuration
+@ConditionalOnProperty(name = "seidor.datasource.replicas.urls")
+public class ReadReplicaConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReadReplicaRoutingDataSource replicaRoutingDataSource(
+            HikariDataSource primaryDataSource,
+            DataSourceProperties properties,
+            MeterRegistry registry,
+            @Value("${seidor.datasource.replicas.urls}") List<String> urls,
+            @Value("${seidor.datasource.replicas.pool-size:10}") int poolSize,
+            @Value("${seidor.datasource.replicas.retry-after:PT30S}") Duration retryAfter,
+            @Value("${seidor.datasource.replicas.connection-timeout:PT0.5S}") Duration connectionTimeout) {
+        List<DataSource> replicas = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + replicas.size());
+            replica.setJdbcUrl(url.trim());
+            replica.setUsername(properties.determineUsername());
+            replica.setPassword(properties.determinePassword());
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setMaximumPoolSize(poolSize);
+            replica.setReadOnly(true);
+            // an unreachable replica must fail over to the primary quickly, not after Hikari's 30s default
+            replica.setConnectionTimeout(connectionTimeout.toMillis());
+            replica.setValidationTimeout(connectionTimeout.toMillis());
+            // start without a connection, so a replica that is down at boot only costs a fallback
+            replica.setInitializationFailTimeout(-1);
+            replicas.add(replica);
+        }
+        return new ReadReplicaRoutingDataSource(primaryDataSource, replicas, retryAfter, registry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor readFromPrimaryAdvisor() {
+        var pointcut = new ComposablePointcut(new AnnotationMatchingPointcut(ReadFromPrimary.class, true))
+                .union(AnnotationMatchingPointcut.forMethodAnnotation(ReadFromPrimary.class));
+        var advisor = new DefaultPointcutAdvisor(pointcut, ReadReplicaRoutingDataSource.readFromPrimaryInterceptor());
+        // outside the transaction interceptor, so the pin is set before any connection is taken
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return advisor;
+    }
+}
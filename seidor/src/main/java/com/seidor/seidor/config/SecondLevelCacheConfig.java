@@ -0,0 +1,107 @@
+package com.seidor.seidor.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import com.seidor.seidor.cache.SubscriptionCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.function.ToLongFunction;
+
+/** Hibernate second-level and query cache of USER_SUBSCRIPTION over Caffeine, one bounded region each. */
+@Configuration
+@ConditionalOnProperty(name = "seidor.subscriptions.cache.enabled", havingValue = "true")
+public class SecondLevelCacheConfig {
+
+    private static final String[] REGIONS = {
+            SubscriptionCache.ENTITY_REGION,
+            SubscriptionCache.SEGMENT_REGION,
+            RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+            RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME
+    };
+
+    @Bean(destroyMethod = "close")
+    public CacheManager subscriptionCacheManager(
+            @Value("${seidor.subscriptions.cache.max-size:100000}") long maxSize,
+            @Value("${seidor.subscriptions.cache.segment-max-size:1000}") long segmentMaxSize,
+            @Value("${seidor.subscriptions.cache.ttl:PT5M}") Duration ttl) {
+        // own URI per application context: providers are JVM-wide, and a second context
+        // (tests, devtools restarts) would otherwise find these caches already created
+        CacheManager manager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("seidor-second-level-cache-" + UUID.randomUUID()),
+                        getClass().getClassLoader());
+
+        manager.createCache(SubscriptionCache.ENTITY_REGION, region(maxSize, ttl));
+        manager.createCache(SubscriptionCache.SEGMENT_REGION, region(segmentMaxSize, ttl));
+        manager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME, region(segmentMaxSize, ttl));
+        // one entry per table; must outlive every cached query, so never evicted
+        manager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                new CaffeineConfiguration<>().setStoreByValue(false));
+        return manager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheProperties(CacheManager subscriptionCacheManager) {
+        return properties -> {
+            properties.put("hibernate.cache.use_second_level_cache", true);
+            properties.put("hibernate.cache.use_query_cache", true);
+            properties.put("hibernate.cache.region.factory_class", "jcache");
+            properties.put("hibernate.javax.cache.cache_manager", subscriptionCacheManager);
+            properties.put("hibernate.javax.cache.missing_cache_strategy", "fail");
+            properties.put("hibernate.generate_statistics", true);
+        };
+    }
+
+    @Bean
+    public MeterBinder secondLevelCacheMetrics(EntityManagerFactory emf) {
+        Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+        return registry -> {
+            for (String region : REGIONS) {
+                counter("subscriptions.cache.requests", region, "hit", stats, CacheRegionStatistics::getHitCount)
+                        .register(registry);
+                counter("subscriptions.cache.requests", region, "miss", stats, CacheRegionStatistics::getMissCount)
+                        .register(registry);
+                FunctionCounter.builder("subscriptions.cache.puts", stats,
+                                s -> count(s, region, CacheRegionStatistics::getPutCount))
+                        .tag("region", region)
+                        .register(registry);
+            }
+        };
+    }
+
+    private static CaffeineConfiguration<Object, Object> region(long maxSize, Duration ttl) {
+        return new CaffeineConfiguration<>()
+                .setStoreByValue(false)
+                .setMaximumSize(OptionalLong.of(maxSize))
+                .setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+    }
+
+    private static FunctionCounter.Builder<Statistics> counter(String name, String region, String result,
+                                                               Statistics stats,
+                                                               ToLongFunction<CacheRegionStatistics> count) {
+        return FunctionCounter.builder(name, stats, s -> count(s, region, count))
+                .tag("region", region)
+                .tag("result", result);
+    }
+
+    private static double count(Statistics stats, String region, ToLongFunction<CacheRegionStatistics> count) {
+        CacheRegionStatistics r = stats.getCacheRegionStatistics(region);
+        return r == null ? 0 : count.applyAsLong(r);
+    }
+}
@@ -1,6 +1,13 @@
 package com.seidor.seidor.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.seidor.seidor.export.ExportFormat;
+import com.seidor.seidor.export.RowWriter;
 import com.seidor.seidor.model.User;
+import com.seidor.seidor.pojo.BulkSubscribeResponse;
+import com.seidor.seidor.pojo.SubscriptionResponse;
 import com.seidor.seidor.pojo.UserRequest;
 import com.seidor.seidor.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -12,26 +19,33 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/users")
 public class UserController {
 
     private static final Logger log = LoggerFactory.getLogger(UserController.class);
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    static final String NEXT_AFTER_HEADER = "X-Next-After";
+
     private final UserService service;
+    private final ObjectMapper mapper;
 
-    public UserController(UserService service) {
+    public UserController(UserService service, ObjectMapper mapper) {
         this.service = service;
+        this.mapper = mapper;
     }
 
     // POST /api/users
     @Operation(summary = "Subscribe a user (mail) to a category/subcategory")
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Map<String, Object>> subscribe(
+    public ResponseEntity<SubscriptionResponse> subscribe(
             @Valid @RequestBody UserRequest req) {
 
         log.info("⟶ POST /api/users mail={}, cat={}, sub={}",
@@ -39,42 +53,82 @@ public class UserController {
 
         User saved = service.subscribe(req);
 
-        Map<String, Object> body = new HashMap<>();
-        body.put("id", saved.getId());
-        body.put("mailBase64", saved.getMailBase64());
-        body.put("category", saved.getCategory());
-        body.put("subcategory", saved.getSubcategory());
-        body.put("dateSubscribed", saved.getDateSubscribed());
+        return ResponseEntity.status(HttpStatus.CREATED).body(SubscriptionResponse.of(saved));
+    }
 
-        return ResponseEntity.status(HttpStatus.CREATED).body(body);
+    // POST /api/users/bulk
+    @Operation(summary = "Subscribe many users at once (JSON array or NDJSON body)")
+    @PostMapping(path = "/bulk",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, ExportFormat.NDJSON_VALUE},
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkSubscribeResponse> subscribeBulk(InputStream body) throws IOException {
+
+        log.info("⟶ POST /api/users/bulk");
+
+        UserService.BulkResult result;
+        try (MappingIterator<UserRequest> rows = mapper.readerFor(UserRequest.class).readValues(body)) {
+            result = service.subscribeAll(rows);
+        } catch (JsonProcessingException e) {
+            log.warn("Rejected bulk subscribe body: {}", e.getOriginalMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (RuntimeException e) {
+            // MappingIterator rethrows parse errors wrapped in unchecked exceptions
+            if (!(e.getCause() instanceof JsonProcessingException parse)) throw e;
+            log.warn("Rejected bulk subscribe body: {}", parse.getOriginalMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(new BulkSubscribeResponse(
+                result.received, result.created, result.existing, result.rejected));
     }
 
-    // GET /api/users
-    @Operation(summary = "Get entire subscriptions table")
+    // GET /api/users?after=...&limit=...
+    @Operation(summary = "Get a page of subscriptions ordered by id (keyset pagination)")
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<Map<String, Object>>> getAll() {
+    public ResponseEntity<List<SubscriptionResponse>> getAll(
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit
+    ) {
 
-        log.info("⟶ GET /api/users");
+        log.info("⟶ GET /api/users after={}, limit={}", after, limit);
 
-        List<User> subs = service.findAll();
+        if (limit != null && limit < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        List<SubscriptionResponse> subs = service.findPage(after, pageSize);
 
         if (subs.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NO_CONTENT).body(Collections.emptyList());
         }
 
-        List<Map<String, Object>> response = subs.stream()
-                .map(s -> {
-                    Map<String, Object> m = new HashMap<>();
-                    m.put("id", s.getId());
-                    m.put("mailBase64", s.getMailBase64());
-                    m.put("category", s.getCategory());
-                    m.put("subcategory", s.getSubcategory());
-                    m.put("dateSubscribed", s.getDateSubscribed());
-                    return m;
-                })
-                .collect(Collectors.toList());
-
-        return ResponseEntity.ok(response);
+        var ok = ResponseEntity.ok();
+        if (subs.size() >= Math.min(pageSize, UserService.MAX_PAGE_SIZE)) {
+            ok.header(NEXT_AFTER_HEADER, String.valueOf(subs.get(subs.size() - 1).id()));
+        }
+        return ok.body(subs);
+    }
+
+    // GET /api/users?format=json|ndjson|csv
+    @Operation(summary = "Stream the entire subscriptions table (json, ndjson or csv)")
+    @GetMapping(params = "format")
+    public ResponseEntity<StreamingResponseBody> streamAll(@RequestParam String format) {
+
+        log.info("⟶ GET /api/users format={}", format);
+
+        ExportFormat fmt;
+        try {
+            fmt = ExportFormat.parse(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        StreamingResponseBody body = RowWriter.streaming(fmt, mapper,
+                writer -> service.streamAll(s -> writer.write(
+                        s.getId(), s.getMailBase64(), s.getCategory(), s.getSubcategory(), s.getDateSubscribed())),
+                "id", "mailBase64", "category", "subcategory", "dateSubscribed");
+
+        return ResponseEntity.ok().contentType(fmt.getMediaType()).body(body);
     }
 
     // GET /api/users/mails?category=...&subcategory=...
@@ -86,19 +140,39 @@ public class UserController {
     ) {
         log.info("⟶ GET /api/users/mails cat={}, sub={}", category, subcategory);
 
-        List<User> subs = service.findByCategoryAndSubcategory(category, subcategory);
+        List<String> mailsBase64 = service.findMailsByCategoryAndSubcategory(category, subcategory);
 
-        if (subs.isEmpty()) {
+        if (mailsBase64.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NO_CONTENT).body(Collections.emptyList());
         }
 
-        List<String> mailsBase64 = subs.stream()
-                .map(User::getMailBase64)
-                .collect(Collectors.toList());
-
         return ResponseEntity.ok(mailsBase64);
     }
 
+    // GET /api/users/mails?category=...&subcategory=...&format=json|ndjson|csv
+    @Operation(summary = "Stream subscribed mails (base64) for a category/subcategory")
+    @GetMapping(path = "/mails", params = "format")
+    public ResponseEntity<StreamingResponseBody> streamMailsForSegment(
+            @RequestParam String category,
+            @RequestParam String subcategory,
+            @RequestParam String format
+    ) {
+        log.info("⟶ GET /api/users/mails cat={}, sub={}, format={}", category, subcategory, format);
+
+        ExportFormat fmt;
+        try {
+            fmt = ExportFormat.parse(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        StreamingResponseBody body = RowWriter.streaming(fmt, mapper,
+                writer -> service.streamMailsBySegment(category, subcategory, writer::write),
+                "mailBase64");
+
+        return ResponseEntity.ok().contentType(fmt.getMediaType()).body(body);
+    }
+
     // DELETE /api/users/{id}
     @Operation(summary = "Delete a subscription row by ID")
     @DeleteMapping("/{id}")
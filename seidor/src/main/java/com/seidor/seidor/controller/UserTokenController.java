@@ -1,54 +1,107 @@
 package com.seidor.seidor.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.seidor.seidor.export.ExportFormat;
+import com.seidor.seidor.export.RowWriter;
 import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.pojo.MailTokenResponse;
+import com.seidor.seidor.pojo.SegmentRequest;
+import com.seidor.seidor.pojo.TokenCreatedResponse;
+import com.seidor.seidor.pojo.TokenRefreshResponse;
 import com.seidor.seidor.pojo.TokenRequest;
+import com.seidor.seidor.pojo.TokenResponse;
+import com.seidor.seidor.pojo.TokenSummaryResponse;
+import com.seidor.seidor.ratelimit.TokenRateLimiter;
+import com.seidor.seidor.service.MailNormalizer;
 import com.seidor.seidor.service.UserTokenService;
 import io.swagger.v3.oas.annotations.Operation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/tokens")
 public class UserTokenController {
 
     private final UserTokenService service;
+    private final ObjectMapper mapper;
+    private final TokenRateLimiter limiter;
+    private final MailNormalizer mails;
     private static final Logger log = LoggerFactory.getLogger(UserTokenController.class);
 
-    public UserTokenController(UserTokenService service) {
+    public UserTokenController(UserTokenService service, ObjectMapper mapper,
+                               TokenRateLimiter limiter, MailNormalizer mails) {
         this.service = service;
+        this.mapper = mapper;
+        this.limiter = limiter;
+        this.mails = mails;
     }
 
     // POST /api/tokens
     @Operation(summary = "Create token row for pending email validation")
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Map<String, Object>> create(@Valid @RequestBody TokenRequest req) {
+    public ResponseEntity<TokenCreatedResponse> create(@Valid @RequestBody TokenRequest req,
+                                                       HttpServletRequest http) {
 
         log.info("⟶ POST /api/tokens (create)");
-        UserToken saved = service.create(req);
+        var decision = rateLimit(req, http);
+        if (!decision.allowed) {
+            return tooManyRequests(decision);
+        }
 
-        Map<String, Object> body = new HashMap<>();
-        body.put("id", saved.getId());
-        body.put("token", saved.getToken());
-        body.put("category", saved.getCategory());
-        body.put("subcategory", saved.getSubcategory());
+        UserToken saved;
+        try {
+            saved = service.create(req);
+        } catch (RejectedExecutionException e) {
+            // write-behind buffer full: tell the client to back off briefly
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
 
-        return ResponseEntity.status(HttpStatus.CREATED).body(body);
+        return ResponseEntity.status(HttpStatus.CREATED).body(TokenCreatedResponse.of(saved));
+    }
+
+    // POST /api/tokens/segment?format=json|ndjson|csv
+    @Operation(summary = "Issue a token for every subscriber of a category/subcategory")
+    @PostMapping(path = "/segment", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> issueForSegment(
+            @Valid @RequestBody SegmentRequest req,
+            @RequestParam(defaultValue = "ndjson") String format
+    ) {
+        log.info("⟶ POST /api/tokens/segment category={}, sub={}, format={}",
+                req.getCategory(), req.getSubcategory(), format);
+
+        ExportFormat fmt;
+        try {
+            fmt = ExportFormat.parse(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        StreamingResponseBody body = RowWriter.streaming(fmt, mapper, writer -> {
+            int issued = service.issueForSegment(req.getCategory(), req.getSubcategory(), writer::write);
+            log.info("Issued {} tokens for segment {}/{}", issued, req.getCategory(), req.getSubcategory());
+        }, "mailBase64", "token");
+
+        return ResponseEntity.status(HttpStatus.CREATED).contentType(fmt.getMediaType()).body(body);
     }
 
     // GET /api/tokens?mail=...&category=...&subcategory=...
     @Operation(summary = "Find tokens by mail, category and subcategory")
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<Map<String, Object>>> find(
+    public ResponseEntity<List<TokenSummaryResponse>> find(
             @RequestParam("mail") String mailBase64OrPlain,
             @RequestParam("category") String category,
             @RequestParam("subcategory") String subcategory
@@ -61,17 +114,7 @@ public class UserTokenController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.emptyList());
         }
 
-        List<Map<String, Object>> response = tokens.stream()
-                .map(t -> {
-                    Map<String, Object> m = new HashMap<>();
-                    m.put("id", t.getId());
-                    m.put("token", t.getToken());
-                    m.put("dateSent", t.getDateSent().toString());
-                    return m;
-                })
-                .collect(Collectors.toList());
-
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok(tokens);
     }
 
     // POST /api/tokens/refresh
@@ -81,10 +124,15 @@ public class UserTokenController {
             consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public ResponseEntity<Map<String, Object>> refreshOrCreate(@Valid @RequestBody TokenRequest req) {
+    public ResponseEntity<TokenRefreshResponse> refreshOrCreate(@Valid @RequestBody TokenRequest req,
+                                                                HttpServletRequest http) {
 
         log.info("⟶ POST /api/tokens/refresh for mail={}, category={}, sub={}",
                 req.getMailBase64(), req.getCategory(), req.getSubcategory());
+        var decision = rateLimit(req, http);
+        if (!decision.allowed) {
+            return tooManyRequests(decision);
+        }
 
         var result = service.refreshOrCreate(
                 req.getMailBase64(),
@@ -92,39 +140,20 @@ public class UserTokenController {
                 req.getSubcategory()
         );
 
-        var t = result.tokenRow;
-
-        Map<String, Object> body = new HashMap<>();
-        body.put("id", t.getId());
-        body.put("token", t.getToken());
-        body.put("category", t.getCategory());
-        body.put("subcategory", t.getSubcategory());
-        body.put("dateSent", t.getDateSent());
-        body.put("created", result.created);
-        body.put("refreshed", result.refreshed);
-
         var status = result.created ? HttpStatus.CREATED : HttpStatus.OK;
-        return ResponseEntity.status(status).body(body);
+        return ResponseEntity.status(status)
+                .body(TokenRefreshResponse.of(result.tokenRow, result.created, result.refreshed));
     }
 
     // GET /api/tokens/{token}
     @Operation(summary = "Get token information by token value")
     @GetMapping(path = "/{token}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Map<String, Object>> getByToken(@PathVariable("token") String token) {
+    public ResponseEntity<TokenResponse> getByToken(@PathVariable("token") String token) {
 
         log.info("⟶ GET /api/tokens/{}", token);
 
         return service.findByToken(token)
-                .map(t -> {
-                    Map<String, Object> body = new HashMap<>();
-                    body.put("id", t.getId());
-                    body.put("mailBase64", t.getMailBase64());
-                    body.put("token", t.getToken());
-                    body.put("category", t.getCategory());
-                    body.put("subcategory", t.getSubcategory());
-                    body.put("dateSent", t.getDateSent().toString());
-                    return ResponseEntity.ok(body);
-                })
+                .map(t -> ResponseEntity.ok(TokenResponse.of(t)))
                 .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
     }
 
@@ -143,27 +172,51 @@ public class UserTokenController {
     // GET /api/tokens/mails?category=...&subcategory=...
     @Operation(summary = "Get mails and tokens by category/subcategory")
     @GetMapping(path = "/mails", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<Map<String, String>>> getMailsAndTokensByCategoryAndSubcategory(
+    public ResponseEntity<List<MailTokenResponse>> getMailsAndTokensByCategoryAndSubcategory(
             @RequestParam String category,
             @RequestParam String subcategory
     ) {
         log.info("⟶ GET /api/tokens/mails category={}, sub={}", category, subcategory);
 
-        var tokens = service.findByCategoryAndSubcategory(category, subcategory);
+        var tokens = service.findMailsAndTokensByCategoryAndSubcategory(category, subcategory);
 
         if (tokens.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.emptyList());
         }
 
-        List<Map<String, String>> result = tokens.stream()
-                .map(t -> {
-                    Map<String, String> m = new HashMap<>();
-                    m.put("mailBase64", t.getMailBase64());
-                    m.put("token", t.getToken());
-                    return m;
-                })
-                .collect(Collectors.toList());
+        return ResponseEntity.ok(tokens);
+    }
+
+    // GET /api/tokens/mails?category=...&subcategory=...&format=json|ndjson|csv
+    @Operation(summary = "Stream mails and tokens by category/subcategory")
+    @GetMapping(path = "/mails", params = "format")
+    public ResponseEntity<StreamingResponseBody> streamMailsAndTokensByCategoryAndSubcategory(
+            @RequestParam String category,
+            @RequestParam String subcategory,
+            @RequestParam String format
+    ) {
+        log.info("⟶ GET /api/tokens/mails category={}, sub={}, format={}", category, subcategory, format);
+
+        ExportFormat fmt;
+        try {
+            fmt = ExportFormat.parse(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        StreamingResponseBody body = RowWriter.streaming(fmt, mapper,
+                writer -> service.streamMailsAndTokens(category, subcategory, writer::write),
+                "mailBase64", "token");
+
+        return ResponseEntity.ok().contentType(fmt.getMediaType()).body(body);
+    }
+
+    private TokenRateLimiter.Decision rateLimit(TokenRequest req, HttpServletRequest http) {
+        return limiter.acquire(mails.normalize(req.getMailBase64()), http.getRemoteAddr());
+    }
 
-        return ResponseEntity.ok(result);
+    private static <T> ResponseEntity<T> tooManyRequests(TokenRateLimiter.Decision decision) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(decision.retryAfterSeconds)).build();
     }
 }
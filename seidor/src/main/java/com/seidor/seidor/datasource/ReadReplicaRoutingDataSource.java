@@ -0,0 +1,140 @@
+package com.seidor.seidor.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Replica connections for read-only transactions, primary connections for the rest.
+ * Must sit behind a LazyConnectionDataSourceProxy: the read-only flag is published after
+ * the transaction manager asks for the connection.
+ */
+public class ReadReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadReplicaRoutingDataSource.class);
+
+    private static final ThreadLocal<Boolean> PRIMARY_PINNED = ThreadLocal.withInitial(() -> false);
+
+    private final DataSource primary;
+    private final Replica[] replicas;
+    private final long retryAfterNanos;
+    private final LongSupplier clock;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final Counter primaryConnections;
+    private final Counter replicaConnections;
+    private final Counter fallbackConnections;
+
+    public ReadReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, Duration retryAfter,
+                                        MeterRegistry registry) {
+        this(primary, replicas, retryAfter, registry, System::nanoTime);
+    }
+
+    ReadReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, Duration retryAfter,
+                                 MeterRegistry registry, LongSupplier clock) {
+        this.primary = primary;
+        this.replicas = new Replica[replicas.size()];
+        for (int i = 0; i < this.replicas.length; i++) {
+            this.replicas[i] = new Replica(i, replicas.get(i));
+        }
+        this.retryAfterNanos = retryAfter.toNanos();
+        this.clock = clock;
+
+        this.primaryConnections = Counter.builder("datasource.routing.connections").tag("target", "primary")
+                .register(registry);
+        this.replicaConnections = Counter.builder("datasource.routing.connections").tag("target", "replica")
+                .register(registry);
+        this.fallbackConnections = Counter.builder("datasource.routing.connections").tag("target", "fallback")
+                .register(registry);
+    }
+
+    public static MethodInterceptor readFromPrimaryInterceptor() {
+        return invocation -> {
+            boolean previous = PRIMARY_PINNED.get();
+            PRIMARY_PINNED.set(true);
+            try {
+                return invocation.proceed();
+            } finally {
+                PRIMARY_PINNED.set(previous);
+            }
+        };
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!routeToReplica()) {
+            primaryConnections.increment();
+            return primary.getConnection();
+        }
+
+        long now = clock.getAsLong();
+        for (int attempt = 0; attempt < replicas.length; attempt++) {
+            Replica r = replicas[Math.floorMod(next.getAndIncrement(), replicas.length)];
+            if (r.down && now - r.retryAt < 0) {
+                continue;
+            }
+            try {
+                Connection c = r.dataSource.getConnection();
+                if (r.down) r.down = false;
+                replicaConnections.increment();
+                return c;
+            } catch (SQLException e) {
+                r.retryAt = now + retryAfterNanos;
+                r.down = true;
+                log.warn("Read replica {} unavailable, skipping it for {} ms: {}",
+                        r.index, retryAfterNanos / 1_000_000, e.getMessage());
+            }
+        }
+
+        fallbackConnections.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLException("ReadReplicaRoutingDataSource uses the credentials of its targets");
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Replica r : replicas) {
+            if (r.dataSource instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private boolean routeToReplica() {
+        return replicas.length > 0
+                && TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && !PRIMARY_PINNED.get();
+    }
+
+    private static final class Replica {
+        final int index;
+        final DataSource dataSource;
+        // written by whichever thread saw it fail; a stale read costs at most one extra attempt
+        volatile boolean down;
+        volatile long retryAt;
+
+        Replica(int index, DataSource dataSource) {
+            this.index = index;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.seidor.seidor.export;
+
+import org.springframework.http.MediaType;
+
+import java.util.Locale;
+
+public enum ExportFormat {
+
+    JSON(MediaType.APPLICATION_JSON),
+    NDJSON(MediaType.parseMediaType(ExportFormat.NDJSON_VALUE)),
+    CSV(MediaType.parseMediaType("text/csv;charset=UTF-8"));
+
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+
+    private final MediaType mediaType;
+
+    ExportFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /** Case-insensitive lookup; throws {@link IllegalArgumentException} for unknown formats. */
+    public static ExportFormat parse(String value) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("format is required");
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported format: " + value);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.seidor.seidor.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.function.Consumer;
+
+/** Streams rows as a JSON array, NDJSON or CSV, one row at a time. */
+public class RowWriter implements Closeable {
+
+    private final ExportFormat format;
+    private final String[] columns;
+    private final JsonGenerator gen;
+    private final BufferedWriter csv;
+
+    public RowWriter(ExportFormat format, ObjectMapper mapper, OutputStream out, String... columns) throws IOException {
+        this.format = format;
+        this.columns = columns;
+
+        if (format == ExportFormat.CSV) {
+            this.gen = null;
+            this.csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writeCsvLine(columns);
+            return;
+        }
+
+        this.csv = null;
+        this.gen = mapper.getFactory().createGenerator(out);
+        this.gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.gen.setRootValueSeparator(null);
+        if (format == ExportFormat.JSON) {
+            gen.writeStartArray();
+        }
+    }
+
+    public static StreamingResponseBody streaming(ExportFormat format, ObjectMapper mapper,
+                                                  Consumer<RowWriter> rows, String... columns) {
+        return out -> {
+            try (RowWriter writer = new RowWriter(format, mapper, out, columns)) {
+                rows.accept(writer);
+            }
+        };
+    }
+
+    public void write(Object... values) {
+        try {
+            if (csv != null) {
+                writeCsvLine(values);
+                return;
+            }
+            gen.writeStartObject();
+            for (int i = 0; i < columns.length; i++) {
+                gen.writeFieldName(columns[i]);
+                gen.writeObject(values[i]);
+            }
+            gen.writeEndObject();
+            if (format == ExportFormat.NDJSON) {
+                gen.writeRaw('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (csv != null) {
+            csv.flush();
+            return;
+        }
+        if (format == ExportFormat.JSON) {
+            gen.writeEndArray();
+        }
+        gen.close();
+    }
+
+    private void writeCsvLine(Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) csv.write(',');
+            writeCsvField(values[i]);
+        }
+        csv.write("\r\n");
+    }
+
+    private void writeCsvField(Object value) throws IOException {
+        if (value == null) return;
+
+        String s = value instanceof LocalDateTime ldt
+                ? DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(ldt)
+                : value.toString();
+
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            csv.write(s);
+            return;
+        }
+        csv.write('"');
+        csv.write(s.replace("\"", "\"\""));
+        csv.write('"');
+    }
+}
@@ -0,0 +1,101 @@
+package com.seidor.seidor.job;
+
+import com.seidor.seidor.model.User;
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.repository.LookupKeyBackfillState;
+import com.seidor.seidor.repository.UserJdbcRepository;
+import com.seidor.seidor.repository.UserTokenJdbcRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/** One-off job that fills lookup_key on rows written before the column existed. */
+@Component
+@ConditionalOnProperty(name = "seidor.lookup-key.backfill.enabled", havingValue = "true")
+public class LookupKeyBackfillJob {
+
+    private static final Logger log = LoggerFactory.getLogger(LookupKeyBackfillJob.class);
+
+    private final UserJdbcRepository users;
+    private final UserTokenJdbcRepository tokens;
+    private final LookupKeyBackfillState state;
+    private final TaskExecutor executor;
+    private final int batchSize;
+    private final Duration pause;
+
+    public LookupKeyBackfillJob(UserJdbcRepository users,
+                                UserTokenJdbcRepository tokens,
+                                LookupKeyBackfillState state,
+                                @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+                                TaskExecutor executor,
+                                @Value("${seidor.lookup-key.backfill.batch-size:1000}") int batchSize,
+                                @Value("${seidor.lookup-key.backfill.pause:PT0.2S}") Duration pause) {
+        this.users = users;
+        this.tokens = tokens;
+        this.state = state;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.pause = pause;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.execute(this::run);
+    }
+
+    public int run() {
+        log.info("Lookup key backfill started (batch={}, pause={})", batchSize, pause);
+
+        int updated = 0;
+        try {
+            long afterId = 0;
+            while (true) {
+                List<User> rows = users.findWithoutLookupKey(afterId, batchSize);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                users.updateLookupKeys(rows);
+                updated += rows.size();
+                afterId = rows.get(rows.size() - 1).getId();
+                sleep();
+            }
+
+            afterId = 0;
+            while (true) {
+                List<UserToken> rows = tokens.findWithoutLookupKey(afterId, batchSize);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                tokens.updateLookupKeys(rows);
+                updated += rows.size();
+                afterId = rows.get(rows.size() - 1).getId();
+                sleep();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Lookup key backfill interrupted after updating {} rows", updated);
+            return updated;
+        }
+
+        // rows written from now on always carry their key
+        state.markComplete();
+        log.info("Lookup key backfill finished: {} rows updated", updated);
+        return updated;
+    }
+
+    private void sleep() throws InterruptedException {
+        if (!pause.isZero()) {
+            Thread.sleep(pause.toMillis());
+        }
+    }
+}
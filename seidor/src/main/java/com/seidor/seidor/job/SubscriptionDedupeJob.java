@@ -0,0 +1,81 @@
+package com.seidor.seidor.job;
+
+import com.seidor.seidor.cache.SubscriptionCache;
+import com.seidor.seidor.repository.UserJdbcRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * One-off job that deletes duplicate USER_SUBSCRIPTION rows, keeping the oldest of each
+ * triple. Restart the app afterwards so the unique key gets created.
+ */
+@Component
+@ConditionalOnProperty(name = "seidor.subscriptions.dedupe.enabled", havingValue = "true")
+public class SubscriptionDedupeJob {
+
+    private static final Logger log = LoggerFactory.getLogger(SubscriptionDedupeJob.class);
+
+    private final UserJdbcRepository jdbcRepo;
+    private final SubscriptionCache cache;
+    private final TaskExecutor executor;
+    private final int batchSize;
+    private final Duration pause;
+
+    public SubscriptionDedupeJob(UserJdbcRepository jdbcRepo,
+                                 SubscriptionCache cache,
+                                 @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+                                 TaskExecutor executor,
+                                 @Value("${seidor.subscriptions.dedupe.batch-size:500}") int batchSize,
+                                 @Value("${seidor.subscriptions.dedupe.pause:PT0.2S}") Duration pause) {
+        this.jdbcRepo = jdbcRepo;
+        this.cache = cache;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.pause = pause;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.execute(this::run);
+    }
+
+    public int run() {
+        log.info("Subscription dedupe started (batch={}, pause={})", batchSize, pause);
+
+        long afterId = 0;
+        int deleted = 0;
+        try {
+            while (true) {
+                List<Long> ids = jdbcRepo.findDuplicateIds(afterId, batchSize);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                deleted += jdbcRepo.deleteByIds(ids);
+                cache.evictAll();
+                afterId = ids.get(ids.size() - 1);
+
+                if (!pause.isZero()) {
+                    Thread.sleep(pause.toMillis());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Subscription dedupe interrupted after deleting {} rows", deleted);
+            return deleted;
+        }
+
+        log.info("Subscription dedupe finished: {} duplicate rows deleted", deleted);
+        return deleted;
+    }
+}
@@ -0,0 +1,80 @@
+package com.seidor.seidor.job;
+
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.repository.TokenBinBackfillState;
+import com.seidor.seidor.repository.UserTokenJdbcRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/** One-off job that fills token_bin on rows written before the column existed. */
+@Component
+@ConditionalOnProperty(name = "seidor.tokens.bin-backfill.enabled", havingValue = "true")
+public class TokenBinBackfillJob {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenBinBackfillJob.class);
+
+    private final UserTokenJdbcRepository tokens;
+    private final TokenBinBackfillState state;
+    private final TaskExecutor executor;
+    private final int batchSize;
+    private final Duration pause;
+
+    public TokenBinBackfillJob(UserTokenJdbcRepository tokens,
+                               TokenBinBackfillState state,
+                               @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+                               TaskExecutor executor,
+                               @Value("${seidor.tokens.bin-backfill.batch-size:1000}") int batchSize,
+                               @Value("${seidor.tokens.bin-backfill.pause:PT0.2S}") Duration pause) {
+        this.tokens = tokens;
+        this.state = state;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.pause = pause;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.execute(this::run);
+    }
+
+    public int run() {
+        log.info("Token binary backfill started (batch={}, pause={})", batchSize, pause);
+
+        long afterId = 0;
+        int updated = 0;
+        try {
+            while (true) {
+                List<UserToken> rows = tokens.findWithoutTokenBin(afterId, batchSize);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                updated += tokens.updateTokenBins(rows);
+                afterId = rows.get(rows.size() - 1).getId();
+
+                if (!pause.isZero()) {
+                    Thread.sleep(pause.toMillis());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Token binary backfill interrupted after updating {} rows", updated);
+            return updated;
+        }
+
+        // rows written from now on always carry their binary form
+        state.markComplete();
+        log.info("Token binary backfill finished: {} rows updated", updated);
+        return updated;
+    }
+}
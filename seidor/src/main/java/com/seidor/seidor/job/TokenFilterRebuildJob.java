@@ -0,0 +1,90 @@
+package com.seidor.seidor.job;
+
+import com.seidor.seidor.cache.TokenBloomFilter;
+import com.seidor.seidor.store.TokenStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Rebuilds the {@link TokenBloomFilter} every {@code rebuild-interval}. The scan waits
+ * {@code grace}, longer than any insert transaction, so tokens added just before the
+ * build have committed by the time it reads them.
+ */
+@Component
+@ConditionalOnProperty(name = "seidor.tokens.bloom.enabled", havingValue = "true")
+public class TokenFilterRebuildJob {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenFilterRebuildJob.class);
+
+    private final TokenStore tokens;
+    private final TokenBloomFilter filter;
+    private final TaskExecutor executor;
+    private final Duration grace;
+    private final ReentrantLock running = new ReentrantLock();
+
+    public TokenFilterRebuildJob(TokenStore tokens,
+                                 TokenBloomFilter filter,
+                                 @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+                                 TaskExecutor executor,
+                                 @Value("${seidor.tokens.bloom.grace:PT10S}") Duration grace) {
+        this.tokens = tokens;
+        this.filter = filter;
+        this.executor = executor;
+        this.grace = grace;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.execute(this::rebuild);
+    }
+
+    @Scheduled(initialDelayString = "${seidor.tokens.bloom.rebuild-interval:PT6H}",
+            fixedDelayString = "${seidor.tokens.bloom.rebuild-interval:PT6H}")
+    public void scheduled() {
+        rebuild();
+    }
+
+    /** Returns {@code false} if a build was already running or it failed. */
+    public boolean rebuild() {
+        if (!running.tryLock()) {
+            return false;
+        }
+        try {
+            long started = System.nanoTime();
+            long rowCount = tokens.count();
+            TokenBloomFilter.Build build = filter.beginRebuild(rowCount);
+            try {
+                if (!grace.isZero()) {
+                    Thread.sleep(grace.toMillis());
+                }
+                tokens.streamTokens(build::add);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                build.abandon();
+                return false;
+            } catch (RuntimeException e) {
+                build.abandon();
+                log.warn("Token filter rebuild failed, keeping the previous one: {}", e.getMessage());
+                return false;
+            }
+            build.publish();
+            log.info("Token filter rebuilt: ~{} tokens, {} bits, {} hashes in {} ms", rowCount, build.bitCount(),
+                    build.hashCount(), (System.nanoTime() - started) / 1_000_000);
+            return true;
+        } finally {
+            running.unlock();
+        }
+    }
+}
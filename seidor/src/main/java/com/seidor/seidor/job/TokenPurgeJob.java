@@ -0,0 +1,92 @@
+package com.seidor.seidor.job;
+
+import com.seidor.seidor.cache.TokenLookupCache;
+import com.seidor.seidor.store.TokenStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/** Deletes USERS_TOKEN rows older than the TTL, in chunks with a pause in between. */
+@Component
+@ConditionalOnProperty(name = "seidor.tokens.purge.enabled", havingValue = "true")
+public class TokenPurgeJob {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenPurgeJob.class);
+
+    private final TokenStore store;
+    private final TokenLookupCache cache;
+    private final Duration ttl;
+    private final int chunkSize;
+    private final Duration throttle;
+
+    private final Counter purged;
+    private final Timer duration;
+
+    public TokenPurgeJob(TokenStore store,
+                         TokenLookupCache cache,
+                         MeterRegistry registry,
+                         @Value("${seidor.tokens.purge.ttl:P30D}") Duration ttl,
+                         @Value("${seidor.tokens.purge.chunk-size:1000}") int chunkSize,
+                         @Value("${seidor.tokens.purge.throttle:PT0.1S}") Duration throttle,
+                         @Value("${seidor.tokens.signing.check-revocation:false}") boolean revocationChecked,
+                         @Value("${seidor.tokens.signing.max-age:P30D}") Duration signingMaxAge) {
+        if (revocationChecked && ttl.compareTo(signingMaxAge) < 0) {
+            throw new IllegalArgumentException("seidor.tokens.purge.ttl (" + ttl
+                    + ") must be at least seidor.tokens.signing.max-age (" + signingMaxAge + ")");
+        }
+        this.store = store;
+        this.cache = cache;
+        this.ttl = ttl;
+        this.chunkSize = chunkSize;
+        this.throttle = throttle;
+
+        this.purged = Counter.builder("tokens.purge.rows").register(registry);
+        this.duration = Timer.builder("tokens.purge.duration").register(registry);
+    }
+
+    @Scheduled(initialDelayString = "${seidor.tokens.purge.initial-delay:PT1M}",
+            fixedDelayString = "${seidor.tokens.purge.interval:PT1H}")
+    public void purge() {
+        int total = duration.record(this::purgeExpired);
+        if (total > 0) {
+            log.info("Token purge deleted {} rows older than {}", total, ttl);
+        }
+    }
+
+    int purgeExpired() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(ttl);
+        int total = 0;
+
+        try {
+            while (true) {
+                int deleted = store.deleteSentBefore(cutoff, chunkSize);
+                total += deleted;
+                purged.increment(deleted);
+
+                if (deleted < chunkSize) {
+                    break;
+                }
+                if (!throttle.isZero()) {
+                    Thread.sleep(throttle.toMillis());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (total > 0) {
+            // cached rows may belong to purged tokens; the cache refills from the table
+            cache.invalidateAll();
+        }
+        return total;
+    }
+}
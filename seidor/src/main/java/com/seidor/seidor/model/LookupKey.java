@@ -0,0 +1,45 @@
+package com.seidor.seidor.model;
+
+/**
+ * 64-bit key of a (mail_base64, category, subcategory) triple; queries still recheck the
+ * columns. Folded like the case-insensitive collation; changing it requires a re-backfill.
+ */
+public final class LookupKey {
+
+    private static final long OFFSET = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private LookupKey() {
+    }
+
+    public static long of(String mailBase64, String category, String subcategory) {
+        long h = OFFSET;
+        h = add(h, mailBase64);
+        h = add(h, category);
+        h = add(h, subcategory);
+        return fmix64(h);
+    }
+
+    private static long add(long h, String s) {
+        if (s == null) {
+            return (h ^ 0xffff_ffffL) * PRIME;
+        }
+        int end = s.length();
+        while (end > 0 && s.charAt(end - 1) == ' ') {
+            end--;
+        }
+        for (int i = 0; i < end; i++) {
+            h = (h ^ Character.toLowerCase(Character.toUpperCase(s.charAt(i)))) * PRIME;
+        }
+        return (h ^ end) * PRIME;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
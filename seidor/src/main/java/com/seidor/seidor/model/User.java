@@ -1,15 +1,25 @@
 package com.seidor.seidor.model;
 
+import com.seidor.seidor.cache.SubscriptionCache;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.time.LocalDateTime;
 
 @Entity
 @Table(
-        name = "USER_SUBSCRIPTION"
+        name = "USER_SUBSCRIPTION",
+        uniqueConstraints = @UniqueConstraint(
+                name = "UK_USER_SUBSCRIPTION_MAIL_SEGMENT",
+                columnNames = {"mail_base64", "category", "subcategory"}
+        ),
+        indexes = @Index(name = "IX_USER_SUBSCRIPTION_LOOKUP_KEY", columnList = "lookup_key")
 )
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = SubscriptionCache.ENTITY_REGION)
 @Getter
 @Setter
 public class User {
@@ -30,10 +40,19 @@ public class User {
     @Column(name = "date_subscribed", nullable = false)
     private LocalDateTime dateSubscribed;
 
+    @Column(name = "lookup_key")
+    private Long lookupKey;
+
     @PrePersist
     public void onCreate() {
         if (dateSubscribed == null) {
             dateSubscribed = LocalDateTime.now();
         }
+        lookupKey = LookupKey.of(mailBase64, category, subcategory);
+    }
+
+    @PreUpdate
+    public void onUpdate() {
+        lookupKey = LookupKey.of(mailBase64, category, subcategory);
     }
 }
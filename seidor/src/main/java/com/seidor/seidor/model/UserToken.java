@@ -1,14 +1,21 @@
 package com.seidor.seidor.model;
 
+import com.seidor.seidor.token.TokenCodec;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 @Entity
 @Table(
         name = "USERS_TOKEN",
-        uniqueConstraints = @UniqueConstraint(columnNames = "token")
+        indexes = {
+                @Index(name = "IX_USERS_TOKEN_DATE_SENT", columnList = "date_sent"),
+                @Index(name = "IX_USERS_TOKEN_LOOKUP_KEY", columnList = "lookup_key, date_sent")
+        }
 )
 @Getter
 @Setter
@@ -21,9 +28,16 @@ public class UserToken {
     @Column(name = "mail_base64", length = 512, nullable = false)
     private String mailBase64;
 
-    @Column(name = "token", length = 256, nullable = false, unique = true)
+    /** Null when {@link #tokenBin} spells the token back; {@link #getToken()} returns the full value. */
+    @Column(name = "token", length = 256)
+    @Getter(AccessLevel.NONE)
     private String token;
 
+    @Column(name = "token_bin", length = TokenCodec.BINARY_LENGTH)
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Setter(AccessLevel.NONE)
+    private byte[] tokenBin;
+
     @Column(name = "date_sent", nullable = false)
     private LocalDateTime dateSent;
 
@@ -33,15 +47,29 @@ public class UserToken {
     @Column(name = "subcategory", length = 100, nullable = false)
     private String subcategory;
 
+    @Column(name = "lookup_key")
+    private Long lookupKey;
+
+    public String getToken() {
+        return TokenCodec.fromColumns(token, tokenBin);
+    }
+
+    public void setToken(String token) {
+        this.token = TokenCodec.toText(token);
+        this.tokenBin = TokenCodec.toBinary(token);
+    }
+
     @PrePersist
     public void onCreate() {
         if (dateSent == null) {
             dateSent = LocalDateTime.now();
         }
+        lookupKey = LookupKey.of(mailBase64, category, subcategory);
     }
 
     @PreUpdate
     public void onUpdate() {
         dateSent = LocalDateTime.now();
+        lookupKey = LookupKey.of(mailBase64, category, subcategory);
     }
 }
@@ -0,0 +1,7 @@
+package com.seidor.seidor.pojo;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+@JsonPropertyOrder({"received", "created", "existing", "rejected"})
+public record BulkSubscribeResponse(int received, int created, int existing, int rejected) {
+}
@@ -0,0 +1,4 @@
+package com.seidor.seidor.pojo;
+
+public record MailSegmentKey(String mailBase64, String category, String subcategory) {
+}
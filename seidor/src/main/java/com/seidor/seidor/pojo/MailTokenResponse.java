@@ -0,0 +1,17 @@
+package com.seidor.seidor.pojo;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.token.TokenCodec;
+
+@JsonPropertyOrder({"mailBase64", "token"})
+public record MailTokenResponse(String mailBase64, String token) {
+
+    public MailTokenResponse(String mailBase64, String token, byte[] tokenBin) {
+        this(mailBase64, TokenCodec.fromColumns(token, tokenBin));
+    }
+
+    public static MailTokenResponse of(UserToken t) {
+        return new MailTokenResponse(t.getMailBase64(), t.getToken());
+    }
+}
@@ -0,0 +1,16 @@
+package com.seidor.seidor.pojo;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class SegmentRequest {
+
+    @NotBlank
+    private String category;
+
+    @NotBlank
+    private String subcategory;
+}
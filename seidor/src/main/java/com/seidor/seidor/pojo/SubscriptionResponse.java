@@ -0,0 +1,16 @@
+package com.seidor.seidor.pojo;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.seidor.seidor.model.User;
+
+import java.time.LocalDateTime;
+
+@JsonPropertyOrder({"id", "mailBase64", "category", "subcategory", "dateSubscribed"})
+public record SubscriptionResponse(Long id, String mailBase64, String category, String subcategory,
+                                   LocalDateTime dateSubscribed) {
+
+    public static SubscriptionResponse of(User u) {
+        return new SubscriptionResponse(u.getId(), u.getMailBase64(), u.getCategory(), u.getSubcategory(),
+                u.getDateSubscribed());
+    }
+}
@@ -0,0 +1,12 @@
+package com.seidor.seidor.pojo;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.seidor.seidor.model.UserToken;
+
+@JsonPropertyOrder({"id", "token", "category", "subcategory"})
+public record TokenCreatedResponse(Long id, String token, String category, String subcategory) {
+
+    public static TokenCreatedResponse of(UserToken t) {
+        return new TokenCreatedResponse(t.getId(), t.getToken(), t.getCategory(), t.getSubcategory());
+    }
+}
@@ -0,0 +1,16 @@
+package com.seidor.seidor.pojo;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.seidor.seidor.model.UserToken;
+
+import java.time.LocalDateTime;
+
+@JsonPropertyOrder({"id", "token", "category", "subcategory", "dateSent", "created", "refreshed"})
+public record TokenRefreshResponse(Long id, String token, String category, String subcategory,
+                                   LocalDateTime dateSent, boolean created, boolean refreshed) {
+
+    public static TokenRefreshResponse of(UserToken t, boolean created, boolean refreshed) {
+        return new TokenRefreshResponse(t.getId(), t.getToken(), t.getCategory(), t.getSubcategory(),
+                t.getDateSent(), created, refreshed);
+    }
+}
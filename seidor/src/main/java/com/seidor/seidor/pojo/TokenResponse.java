@@ -0,0 +1,16 @@
+package com.seidor.seidor.pojo;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.seidor.seidor.model.UserToken;
+
+import java.time.LocalDateTime;
+
+@JsonPropertyOrder({"id", "mailBase64", "token", "category", "subcategory", "dateSent"})
+public record TokenResponse(Long id, String mailBase64, String token, String category, String subcategory,
+                            LocalDateTime dateSent) {
+
+    public static TokenResponse of(UserToken t) {
+        return new TokenResponse(t.getId(), t.getMailBase64(), t.getToken(), t.getCategory(), t.getSubcategory(),
+                t.getDateSent());
+    }
+}
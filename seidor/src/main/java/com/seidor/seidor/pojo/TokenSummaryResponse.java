@@ -0,0 +1,19 @@
+package com.seidor.seidor.pojo;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.token.TokenCodec;
+
+import java.time.LocalDateTime;
+
+@JsonPropertyOrder({"id", "token", "dateSent"})
+public record TokenSummaryResponse(Long id, String token, LocalDateTime dateSent) {
+
+    public TokenSummaryResponse(Long id, String token, byte[] tokenBin, LocalDateTime dateSent) {
+        this(id, TokenCodec.fromColumns(token, tokenBin), dateSent);
+    }
+
+    public static TokenSummaryResponse of(UserToken t) {
+        return new TokenSummaryResponse(t.getId(), t.getToken(), t.getDateSent());
+    }
+}
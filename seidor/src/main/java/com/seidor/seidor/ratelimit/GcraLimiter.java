@@ -0,0 +1,101 @@
+package com.seidor.seidor.ratelimit;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-key rate limit with the generic cell rate algorithm: one arrival time per key,
+ * updated by CAS. At most {@code maxKeys} keys are tracked.
+ */
+public final class GcraLimiter {
+
+    private static final long FULL_SWEEP_BACKOFF_NANOS = 1_000_000_000L;
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final int maxKeys;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, AtomicLong> arrivals = new ConcurrentHashMap<>();
+    // keys in the order they started being tracked; entries of removed keys are skipped
+    private final ConcurrentLinkedQueue<Tracked> order = new ConcurrentLinkedQueue<>();
+    private final AtomicLong lastFullSweep;
+
+    public GcraLimiter(int permits, Duration period, int burst, int maxKeys, LongSupplier clock) {
+        this.intervalNanos = Math.max(1, period.toNanos() / Math.max(1, permits));
+        this.toleranceNanos = intervalNanos * (Math.max(1, burst) - 1);
+        this.maxKeys = Math.max(1, maxKeys);
+        this.clock = clock;
+        this.lastFullSweep = new AtomicLong(clock.getAsLong() - FULL_SWEEP_BACKOFF_NANOS);
+    }
+
+    /** Returns 0 if granted, otherwise the nanos until a permit is available. */
+    public long tryAcquire(String key) {
+        AtomicLong tat = arrivals.get(key);
+        if (tat == null) {
+            tat = track(key);
+        }
+        while (true) {
+            long now = clock.getAsLong();
+            long stored = tat.get();
+            long start = stored - now > 0 ? stored : now;
+            long wait = start - toleranceNanos - now;
+            if (wait > 0) {
+                return wait;
+            }
+            if (tat.compareAndSet(stored, start + intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    // a permit taken while its key is removed may be forgotten, which only errs towards allowing one more
+    public int evictIdle() {
+        long now = clock.getAsLong();
+        int before = arrivals.size();
+        arrivals.values().removeIf(tat -> tat.get() - now <= 0);
+        order.removeIf(t -> arrivals.get(t.key()) != t.tat());
+        return before - arrivals.size();
+    }
+
+    public int size() {
+        return arrivals.size();
+    }
+
+    private AtomicLong track(String key) {
+        if (arrivals.size() >= maxKeys) {
+            // a full scan per new key would be quadratic under a flood of distinct keys
+            long now = clock.getAsLong();
+            long last = lastFullSweep.get();
+            if (now - last >= FULL_SWEEP_BACKOFF_NANOS && lastFullSweep.compareAndSet(last, now)) {
+                evictIdle();
+            }
+            while (arrivals.size() >= maxKeys && evictOldest()) {
+                // keep going: concurrent callers may have added keys meanwhile
+            }
+        }
+        boolean[] added = {false};
+        AtomicLong tat = arrivals.computeIfAbsent(key, k -> {
+            added[0] = true;
+            return new AtomicLong(clock.getAsLong());
+        });
+        if (added[0]) {
+            order.add(new Tracked(key, tat));
+        }
+        return tat;
+    }
+
+    private boolean evictOldest() {
+        for (Tracked t; (t = order.poll()) != null; ) {
+            if (arrivals.remove(t.key(), t.tat())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record Tracked(String key, AtomicLong tat) {
+    }
+}
@@ -0,0 +1,109 @@
+package com.seidor.seidor.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+@Component
+public class TokenRateLimiter {
+
+    private final boolean enabled;
+    private final GcraLimiter byMail;
+    private final GcraLimiter byIp;
+
+    private final Counter mailAllowed;
+    private final Counter mailLimited;
+    private final Counter ipAllowed;
+    private final Counter ipLimited;
+
+    @Autowired
+    public TokenRateLimiter(MeterRegistry registry,
+                            @Value("${seidor.tokens.rate-limit.enabled:false}") boolean enabled,
+                            @Value("${seidor.tokens.rate-limit.max-keys:100000}") int maxKeys,
+                            @Value("${seidor.tokens.rate-limit.mail.permits:10}") int mailPermits,
+                            @Value("${seidor.tokens.rate-limit.mail.period:PT1M}") Duration mailPeriod,
+                            @Value("${seidor.tokens.rate-limit.mail.burst:5}") int mailBurst,
+                            @Value("${seidor.tokens.rate-limit.ip.enabled:false}") boolean ipEnabled,
+                            @Value("${seidor.tokens.rate-limit.ip.permits:120}") int ipPermits,
+                            @Value("${seidor.tokens.rate-limit.ip.period:PT1M}") Duration ipPeriod,
+                            @Value("${seidor.tokens.rate-limit.ip.burst:30}") int ipBurst) {
+        this(registry, enabled, maxKeys, mailPermits, mailPeriod, mailBurst,
+                ipEnabled, ipPermits, ipPeriod, ipBurst, System::nanoTime);
+    }
+
+    TokenRateLimiter(MeterRegistry registry, boolean enabled, int maxKeys,
+                     int mailPermits, Duration mailPeriod, int mailBurst,
+                     boolean ipEnabled, int ipPermits, Duration ipPeriod, int ipBurst,
+                     LongSupplier clock) {
+        this.enabled = enabled;
+        this.byMail = new GcraLimiter(mailPermits, mailPeriod, mailBurst, maxKeys, clock);
+        this.byIp = ipEnabled ? new GcraLimiter(ipPermits, ipPeriod, ipBurst, maxKeys, clock) : null;
+
+        this.mailAllowed = Counter.builder("tokens.ratelimit.requests").tag("scope", "mail").tag("result", "allowed")
+                .register(registry);
+        this.mailLimited = Counter.builder("tokens.ratelimit.requests").tag("scope", "mail").tag("result", "limited")
+                .register(registry);
+        this.ipAllowed = Counter.builder("tokens.ratelimit.requests").tag("scope", "ip").tag("result", "allowed")
+                .register(registry);
+        this.ipLimited = Counter.builder("tokens.ratelimit.requests").tag("scope", "ip").tag("result", "limited")
+                .register(registry);
+        Gauge.builder("tokens.ratelimit.keys", byMail, GcraLimiter::size).tag("scope", "mail").register(registry);
+        if (byIp != null) {
+            Gauge.builder("tokens.ratelimit.keys", byIp, GcraLimiter::size).tag("scope", "ip").register(registry);
+        }
+    }
+
+    /** A null mail is only limited by IP. */
+    public Decision acquire(String mailBase64, String clientIp) {
+        if (!enabled) return Decision.ALLOWED;
+
+        if (byIp != null && clientIp != null) {
+            long wait = byIp.tryAcquire(clientIp);
+            if (wait > 0) {
+                ipLimited.increment();
+                return Decision.limited(wait);
+            }
+            ipAllowed.increment();
+        }
+        if (mailBase64 != null) {
+            long wait = byMail.tryAcquire(mailBase64);
+            if (wait > 0) {
+                mailLimited.increment();
+                return Decision.limited(wait);
+            }
+            mailAllowed.increment();
+        }
+        return Decision.ALLOWED;
+    }
+
+    @Scheduled(fixedDelayString = "${seidor.tokens.rate-limit.sweep-interval:PT1M}")
+    public void evictIdle() {
+        byMail.evictIdle();
+        if (byIp != null) {
+            byIp.evictIdle();
+        }
+    }
+
+    public static class Decision {
+        static final Decision ALLOWED = new Decision(true, 0);
+
+        public final boolean allowed;
+        public final long retryAfterSeconds;
+
+        Decision(boolean allowed, long retryAfterSeconds) {
+            this.allowed = allowed;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        static Decision limited(long waitNanos) {
+            return new Decision(false, Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L));
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.seidor.seidor.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/** Whether every row already has its lookup_key; set by the backfill job when it is done. */
+@Component
+public class LookupKeyBackfillState {
+
+    private volatile boolean complete;
+
+    public LookupKeyBackfillState(@Value("${seidor.lookup-key.backfilled:false}") boolean complete) {
+        this.complete = complete;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void markComplete() {
+        complete = true;
+    }
+}
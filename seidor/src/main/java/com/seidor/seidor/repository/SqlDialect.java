@@ -0,0 +1,30 @@
+package com.seidor.seidor.repository;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tells the JDBC repositories whether they talk to SQL Server, so they can use
+ * T-SQL only statements there and portable fallbacks elsewhere (H2 in tests).
+ */
+@Component
+public class SqlDialect {
+
+    private final JdbcTemplate jdbc;
+    private volatile Boolean sqlServer;
+
+    public SqlDialect(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    public boolean isSqlServer() {
+        Boolean cached = sqlServer;
+        if (cached == null) {
+            cached = jdbc.execute((ConnectionCallback<Boolean>) con ->
+                    con.getMetaData().getDatabaseProductName().startsWith("Microsoft SQL Server"));
+            sqlServer = cached;
+        }
+        return cached;
+    }
+}
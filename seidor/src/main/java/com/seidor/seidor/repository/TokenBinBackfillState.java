@@ -0,0 +1,23 @@
+package com.seidor.seidor.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/** Whether every token with a binary form already has its token_bin; set by the backfill job when it is done. */
+@Component
+public class TokenBinBackfillState {
+
+    private volatile boolean complete;
+
+    public TokenBinBackfillState(@Value("${seidor.tokens.bin-backfilled:false}") boolean complete) {
+        this.complete = complete;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void markComplete() {
+        complete = true;
+    }
+}
@@ -0,0 +1,75 @@
+package com.seidor.seidor.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Unique indexes on USERS_TOKEN.token and token_bin that ignore nulls, which the schema
+ * update can't create.
+ */
+@Component
+public class TokenIndexes {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenIndexes.class);
+
+    private static final String SQL_SERVER = """
+            SET XACT_ABORT ON;
+            BEGIN TRANSACTION;
+            IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE object_id = OBJECT_ID('USERS_TOKEN')
+                           AND name = 'IX_USERS_TOKEN_TOKEN_BIN' AND is_unique = 1)
+            BEGIN
+                IF EXISTS (SELECT 1 FROM sys.indexes WHERE object_id = OBJECT_ID('USERS_TOKEN')
+                           AND name = 'IX_USERS_TOKEN_TOKEN_BIN')
+                    DROP INDEX IX_USERS_TOKEN_TOKEN_BIN ON USERS_TOKEN;
+                CREATE UNIQUE INDEX IX_USERS_TOKEN_TOKEN_BIN ON USERS_TOKEN (token_bin)
+                    WHERE token_bin IS NOT NULL;
+            END
+            IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE object_id = OBJECT_ID('USERS_TOKEN')
+                           AND name = 'IX_USERS_TOKEN_TOKEN')
+            BEGIN
+                DECLARE @uq SYSNAME;
+                SELECT @uq = kc.name
+                  FROM sys.key_constraints kc
+                  JOIN sys.index_columns ic ON ic.object_id = kc.parent_object_id AND ic.index_id = kc.unique_index_id
+                  JOIN sys.columns c ON c.object_id = ic.object_id AND c.column_id = ic.column_id
+                 WHERE kc.parent_object_id = OBJECT_ID('USERS_TOKEN') AND kc.type = 'UQ' AND c.name = 'token';
+                IF @uq IS NOT NULL
+                    EXEC('ALTER TABLE USERS_TOKEN DROP CONSTRAINT ' + QUOTENAME(@uq));
+                ALTER TABLE USERS_TOKEN ALTER COLUMN token NVARCHAR(256) NULL;
+                CREATE UNIQUE INDEX IX_USERS_TOKEN_TOKEN ON USERS_TOKEN (token) WHERE token IS NOT NULL;
+            END
+            COMMIT;
+            """;
+
+    private static final String[] PORTABLE = {
+            "ALTER TABLE USERS_TOKEN ALTER COLUMN token SET NULL",
+            "CREATE UNIQUE INDEX IF NOT EXISTS IX_USERS_TOKEN_TOKEN ON USERS_TOKEN (token)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS IX_USERS_TOKEN_TOKEN_BIN ON USERS_TOKEN (token_bin)"
+    };
+
+    private final JdbcTemplate jdbc;
+    private final SqlDialect dialect;
+
+    public TokenIndexes(JdbcTemplate jdbc, SqlDialect dialect) {
+        this.jdbc = jdbc;
+        this.dialect = dialect;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensure() {
+        try {
+            if (dialect.isSqlServer()) {
+                jdbc.execute(SQL_SERVER);
+            } else {
+                jdbc.batchUpdate(PORTABLE);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not create the USERS_TOKEN token indexes; token lookups will scan", e);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.seidor.seidor.repository;
+
+import com.seidor.seidor.model.LookupKey;
+import com.seidor.seidor.model.User;
+import com.seidor.seidor.pojo.MailSegmentKey;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Plain JDBC access to USER_SUBSCRIPTION for paths where hydrating managed
+ * entities would cost more than the query itself (exports, bulk writes).
+ */
+@Repository
+public class UserJdbcRepository {
+
+    // same parameters either way; the keyed form drops the branch for rows not yet backfilled
+    private static final String INSERT_IF_ABSENT = insertIfAbsent("(lookup_key = ? OR lookup_key IS NULL)");
+    private static final String INSERT_IF_ABSENT_KEYED = insertIfAbsent("lookup_key = ?");
+
+    private final JdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate named;
+    private final int fetchSize;
+    private final LookupKeyBackfillState lookupKeys;
+
+    public UserJdbcRepository(JdbcTemplate jdbc,
+                              @Value("${seidor.export.fetch-size:1000}") int fetchSize,
+                              LookupKeyBackfillState lookupKeys) {
+        this.jdbc = jdbc;
+        this.named = new NamedParameterJdbcTemplate(jdbc);
+        this.fetchSize = fetchSize;
+        this.lookupKeys = lookupKeys;
+    }
+
+    /** True once no row can lack its lookup_key, so lookups may seek on the key alone. */
+    public boolean isLookupKeyBackfilled() {
+        return lookupKeys.isComplete();
+    }
+
+    public void streamAll(Consumer<User> sink) {
+        jdbc.query(con -> {
+            var ps = con.prepareStatement(
+                    "SELECT id, mail_base64, category, subcategory, date_subscribed "
+                            + "FROM USER_SUBSCRIPTION ORDER BY id",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, rs -> {
+            sink.accept(mapUser(rs));
+        });
+    }
+
+    public void streamMailsBySegment(String category, String subcategory, Consumer<String> sink) {
+        jdbc.query(con -> {
+            var ps = con.prepareStatement(
+                    "SELECT mail_base64 FROM USER_SUBSCRIPTION "
+                            + "WHERE category = ? AND subcategory = ? ORDER BY id",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setString(1, category);
+            ps.setString(2, subcategory);
+            return ps;
+        }, rs -> {
+            sink.accept(rs.getString(1));
+        });
+    }
+
+    public void streamDistinctMailsBySegment(String category, String subcategory, Consumer<String> sink) {
+        jdbc.query(con -> {
+            var ps = con.prepareStatement(
+                    "SELECT DISTINCT mail_base64 FROM USER_SUBSCRIPTION "
+                            + "WHERE category = ? AND subcategory = ?",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setString(1, category);
+            ps.setString(2, subcategory);
+            return ps;
+        }, rs -> {
+            sink.accept(rs.getString(1));
+        });
+    }
+
+    /** One set-based query per call. */
+    public Set<String> findExistingMails(String category, String subcategory, Collection<String> mails) {
+        List<Long> keys = new ArrayList<>(mails.size());
+        for (String mail : mails) {
+            keys.add(LookupKey.of(mail, category, subcategory));
+        }
+        var params = new MapSqlParameterSource()
+                .addValue("keys", keys)
+                .addValue("category", category)
+                .addValue("subcategory", subcategory)
+                .addValue("mails", mails);
+
+        String keyPredicate = lookupKeys.isComplete()
+                ? "lookup_key IN (:keys) "
+                : "(lookup_key IN (:keys) OR lookup_key IS NULL) ";
+        return new HashSet<>(named.queryForList(
+                "SELECT mail_base64 FROM USER_SUBSCRIPTION WHERE " + keyPredicate
+                        + "AND category = :category AND subcategory = :subcategory AND mail_base64 IN (:mails)",
+                params, String.class));
+    }
+
+    /** Empty if the triple was already there, including when a concurrent insert wins the race. */
+    public Optional<Long> insertIfAbsent(String mailBase64, String category, String subcategory,
+                                         LocalDateTime dateSubscribed) {
+        var keys = new GeneratedKeyHolder();
+        int inserted;
+        try {
+            inserted = jdbc.update(con -> {
+                var ps = con.prepareStatement(insertIfAbsentSql(), Statement.RETURN_GENERATED_KEYS);
+                bindInsertIfAbsent(ps, mailBase64, category, subcategory, Timestamp.valueOf(dateSubscribed));
+                return ps;
+            }, keys);
+        } catch (DuplicateKeyException e) {
+            return Optional.empty();
+        }
+        if (inserted == 0 || keys.getKey() == null) {
+            return Optional.empty();
+        }
+        return Optional.of(keys.getKey().longValue());
+    }
+
+    /** A {@link DuplicateKeyException} rolls the whole batch back. */
+    @Transactional
+    public int insertAll(List<MailSegmentKey> rows, LocalDateTime dateSubscribed) {
+        Timestamp ts = Timestamp.valueOf(dateSubscribed);
+        int[][] counts = jdbc.batchUpdate(insertIfAbsentSql(), rows, rows.size(), (ps, row) ->
+                bindInsertIfAbsent(ps, row.mailBase64(), row.category(), row.subcategory(), ts));
+
+        int written = 0;
+        for (int[] batch : counts) {
+            for (int c : batch) {
+                written += c == Statement.SUCCESS_NO_INFO ? 1 : c;
+            }
+        }
+        return written;
+    }
+
+    // every duplicate except the oldest row of each triple, paged by id
+    public List<Long> findDuplicateIds(long afterId, int limit) {
+        return jdbc.queryForList(
+                "SELECT u.id FROM USER_SUBSCRIPTION u WHERE u.id > ? AND EXISTS ("
+                        + "SELECT 1 FROM USER_SUBSCRIPTION k WHERE k.mail_base64 = u.mail_base64 "
+                        + "AND k.category = u.category AND k.subcategory = u.subcategory AND k.id < u.id) "
+                        + "ORDER BY u.id OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY",
+                Long.class, afterId, limit);
+    }
+
+    @Transactional
+    public int deleteByIds(Collection<Long> ids) {
+        return named.update("DELETE FROM USER_SUBSCRIPTION WHERE id IN (:ids)",
+                new MapSqlParameterSource("ids", ids));
+    }
+
+    public List<User> findWithoutLookupKey(long afterId, int limit) {
+        return jdbc.query(
+                "SELECT id, mail_base64, category, subcategory FROM USER_SUBSCRIPTION "
+                        + "WHERE lookup_key IS NULL AND id > ? ORDER BY id OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY",
+                (rs, i) -> {
+                    User u = new User();
+                    u.setId(rs.getLong(1));
+                    u.setMailBase64(rs.getString(2));
+                    u.setCategory(rs.getString(3));
+                    u.setSubcategory(rs.getString(4));
+                    return u;
+                },
+                afterId, limit);
+    }
+
+    @Transactional
+    public void updateLookupKeys(List<User> rows) {
+        jdbc.batchUpdate("UPDATE USER_SUBSCRIPTION SET lookup_key = ? WHERE id = ?", rows, rows.size(),
+                (ps, u) -> {
+                    ps.setLong(1, LookupKey.of(u.getMailBase64(), u.getCategory(), u.getSubcategory()));
+                    ps.setLong(2, u.getId());
+                });
+    }
+
+    private String insertIfAbsentSql() {
+        return lookupKeys.isComplete() ? INSERT_IF_ABSENT_KEYED : INSERT_IF_ABSENT;
+    }
+
+    private static String insertIfAbsent(String keyPredicate) {
+        return "INSERT INTO USER_SUBSCRIPTION (mail_base64, category, subcategory, date_subscribed, lookup_key) "
+                + "SELECT ?, ?, ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM USER_SUBSCRIPTION "
+                + "WHERE " + keyPredicate + " "
+                + "AND mail_base64 = ? AND category = ? AND subcategory = ?)";
+    }
+
+    private static void bindInsertIfAbsent(PreparedStatement ps, String mailBase64, String category,
+                                           String subcategory, Timestamp ts) throws SQLException {
+        long key = LookupKey.of(mailBase64, category, subcategory);
+        ps.setString(1, mailBase64);
+        ps.setString(2, category);
+        ps.setString(3, subcategory);
+        ps.setTimestamp(4, ts);
+        ps.setLong(5, key);
+        ps.setLong(6, key);
+        ps.setString(7, mailBase64);
+        ps.setString(8, category);
+        ps.setString(9, subcategory);
+    }
+
+    private static User mapUser(ResultSet rs) throws SQLException {
+        User u = new User();
+        u.setId(rs.getLong("id"));
+        u.setMailBase64(rs.getString("mail_base64"));
+        u.setCategory(rs.getString("category"));
+        u.setSubcategory(rs.getString("subcategory"));
+        Timestamp subscribed = rs.getTimestamp("date_subscribed");
+        u.setDateSubscribed(subscribed == null ? null : subscribed.toLocalDateTime());
+        return u;
+    }
+}
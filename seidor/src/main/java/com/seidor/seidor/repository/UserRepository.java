@@ -1,17 +1,66 @@
 package com.seidor.seidor.repository;
 
+import com.seidor.seidor.cache.SubscriptionCache;
+import com.seidor.seidor.model.LookupKey;
 import com.seidor.seidor.model.User;
+import com.seidor.seidor.pojo.SubscriptionResponse;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
 public interface UserRepository extends JpaRepository<User, Long> {
 
-    List<User> findByCategoryAndSubcategory(String category, String subcategory);
+    @Query("SELECT new com.seidor.seidor.pojo.SubscriptionResponse(u.id, u.mailBase64, u.category, u.subcategory, "
+            + "u.dateSubscribed) FROM User u WHERE u.id > :after ORDER BY u.id")
+    List<SubscriptionResponse> findPageAfter(@Param("after") long after, Limit limit);
 
-    List<User> findByMailBase64AndCategoryAndSubcategory(
+    /** JDBC writers evict the cached results through {@link SubscriptionCache}. */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SubscriptionCache.SEGMENT_REGION)
+    })
+    @Query("SELECT u.mailBase64 FROM User u WHERE u.category = :category AND u.subcategory = :subcategory")
+    List<String> findMailsByCategoryAndSubcategory(@Param("category") String category,
+                                                   @Param("subcategory") String subcategory);
+
+    // lookup_key first, then the full columns, since rows not yet backfilled have no key
+    default List<User> findByMailBase64AndCategoryAndSubcategory(
             String mailBase64,
             String category,
             String subcategory
-    );
+    ) {
+        return findByMailBase64AndCategoryAndSubcategory(mailBase64, category, subcategory, false);
+    }
+
+    default List<User> findByMailBase64AndCategoryAndSubcategory(
+            String mailBase64,
+            String category,
+            String subcategory,
+            boolean backfilled
+    ) {
+        long key = LookupKey.of(mailBase64, category, subcategory);
+        return backfilled
+                ? findByBackfilledLookupKey(key, mailBase64, category, subcategory)
+                : findByLookupKey(key, mailBase64, category, subcategory);
+    }
+
+    @Query("SELECT u FROM User u WHERE (u.lookupKey = :key OR u.lookupKey IS NULL) "
+            + "AND u.mailBase64 = :mail AND u.category = :category AND u.subcategory = :subcategory")
+    List<User> findByLookupKey(@Param("key") long key,
+                               @Param("mail") String mailBase64,
+                               @Param("category") String category,
+                               @Param("subcategory") String subcategory);
+
+    @Query("SELECT u FROM User u WHERE u.lookupKey = :key "
+            + "AND u.mailBase64 = :mail AND u.category = :category AND u.subcategory = :subcategory")
+    List<User> findByBackfilledLookupKey(@Param("key") long key,
+                                         @Param("mail") String mailBase64,
+                                         @Param("category") String category,
+                                         @Param("subcategory") String subcategory);
 }
@@ -0,0 +1,392 @@
+package com.seidor.seidor.repository;
+
+import com.seidor.seidor.model.LookupKey;
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.token.TokenCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Plain JDBC access to USERS_TOKEN for paths where hydrating managed
+ * entities would cost more than the query itself.
+ */
+@Repository
+public class UserTokenJdbcRepository {
+
+    // the newest row is read under UPDLOCK/HOLDLOCK, which also range-locks the triple on
+    // IX_USERS_TOKEN_LOOKUP_KEY so a concurrent first call can't insert too
+    private static final String REFRESH_SQL_SERVER_TEMPLATE = """
+            SET NOCOUNT ON;
+            DECLARE @id BIGINT, @sent DATETIME2, @old NVARCHAR(256), @oldBin BINARY(16);
+            SELECT TOP 1 @id = id, @sent = date_sent, @old = token, @oldBin = token_bin
+              FROM USERS_TOKEN WITH (UPDLOCK, HOLDLOCK)
+             WHERE %s
+               AND mail_base64 = ? AND category = ? AND subcategory = ?
+             ORDER BY date_sent DESC;
+            IF @id IS NULL
+                INSERT INTO USERS_TOKEN (mail_base64, token, token_bin, date_sent, category, subcategory, lookup_key)
+                OUTPUT inserted.id, inserted.token, inserted.token_bin, inserted.date_sent,
+                       CAST(1 AS BIT) AS created, CAST(1 AS BIT) AS refreshed,
+                       CAST(NULL AS NVARCHAR(256)) AS previous_token, CAST(NULL AS BINARY(16)) AS previous_bin
+                VALUES (?, ?, ?, ?, ?, ?, ?);
+            ELSE IF @sent IS NULL OR @sent < ?
+                UPDATE USERS_TOKEN SET token = ?, token_bin = ?, date_sent = ?
+                OUTPUT inserted.id, inserted.token, inserted.token_bin, inserted.date_sent,
+                       CAST(0 AS BIT) AS created, CAST(1 AS BIT) AS refreshed,
+                       deleted.token AS previous_token, deleted.token_bin AS previous_bin
+                WHERE id = @id;
+            ELSE
+                SELECT @id AS id, @old AS token, @oldBin AS token_bin, @sent AS date_sent,
+                       CAST(0 AS BIT) AS created, CAST(0 AS BIT) AS refreshed,
+                       CAST(NULL AS NVARCHAR(256)) AS previous_token, CAST(NULL AS BINARY(16)) AS previous_bin;
+            """;
+
+    // same parameters either way; the keyed form drops the branch for rows not yet backfilled
+    private static final String REFRESH_SQL_SERVER =
+            REFRESH_SQL_SERVER_TEMPLATE.formatted("(lookup_key = ? OR lookup_key IS NULL)");
+    private static final String REFRESH_SQL_SERVER_KEYED = REFRESH_SQL_SERVER_TEMPLATE.formatted("lookup_key = ?");
+
+    // 7 parameters per row, under SQL Server's limit of 2100 per statement
+    private static final int INSERT_OUTPUT_ROWS = 250;
+
+    // stripes serializing portable refreshes of one triple within this process
+    private static final int REFRESH_STRIPES = 64;
+
+    private final JdbcTemplate jdbc;
+    private final SqlDialect dialect;
+    private final int fetchSize;
+    private final LookupKeyBackfillState lookupKeys;
+    private final TokenBinBackfillState tokenBins;
+    private final ReentrantLock[] refreshLocks = new ReentrantLock[REFRESH_STRIPES];
+
+    public UserTokenJdbcRepository(JdbcTemplate jdbc,
+                                   SqlDialect dialect,
+                                   @Value("${seidor.export.fetch-size:1000}") int fetchSize,
+                                   LookupKeyBackfillState lookupKeys,
+                                   TokenBinBackfillState tokenBins) {
+        this.jdbc = jdbc;
+        this.dialect = dialect;
+        this.fetchSize = fetchSize;
+        this.lookupKeys = lookupKeys;
+        this.tokenBins = tokenBins;
+        for (int i = 0; i < REFRESH_STRIPES; i++) {
+            refreshLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /** True once no row can lack its lookup_key, so lookups may seek on the key alone. */
+    public boolean isLookupKeyBackfilled() {
+        return lookupKeys.isComplete();
+    }
+
+    /** True once every token with a binary form has it in token_bin, so a miss there is final. */
+    public boolean isTokenBinBackfilled() {
+        return tokenBins.isComplete();
+    }
+
+    @Transactional
+    public RefreshRow refreshOrCreate(String mailBase64, String category, String subcategory,
+                                      String newToken, LocalDateTime now, LocalDateTime cutoff) {
+        return dialect.isSqlServer()
+                ? refreshSqlServer(mailBase64, category, subcategory, newToken, now, cutoff)
+                : refreshPortable(mailBase64, category, subcategory, newToken, now, cutoff);
+    }
+
+    private RefreshRow refreshSqlServer(String mailBase64, String category, String subcategory,
+                                        String newToken, LocalDateTime now, LocalDateTime cutoff) {
+        Timestamp nowTs = Timestamp.valueOf(now);
+        long key = LookupKey.of(mailBase64, category, subcategory);
+        String text = TokenCodec.toText(newToken);
+        byte[] bin = TokenCodec.toBinary(newToken);
+        return jdbc.execute((ConnectionCallback<RefreshRow>) con -> {
+            String sql = lookupKeys.isComplete() ? REFRESH_SQL_SERVER_KEYED : REFRESH_SQL_SERVER;
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                ps.setLong(1, key);
+                ps.setString(2, mailBase64);
+                ps.setString(3, category);
+                ps.setString(4, subcategory);
+                ps.setString(5, mailBase64);
+                ps.setString(6, text);
+                ps.setBytes(7, bin);
+                ps.setTimestamp(8, nowTs);
+                ps.setString(9, category);
+                ps.setString(10, subcategory);
+                ps.setLong(11, key);
+                ps.setTimestamp(12, Timestamp.valueOf(cutoff));
+                ps.setString(13, text);
+                ps.setBytes(14, bin);
+                ps.setTimestamp(15, nowTs);
+
+                boolean isResultSet = ps.execute();
+                while (!isResultSet && ps.getUpdateCount() != -1) {
+                    isResultSet = ps.getMoreResults();
+                }
+                if (!isResultSet) {
+                    throw new SQLException("refresh statement returned no row");
+                }
+                try (ResultSet rs = ps.getResultSet()) {
+                    rs.next();
+                    UserToken t = tokenRow(rs.getLong("id"), mailBase64,
+                            TokenCodec.fromColumns(rs.getString("token"), rs.getBytes("token_bin")),
+                            rs.getTimestamp("date_sent"), category, subcategory);
+                    return new RefreshRow(t, rs.getBoolean("created"), rs.getBoolean("refreshed"),
+                            TokenCodec.fromColumns(rs.getString("previous_token"), rs.getBytes("previous_bin")));
+                }
+            }
+        });
+    }
+
+    private RefreshRow refreshPortable(String mailBase64, String category, String subcategory,
+                                       String newToken, LocalDateTime now, LocalDateTime cutoff) {
+        long key = LookupKey.of(mailBase64, category, subcategory);
+        ReentrantLock stripe = refreshLocks[(int) (key & (REFRESH_STRIPES - 1))];
+        stripe.lock();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                return refreshLocked(key, mailBase64, category, subcategory, newToken, now, cutoff);
+            } finally {
+                stripe.unlock();
+            }
+        }
+        // held until the transaction ends, so the next caller reads the committed row
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                stripe.unlock();
+            }
+        });
+        return refreshLocked(key, mailBase64, category, subcategory, newToken, now, cutoff);
+    }
+
+    private RefreshRow refreshLocked(long key, String mailBase64, String category, String subcategory,
+                                     String newToken, LocalDateTime now, LocalDateTime cutoff) {
+        String keyPredicate = lookupKeys.isComplete() ? "lookup_key = ? " : "(lookup_key = ? OR lookup_key IS NULL) ";
+        List<UserToken> latest = jdbc.query(
+                "SELECT id, token, token_bin, date_sent FROM USERS_TOKEN WHERE " + keyPredicate
+                        + "AND mail_base64 = ? AND category = ? AND subcategory = ? "
+                        + "ORDER BY date_sent DESC FETCH FIRST 1 ROWS ONLY FOR UPDATE",
+                (rs, i) -> tokenRow(rs.getLong(1), mailBase64, TokenCodec.fromColumns(rs.getString(2), rs.getBytes(3)),
+                        rs.getTimestamp(4), category, subcategory),
+                key, mailBase64, category, subcategory);
+
+        Timestamp nowTs = Timestamp.valueOf(now);
+        String text = TokenCodec.toText(newToken);
+        byte[] bin = TokenCodec.toBinary(newToken);
+
+        if (latest.isEmpty()) {
+            var keys = new GeneratedKeyHolder();
+            jdbc.update(con -> {
+                var ps = con.prepareStatement(
+                        "INSERT INTO USERS_TOKEN (mail_base64, token, token_bin, date_sent, category, subcategory, "
+                                + "lookup_key) VALUES (?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+                ps.setString(1, mailBase64);
+                ps.setString(2, text);
+                ps.setBytes(3, bin);
+                ps.setTimestamp(4, nowTs);
+                ps.setString(5, category);
+                ps.setString(6, subcategory);
+                ps.setLong(7, key);
+                return ps;
+            }, keys);
+            UserToken t = tokenRow(keys.getKey().longValue(), mailBase64, newToken, nowTs, category, subcategory);
+            return new RefreshRow(t, true, true, null);
+        }
+
+        UserToken existing = latest.get(0);
+        if (existing.getDateSent() == null || existing.getDateSent().isBefore(cutoff)) {
+            String previous = existing.getToken();
+            jdbc.update("UPDATE USERS_TOKEN SET token = ?, token_bin = ?, date_sent = ? WHERE id = ?",
+                    text, bin, nowTs, existing.getId());
+            existing.setToken(newToken);
+            existing.setDateSent(now);
+            return new RefreshRow(existing, false, true, previous);
+        }
+        return new RefreshRow(existing, false, false, null);
+    }
+
+    public void streamMailsAndTokens(String category, String subcategory, BiConsumer<String, String> sink) {
+        jdbc.query(con -> {
+            var ps = con.prepareStatement(
+                    "SELECT mail_base64, token, token_bin FROM USERS_TOKEN "
+                            + "WHERE category = ? AND subcategory = ? ORDER BY id",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setString(1, category);
+            ps.setString(2, subcategory);
+            return ps;
+        }, rs -> {
+            sink.accept(rs.getString(1), TokenCodec.fromColumns(rs.getString(2), rs.getBytes(3)));
+        });
+    }
+
+    public void streamTokens(Consumer<String> sink) {
+        jdbc.query(con -> {
+            var ps = con.prepareStatement("SELECT token, token_bin FROM USERS_TOKEN",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, rs -> {
+            sink.accept(TokenCodec.fromColumns(rs.getString(1), rs.getBytes(2)));
+        });
+    }
+
+    public long countTokens() {
+        Long n = jdbc.queryForObject("SELECT COUNT(*) FROM USERS_TOKEN", Long.class);
+        return n == null ? 0 : n;
+    }
+
+    @Transactional
+    public void insertAll(List<UserToken> rows) {
+        jdbc.batchUpdate(
+                "INSERT INTO USERS_TOKEN (mail_base64, token, token_bin, date_sent, category, subcategory, lookup_key) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                rows, rows.size(), (ps, t) -> setInsertValues(ps, 0, t));
+    }
+
+    // SQL Server: multi-row INSERT ... OUTPUT, ids matched back by token
+    @Transactional
+    public void insertAllReturningIds(List<UserToken> rows) {
+        if (dialect.isSqlServer()) {
+            for (int from = 0; from < rows.size(); from += INSERT_OUTPUT_ROWS) {
+                insertOutput(rows.subList(from, Math.min(rows.size(), from + INSERT_OUTPUT_ROWS)));
+            }
+            return;
+        }
+        var keys = new GeneratedKeyHolder();
+        jdbc.batchUpdate(con -> con.prepareStatement(
+                "INSERT INTO USERS_TOKEN (mail_base64, token, token_bin, date_sent, category, subcategory, lookup_key) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?)", new String[]{"id"}), new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                setInsertValues(ps, 0, rows.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        }, keys);
+        List<Map<String, Object>> ids = keys.getKeyList();
+        for (int i = 0; i < rows.size(); i++) {
+            rows.get(i).setId(((Number) ids.get(i).values().iterator().next()).longValue());
+        }
+    }
+
+    private void insertOutput(List<UserToken> rows) {
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO USERS_TOKEN (mail_base64, token, token_bin, date_sent, category, subcategory, lookup_key) "
+                        + "OUTPUT inserted.id, inserted.token, inserted.token_bin VALUES ");
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?, ?)");
+        }
+        Map<String, Long> ids = new HashMap<>();
+        jdbc.query(con -> {
+            var ps = con.prepareStatement(sql.toString());
+            for (int i = 0; i < rows.size(); i++) {
+                setInsertValues(ps, i * 7, rows.get(i));
+            }
+            return ps;
+        }, rs -> {
+            ids.put(TokenCodec.fromColumns(rs.getString(2), rs.getBytes(3)), rs.getLong(1));
+        });
+        // OUTPUT rows come back in no particular order; token is unique
+        rows.forEach(t -> t.setId(ids.get(t.getToken())));
+    }
+
+    private static void setInsertValues(PreparedStatement ps, int offset, UserToken t) throws SQLException {
+        ps.setString(offset + 1, t.getMailBase64());
+        ps.setString(offset + 2, TokenCodec.toText(t.getToken()));
+        ps.setBytes(offset + 3, t.getTokenBin());
+        ps.setTimestamp(offset + 4, Timestamp.valueOf(t.getDateSent()));
+        ps.setString(offset + 5, t.getCategory());
+        ps.setString(offset + 6, t.getSubcategory());
+        ps.setLong(offset + 7, LookupKey.of(t.getMailBase64(), t.getCategory(), t.getSubcategory()));
+    }
+
+    @Transactional
+    public int deleteSentBefore(LocalDateTime cutoff, int limit) {
+        Timestamp ts = Timestamp.valueOf(cutoff);
+        if (dialect.isSqlServer()) {
+            return jdbc.update("DELETE TOP (?) FROM USERS_TOKEN WHERE date_sent < ?", limit, ts);
+        }
+        return jdbc.update("DELETE FROM USERS_TOKEN WHERE id IN (SELECT id FROM USERS_TOKEN "
+                + "WHERE date_sent < ? ORDER BY date_sent FETCH FIRST ? ROWS ONLY)", ts, limit);
+    }
+
+    public List<UserToken> findWithoutLookupKey(long afterId, int limit) {
+        return jdbc.query(
+                "SELECT id, mail_base64, category, subcategory FROM USERS_TOKEN "
+                        + "WHERE lookup_key IS NULL AND id > ? ORDER BY id OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY",
+                (rs, i) -> tokenRow(rs.getLong(1), rs.getString(2), null, null, rs.getString(3), rs.getString(4)),
+                afterId, limit);
+    }
+
+    @Transactional
+    public void updateLookupKeys(List<UserToken> rows) {
+        jdbc.batchUpdate("UPDATE USERS_TOKEN SET lookup_key = ? WHERE id = ?", rows, rows.size(),
+                (ps, t) -> {
+                    ps.setLong(1, LookupKey.of(t.getMailBase64(), t.getCategory(), t.getSubcategory()));
+                    ps.setLong(2, t.getId());
+                });
+    }
+
+    // includes signed tokens, which have no binary form, so callers must page by id
+    public List<UserToken> findWithoutTokenBin(long afterId, int limit) {
+        return jdbc.query(
+                "SELECT id, token FROM USERS_TOKEN "
+                        + "WHERE token_bin IS NULL AND id > ? ORDER BY id OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY",
+                (rs, i) -> tokenRow(rs.getLong(1), null, rs.getString(2), null, null, null),
+                afterId, limit);
+    }
+
+    // drops the string where token_bin spells it back
+    @Transactional
+    public int updateTokenBins(List<UserToken> rows) {
+        List<UserToken> convertible = rows.stream().filter(t -> t.getTokenBin() != null).toList();
+        if (convertible.isEmpty()) {
+            return 0;
+        }
+        jdbc.batchUpdate("UPDATE USERS_TOKEN SET token_bin = ?, token = ? WHERE id = ?", convertible,
+                convertible.size(), (ps, t) -> {
+                    ps.setBytes(1, t.getTokenBin());
+                    ps.setString(2, TokenCodec.toText(t.getToken()));
+                    ps.setLong(3, t.getId());
+                });
+        return convertible.size();
+    }
+
+    private static UserToken tokenRow(long id, String mailBase64, String token, Timestamp dateSent,
+                                      String category, String subcategory) {
+        UserToken t = new UserToken();
+        t.setId(id);
+        t.setMailBase64(mailBase64);
+        t.setToken(token);
+        t.setDateSent(dateSent == null ? null : dateSent.toLocalDateTime());
+        t.setCategory(category);
+        t.setSubcategory(subcategory);
+        return t;
+    }
+
+    public record RefreshRow(UserToken tokenRow, boolean created, boolean refreshed, String previousToken) {
+    }
+}
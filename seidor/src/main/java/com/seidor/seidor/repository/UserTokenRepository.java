@@ -1,23 +1,103 @@
 package com.seidor.seidor.repository;
 
+import com.seidor.seidor.model.LookupKey;
 import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.pojo.MailTokenResponse;
+import com.seidor.seidor.pojo.TokenSummaryResponse;
+import com.seidor.seidor.token.TokenCodec;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
 import java.util.List;
 import java.util.Optional;
 
 public interface UserTokenRepository extends JpaRepository<UserToken, Long> {
 
-    Optional<UserToken> findByToken(String token);
+    // token_bin first when the value has a binary form; the string column for signed tokens and rows not yet backfilled
+    default Optional<UserToken> findByToken(String token) {
+        byte[] bin = TokenCodec.toBinary(token);
+        if (bin != null) {
+            Optional<UserToken> row = findByTokenBin(bin, token);
+            if (row.isPresent()) {
+                return row;
+            }
+        }
+        return findByTokenValue(token);
+    }
 
-    List<UserToken> findByMailBase64AndCategoryAndSubcategory(
-            String mailBase64, String category, String subcategory
-    );
+    default Optional<UserToken> findByBackfilledToken(String token) {
+        byte[] bin = TokenCodec.toBinary(token);
+        return bin != null ? findByTokenBin(bin, token) : findByTokenValue(token);
+    }
+
+    @Query("SELECT t FROM UserToken t WHERE t.tokenBin = :bin AND (t.token IS NULL OR t.token = :token)")
+    Optional<UserToken> findByTokenBin(@Param("bin") byte[] bin, @Param("token") String token);
 
-    Optional<UserToken> findTopByMailBase64AndCategoryAndSubcategoryOrderByDateSentDesc(
+    @Query("SELECT t FROM UserToken t WHERE t.token = :token")
+    Optional<UserToken> findByTokenValue(@Param("token") String token);
+
+    // lookup_key first, then the full columns, since rows not yet backfilled have no key
+    default List<TokenSummaryResponse> findSummariesByMailBase64AndCategoryAndSubcategory(
             String mailBase64, String category, String subcategory
-    );
+    ) {
+        return findSummariesByMailBase64AndCategoryAndSubcategory(mailBase64, category, subcategory, false);
+    }
+
+    default List<TokenSummaryResponse> findSummariesByMailBase64AndCategoryAndSubcategory(
+            String mailBase64, String category, String subcategory, boolean backfilled
+    ) {
+        long key = LookupKey.of(mailBase64, category, subcategory);
+        return backfilled
+                ? findSummariesByBackfilledLookupKey(key, mailBase64, category, subcategory)
+                : findSummariesByLookupKey(key, mailBase64, category, subcategory);
+    }
+
+    @Query("SELECT new com.seidor.seidor.pojo.TokenSummaryResponse(t.id, t.token, t.tokenBin, t.dateSent) FROM UserToken t "
+            + "WHERE (t.lookupKey = :key OR t.lookupKey IS NULL) "
+            + "AND t.mailBase64 = :mail AND t.category = :category AND t.subcategory = :subcategory")
+    List<TokenSummaryResponse> findSummariesByLookupKey(@Param("key") long key,
+                                                        @Param("mail") String mailBase64,
+                                                        @Param("category") String category,
+                                                        @Param("subcategory") String subcategory);
+
+    @Query("SELECT new com.seidor.seidor.pojo.TokenSummaryResponse(t.id, t.token, t.tokenBin, t.dateSent) FROM UserToken t "
+            + "WHERE t.lookupKey = :key "
+            + "AND t.mailBase64 = :mail AND t.category = :category AND t.subcategory = :subcategory")
+    List<TokenSummaryResponse> findSummariesByBackfilledLookupKey(@Param("key") long key,
+                                                                  @Param("mail") String mailBase64,
+                                                                  @Param("category") String category,
+                                                                  @Param("subcategory") String subcategory);
+
+    /** Must run inside a transaction. */
+    default long deleteByToken(String token) {
+        byte[] bin = TokenCodec.toBinary(token);
+        if (bin != null) {
+            int deleted = deleteByTokenBin(bin, token);
+            if (deleted > 0) {
+                return deleted;
+            }
+        }
+        return deleteByTokenValue(token);
+    }
+
+    /** Must run inside a transaction. */
+    default long deleteByBackfilledToken(String token) {
+        byte[] bin = TokenCodec.toBinary(token);
+        return bin != null ? deleteByTokenBin(bin, token) : deleteByTokenValue(token);
+    }
+
+    @Modifying
+    @Query("DELETE FROM UserToken t WHERE t.tokenBin = :bin AND (t.token IS NULL OR t.token = :token)")
+    int deleteByTokenBin(@Param("bin") byte[] bin, @Param("token") String token);
 
-    long deleteByToken(String token);
+    @Modifying
+    @Query("DELETE FROM UserToken t WHERE t.token = :token")
+    int deleteByTokenValue(@Param("token") String token);
 
-    List<UserToken> findByCategoryAndSubcategory(String category, String subcategory);
+    @Query("SELECT new com.seidor.seidor.pojo.MailTokenResponse(t.mailBase64, t.token, t.tokenBin) FROM UserToken t "
+            + "WHERE t.category = :category AND t.subcategory = :subcategory")
+    List<MailTokenResponse> findMailsAndTokensByCategoryAndSubcategory(@Param("category") String category,
+                                                                       @Param("subcategory") String subcategory);
 }
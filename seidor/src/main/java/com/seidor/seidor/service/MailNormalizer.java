@@ -0,0 +1,75 @@
+package com.seidor.seidor.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Turns a plain or Base64 mail into the stored {@code mail_base64} form. Input of at least
+ * 16 Base64 characters is taken as already encoded.
+ */
+@Component
+public class MailNormalizer {
+
+    private static final int MIN_BASE64_LENGTH = 16;
+
+    private final Entry[] cache;
+    private final int mask;
+
+    public MailNormalizer(@Value("${seidor.mail.cache.size:0}") int cacheSize) {
+        int size = cacheSize <= 0 ? 0 : Integer.highestOneBit(cacheSize);
+        this.cache = size == 0 ? null : new Entry[size];
+        this.mask = size - 1;
+    }
+
+    public String normalize(String mailBase64OrPlain) {
+        if (mailBase64OrPlain == null) return null;
+
+        String s = mailBase64OrPlain;
+        int start = 0;
+        int end = s.length();
+        while (start < end && s.charAt(start) <= ' ') start++;
+        while (end > start && s.charAt(end - 1) <= ' ') end--;
+
+        boolean base64Chars = end - start >= MIN_BASE64_LENGTH;
+        for (int i = start; base64Chars && i < end; i++) {
+            base64Chars = isBase64Char(s.charAt(i));
+        }
+
+        if (base64Chars) {
+            return start == 0 && end == s.length() ? s : s.substring(start, end);
+        }
+
+        Entry[] entries = cache;
+        int slot = 0;
+        if (entries != null) {
+            slot = spread(s.hashCode()) & mask;
+            Entry e = entries[slot];
+            if (e != null && e.input.equals(s)) {
+                return e.encoded;
+            }
+        }
+
+        String encoded = Base64.getEncoder().encodeToString(s.substring(start, end).getBytes(StandardCharsets.UTF_8));
+
+        if (entries != null) {
+            entries[slot] = new Entry(s, encoded);
+        }
+        return encoded;
+    }
+
+    private static boolean isBase64Char(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                || c == '+' || c == '/' || c == '_' || c == '=' || c == '-';
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    // immutable, so a racing reader sees either a whole entry or none
+    private record Entry(String input, String encoded) {
+    }
+}
@@ -0,0 +1,181 @@
+package com.seidor.seidor.service;
+
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.repository.UserTokenJdbcRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer for {@code POST /api/tokens}: one flusher inserts queued rows
+ * {@code batch-size} at a time; each caller waits for its batch to commit.
+ */
+@Component
+public class TokenWriteBuffer implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenWriteBuffer.class);
+
+    private static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final UserTokenJdbcRepository jdbcRepo;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Pending> queue;
+
+    private final DistributionSummary batches;
+    private final Counter rejected;
+
+    private volatile boolean accepting;
+    private volatile boolean running;
+    private Thread flusher;
+
+    public TokenWriteBuffer(UserTokenJdbcRepository jdbcRepo,
+                            MeterRegistry registry,
+                            @Value("${seidor.tokens.write-behind.enabled:false}") boolean enabled,
+                            @Value("${seidor.tokens.write-behind.capacity:10000}") int capacity,
+                            @Value("${seidor.tokens.write-behind.batch-size:200}") int batchSize,
+                            @Value("${seidor.tokens.write-behind.max-delay:PT0.005S}") Duration maxDelay) {
+        this.jdbcRepo = jdbcRepo;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+
+        this.batches = DistributionSummary.builder("tokens.write-behind.batch.size").register(registry);
+        this.rejected = Counter.builder("tokens.write-behind.rejected").register(registry);
+        Gauge.builder("tokens.write-behind.pending", queue, BlockingQueue::size).register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** @throws RejectedExecutionException if the queue is full or the buffer is stopped */
+    public CompletableFuture<UserToken> submit(UserToken row) {
+        Pending p = new Pending(row, System.nanoTime());
+        if (!accepting) {
+            rejected.increment();
+            throw new RejectedExecutionException("token write buffer is stopped");
+        }
+        if (!queue.offer(p)) {
+            rejected.increment();
+            throw new RejectedExecutionException("token write buffer is full");
+        }
+        if (!running && queue.remove(p)) {
+            // lost the race with stop(): its final drain may already have run
+            rejected.increment();
+            throw new RejectedExecutionException("token write buffer is stopped");
+        }
+        return p.done;
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || running) return;
+
+        running = true;
+        accepting = true;
+        flusher = new Thread(this::flushLoop, "token-write-behind");
+        flusher.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+
+        accepting = false;
+        running = false;
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // rows offered while the flag flipped
+        List<Pending> rest = new ArrayList<>();
+        while (queue.drainTo(rest, batchSize) > 0) {
+            flush(rest);
+        }
+        log.info("Token write buffer stopped");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // stops after the web server, so in-flight requests still get written
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    private void flushLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        try {
+            while (running || !queue.isEmpty()) {
+                Pending first = queue.poll(IDLE_POLL_NANOS, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = first.enqueuedAt + maxDelayNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long wait = deadline - System.nanoTime();
+                    if (batch.size() == batchSize || wait <= 0 || !running) {
+                        break;
+                    }
+                    // waits in slices so stop() doesn't sit out a long max-delay
+                    Pending next = queue.poll(Math.min(wait, IDLE_POLL_NANOS), TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+                flush(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        List<UserToken> rows = new ArrayList<>(batch.size());
+        batch.forEach(p -> rows.add(p.row));
+        try {
+            jdbcRepo.insertAllReturningIds(rows);
+            batch.forEach(p -> p.done.complete(p.row));
+        } catch (RuntimeException e) {
+            log.warn("Token write batch of {} rows failed: {}", batch.size(), e.getMessage());
+            batch.forEach(p -> p.done.completeExceptionally(e));
+        }
+        batches.record(batch.size());
+        batch.clear();
+    }
+
+    private static final class Pending {
+        final UserToken row;
+        final long enqueuedAt;
+        final CompletableFuture<UserToken> done = new CompletableFuture<>();
+
+        Pending(UserToken row, long enqueuedAt) {
+            this.row = row;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
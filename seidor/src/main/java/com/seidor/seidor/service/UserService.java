@@ -1,56 +1,177 @@
 package com.seidor.seidor.service;
 
+import com.seidor.seidor.cache.SubscriptionCache;
 import com.seidor.seidor.model.User;
+import com.seidor.seidor.pojo.MailSegmentKey;
+import com.seidor.seidor.pojo.SubscriptionResponse;
 import com.seidor.seidor.pojo.UserRequest;
+import com.seidor.seidor.repository.UserJdbcRepository;
 import com.seidor.seidor.repository.UserRepository;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.nio.charset.StandardCharsets;
-import java.util.Base64;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Service
 public class UserService {
 
+    public static final int MAX_PAGE_SIZE = 5000;
+
+    // SQL Server caps a statement at 2100 parameters
+    static final int LOOKUP_CHUNK = 500;
+    static final int INSERT_BATCH = 1000;
+
     private final UserRepository repo;
+    private final UserJdbcRepository jdbcRepo;
+    private final MailNormalizer mails;
+    private final SubscriptionCache cache;
 
-    public UserService(UserRepository repo) {
+    public UserService(UserRepository repo, UserJdbcRepository jdbcRepo, MailNormalizer mails,
+                       SubscriptionCache cache) {
         this.repo = repo;
+        this.jdbcRepo = jdbcRepo;
+        this.mails = mails;
+        this.cache = cache;
     }
 
     @Transactional
     public User subscribe(UserRequest req) {
-        String mailB64 = safeBase64(req.getMailBase64());
+        String mailB64 = mails.normalize(req.getMailBase64());
+        LocalDateTime now = LocalDateTime.now();
+
+        // a second round only if the row we collided with was deleted before we could read it
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Optional<Long> id = jdbcRepo.insertIfAbsent(mailB64, req.getCategory(), req.getSubcategory(), now);
+
+            if (id.isPresent()) {
+                cache.evictSegments();
+                User u = new User();
+                u.setId(id.get());
+                u.setMailBase64(mailB64);
+                u.setCategory(req.getCategory());
+                u.setSubcategory(req.getSubcategory());
+                u.setDateSubscribed(now);
+                return u;
+            }
+
+            List<User> existing =
+                    repo.findByMailBase64AndCategoryAndSubcategory(
+                            mailB64,
+                            req.getCategory(),
+                            req.getSubcategory(),
+                            jdbcRepo.isLookupKeyBackfilled()
+                    );
+
+            if (!existing.isEmpty()) {
+                return existing.get(0);
+            }
+        }
+        throw new ResponseStatusException(HttpStatus.CONFLICT, "Subscription changed concurrently, retry");
+    }
+
+    public BulkResult subscribeAll(Iterator<UserRequest> requests) {
+        int received = 0;
+        int rejected = 0;
+        Map<String, Map<String, Set<String>>> bySegment = new LinkedHashMap<>();
+
+        while (requests.hasNext()) {
+            UserRequest req = requests.next();
+            received++;
+            if (req == null || isBlank(req.getMailBase64())
+                    || isBlank(req.getCategory()) || isBlank(req.getSubcategory())) {
+                rejected++;
+                continue;
+            }
+            bySegment.computeIfAbsent(req.getCategory(), c -> new LinkedHashMap<>())
+                    .computeIfAbsent(req.getSubcategory(), s -> new LinkedHashSet<>())
+                    .add(mails.normalize(req.getMailBase64()));
+        }
+
+        int unique = 0;
+        int created = 0;
+        LocalDateTime now = LocalDateTime.now();
+        List<MailSegmentKey> pending = new ArrayList<>(INSERT_BATCH);
+
+        for (var cat : bySegment.entrySet()) {
+            for (var sub : cat.getValue().entrySet()) {
+                List<String> segmentMails = new ArrayList<>(sub.getValue());
+                unique += segmentMails.size();
+
+                for (int from = 0; from < segmentMails.size(); from += LOOKUP_CHUNK) {
+                    List<String> chunk = segmentMails.subList(from,
+                            Math.min(from + LOOKUP_CHUNK, segmentMails.size()));
+                    Set<String> existing = jdbcRepo.findExistingMails(cat.getKey(), sub.getKey(), chunk);
+
+                    for (String mail : chunk) {
+                        if (existing.contains(mail)) continue;
+                        pending.add(new MailSegmentKey(mail, cat.getKey(), sub.getKey()));
+                        if (pending.size() == INSERT_BATCH) {
+                            created += insertBatch(pending, now);
+                            pending.clear();
+                        }
+                    }
+                }
+            }
+        }
+        if (!pending.isEmpty()) {
+            created += insertBatch(pending, now);
+        }
+        if (created > 0) {
+            cache.evictSegments();
+        }
 
-        List<User> existing =
-                repo.findByMailBase64AndCategoryAndSubcategory(
-                        mailB64,
-                        req.getCategory(),
-                        req.getSubcategory()
-                );
+        return new BulkResult(received, unique - created, created, rejected);
+    }
 
-        if (!existing.isEmpty()) {
-            return existing.get(0);
+    private int insertBatch(List<MailSegmentKey> rows, LocalDateTime now) {
+        try {
+            return jdbcRepo.insertAll(rows, now);
+        } catch (DuplicateKeyException e) {
+            // a concurrent subscribe slipped in between the existence check and the batch,
+            // which was rolled back; retry its rows one by one
+            int written = 0;
+            for (MailSegmentKey row : rows) {
+                if (jdbcRepo.insertIfAbsent(row.mailBase64(), row.category(), row.subcategory(), now).isPresent()) {
+                    written++;
+                }
+            }
+            return written;
         }
+    }
 
-        User u = new User();
-        u.setMailBase64(mailB64);
-        u.setCategory(req.getCategory());
-        u.setSubcategory(req.getSubcategory());
+    /** Keyset page: rows with {@code id > after}, at most {@code limit}. */
+    @Transactional(readOnly = true)
+    public List<SubscriptionResponse> findPage(Long after, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return repo.findPageAfter(after == null ? 0L : after, Limit.of(size));
+    }
 
-        return repo.save(u);
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<User> sink) {
+        jdbcRepo.streamAll(sink);
     }
 
     @Transactional(readOnly = true)
-    public List<User> findAll() {
-        return repo.findAll();
+    public void streamMailsBySegment(String category, String subcategory, Consumer<String> sink) {
+        jdbcRepo.streamMailsBySegment(category, subcategory, sink);
     }
 
     @Transactional(readOnly = true)
-    public List<User> findByCategoryAndSubcategory(String category, String subcategory) {
-        return repo.findByCategoryAndSubcategory(category, subcategory);
+    public List<String> findMailsByCategoryAndSubcategory(String category, String subcategory) {
+        return repo.findMailsByCategoryAndSubcategory(category, subcategory);
     }
 
     @Transactional
@@ -58,6 +179,7 @@ public class UserService {
         Optional<User> row = repo.findById(id);
         if (row.isPresent()) {
             repo.deleteById(id);
+            cache.evict(id);
             return true;
         }
         return false;
@@ -65,16 +187,21 @@ public class UserService {
 
     // ---------- helpers ----------
 
-    private static String safeBase64(String mailBase64OrPlain) {
-        if (mailBase64OrPlain == null) return null;
-        String s = mailBase64OrPlain.trim();
-        if (looksLikeBase64(s)) return s;
-        return Base64.getEncoder().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
     }
 
-    private static boolean looksLikeBase64(String s) {
-        if (s.contains("@")) return false;
-        if (s.length() < 16) return false;
-        return s.matches("^[A-Za-z0-9+/_=\\-]+$");
+    public static class BulkResult {
+        public final int received;
+        public final int existing;
+        public final int created;
+        public final int rejected;
+
+        public BulkResult(int received, int existing, int created, int rejected) {
+            this.received = received;
+            this.existing = existing;
+            this.created = created;
+            this.rejected = rejected;
+        }
     }
 }
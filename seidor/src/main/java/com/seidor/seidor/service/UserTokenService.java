@@ -1,109 +1,188 @@
 package com.seidor.seidor.service;
 
+import com.seidor.seidor.cache.TokenBloomFilter;
+import com.seidor.seidor.cache.TokenLookupCache;
+import com.seidor.seidor.datasource.ReadFromPrimary;
 import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.pojo.MailSegmentKey;
+import com.seidor.seidor.pojo.MailTokenResponse;
 import com.seidor.seidor.pojo.TokenRequest;
-import com.seidor.seidor.repository.UserTokenRepository;
+import com.seidor.seidor.pojo.TokenSummaryResponse;
+import com.seidor.seidor.repository.UserJdbcRepository;
+import com.seidor.seidor.store.TokenStore;
+import com.seidor.seidor.token.TokenSigner;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Base64;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
 
 @Service
 public class UserTokenService {
 
-    private final UserTokenRepository repo;
-
-    public UserTokenService(UserTokenRepository repo) {
-        this.repo = repo;
+    /** Age after which {@code /refresh} rotates a token instead of returning it. */
+    public static final Duration REFRESH_AFTER = Duration.ofHours(48);
+
+    static final int SEGMENT_BATCH = 1000;
+
+    private final TokenStore store;
+    private final UserJdbcRepository subscriptions;
+    private final TokenLookupCache cache;
+    private final TokenSigner signer;
+    private final MailNormalizer mails;
+    private final TokenBloomFilter known;
+    private final SingleFlight<MailSegmentKey, RefreshResult> refreshes;
+
+    public UserTokenService(TokenStore store,
+                            UserJdbcRepository subscriptions,
+                            TokenLookupCache cache,
+                            TokenSigner signer,
+                            MailNormalizer mails,
+                            TokenBloomFilter known,
+                            MeterRegistry registry) {
+        this.store = store;
+        this.subscriptions = subscriptions;
+        this.cache = cache;
+        this.signer = signer;
+        this.mails = mails;
+        this.known = known;
+
+        Counter executed = Counter.builder("tokens.refresh.calls").tag("result", "executed").register(registry);
+        Counter shared = Counter.builder("tokens.refresh.calls").tag("result", "coalesced").register(registry);
+        this.refreshes = new SingleFlight<>(coalesced -> (coalesced ? shared : executed).increment());
     }
 
-    @Transactional
+    /** @throws RejectedExecutionException if the write buffer is full */
     public UserToken create(TokenRequest req) {
         UserToken t = new UserToken();
+        LocalDateTime now = LocalDateTime.now();
 
-        String mailB64 = safeBase64(req.getMailBase64());
+        String mailB64 = mails.normalize(req.getMailBase64());
         t.setMailBase64(mailB64);
-        t.setToken(UUID.randomUUID().toString());
+        t.setToken(signer.mint(mailB64, req.getCategory(), req.getSubcategory(), now));
         t.setCategory(req.getCategory());
         t.setSubcategory(req.getSubcategory());
-
-        return repo.save(t);
+        t.setDateSent(now);
+        known.add(t.getToken());
+        return store.create(t);
     }
 
-    @Transactional(readOnly = true)
-    public List<UserToken> findByMailCategorySubcategory(String mailBase64OrPlain,
-                                                         String category,
-                                                         String subcategory) {
-        String mailB64 = safeBase64(mailBase64OrPlain);
-        return repo.findByMailBase64AndCategoryAndSubcategory(mailB64, category, subcategory);
+    @ReadFromPrimary
+    public List<TokenSummaryResponse> findByMailCategorySubcategory(String mailBase64OrPlain,
+                                                                    String category,
+                                                                    String subcategory) {
+        String mailB64 = mails.normalize(mailBase64OrPlain);
+        return store.findByTriple(mailB64, category, subcategory);
     }
 
-    @Transactional
+    /** Concurrent calls for the same normalized triple share one store round trip. */
     public RefreshResult refreshOrCreate(String mailBase64OrPlain,
                                          String category,
                                          String subcategory) {
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime cutoff = now.minusHours(48);
+        String mailB64 = mails.normalize(mailBase64OrPlain);
+        return refreshes.run(new MailSegmentKey(mailB64, category, subcategory),
+                () -> refresh(mailB64, category, subcategory));
+    }
 
-        String mailB64 = safeBase64(mailBase64OrPlain);
+    private RefreshResult refresh(String mailB64, String category, String subcategory) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime cutoff = now.minus(REFRESH_AFTER);
 
-        Optional<UserToken> opt = repo.findTopByMailBase64AndCategoryAndSubcategoryOrderByDateSentDesc(
-                mailB64, category, subcategory
+        String minted = signer.mint(mailB64, category, subcategory, now);
+        known.add(minted);
+        TokenStore.RefreshRow row = store.refreshOrCreate(
+                mailB64, category, subcategory, minted, now, cutoff
         );
 
-        if (opt.isEmpty()) {
-            UserToken t = new UserToken();
-            t.setMailBase64(mailB64);
-            t.setCategory(category);
-            t.setSubcategory(subcategory);
-            t.setToken(UUID.randomUUID().toString());
-            UserToken saved = repo.save(t);
-            return new RefreshResult(saved, true, true);
+        if (row.previousToken() != null) {
+            cache.invalidate(row.previousToken());
         }
+        return new RefreshResult(row.tokenRow(), row.created(), row.refreshed());
+    }
 
-        UserToken existing = opt.get();
+    // signed tokens are decoded in place; only UUID tokens and revocation checks reach the store
+    public Optional<UserToken> findByToken(String token) {
+        if (signer.isSigned(token)) {
+            Optional<UserToken> decoded = signer.verify(token);
+            if (decoded.isEmpty() || !signer.isRevocationChecked()) {
+                return decoded;
+            }
+        }
 
-        if (existing.getDateSent() == null || existing.getDateSent().isBefore(cutoff)) {
-            existing.setToken(UUID.randomUUID().toString());
-            UserToken saved = repo.save(existing);
-            return new RefreshResult(saved, false, true);
+        UserToken cached = cache.get(token);
+        if (cached != null) {
+            return Optional.of(cached);
         }
 
-        return new RefreshResult(existing, false, false);
-    }
+        if (!known.mightContain(token)) {
+            return Optional.empty();
+        }
 
-    @Transactional(readOnly = true)
-    public Optional<UserToken> findByToken(String token) {
-        return repo.findByToken(token);
+        long stamp = cache.stamp();
+        Optional<UserToken> row = store.findByToken(token);
+        row.ifPresent(t -> cache.put(token, t, stamp));
+        return row;
     }
 
-    @Transactional
     public boolean deleteByToken(String token) {
-        return repo.deleteByToken(token) > 0;
+        cache.invalidate(token);
+        if (!known.mightContain(token)) {
+            return false;
+        }
+        boolean deleted = store.deleteByToken(token);
+        // a lookup that read the row before the delete committed may have cached it meanwhile
+        cache.invalidate(token);
+        return deleted;
     }
 
-    @Transactional(readOnly = true)
-    public List<UserToken> findByCategoryAndSubcategory(String category, String subcategory) {
-        return repo.findByCategoryAndSubcategory(category, subcategory);
+    public List<MailTokenResponse> findMailsAndTokensByCategoryAndSubcategory(String category, String subcategory) {
+        return store.findBySegment(category, subcategory);
     }
 
-    // --- helpers ---
-    private static String safeBase64(String mailBase64OrPlain) {
-        if (mailBase64OrPlain == null) return null;
-        String s = mailBase64OrPlain.trim();
-        if (looksLikeBase64(s)) return s;
-        return Base64.getEncoder().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+    public void streamMailsAndTokens(String category, String subcategory, BiConsumer<String, String> sink) {
+        store.streamBySegment(category, subcategory, sink);
     }
 
-    private static boolean looksLikeBase64(String s) {
-        if (s.contains("@")) return false;
-        if (s.length() < 16) return false;
-        return s.matches("^[A-Za-z0-9+/_=\\-]+$");
+    /** Each batch of {@value #SEGMENT_BATCH} commits on its own before its pairs reach {@code sink}. */
+    public int issueForSegment(String category, String subcategory, BiConsumer<String, String> sink) {
+        List<UserToken> batch = new ArrayList<>(SEGMENT_BATCH);
+        int[] issued = {0};
+
+        subscriptions.streamDistinctMailsBySegment(category, subcategory, mail -> {
+            UserToken t = new UserToken();
+            t.setMailBase64(mail);
+            t.setCategory(category);
+            t.setSubcategory(subcategory);
+            batch.add(t);
+            if (batch.size() == SEGMENT_BATCH) {
+                issued[0] += flushSegmentBatch(batch, sink);
+            }
+        });
+        if (!batch.isEmpty()) {
+            issued[0] += flushSegmentBatch(batch, sink);
+        }
+        return issued[0];
+    }
+
+    private int flushSegmentBatch(List<UserToken> batch, BiConsumer<String, String> sink) {
+        LocalDateTime now = LocalDateTime.now();
+        for (UserToken t : batch) {
+            t.setDateSent(now);
+            t.setToken(signer.mint(t.getMailBase64(), t.getCategory(), t.getSubcategory(), now));
+            known.add(t.getToken());
+        }
+        store.insertAll(batch);
+        batch.forEach(t -> sink.accept(t.getMailBase64(), t.getToken()));
+
+        int n = batch.size();
+        batch.clear();
+        return n;
     }
 
     public static class RefreshResult {
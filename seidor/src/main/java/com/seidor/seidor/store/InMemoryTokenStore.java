@@ -0,0 +1,270 @@
+package com.seidor.seidor.store;
+
+import com.seidor.seidor.model.LookupKey;
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.pojo.MailSegmentKey;
+import com.seidor.seidor.pojo.MailTokenResponse;
+import com.seidor.seidor.pojo.TokenSummaryResponse;
+import com.seidor.seidor.service.UserTokenService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Token rows on the heap only. Stored rows are never modified, so readers need no
+ * locking; every change to a triple runs inside {@code compute} on that triple.
+ */
+@Component
+@ConditionalOnProperty(name = "seidor.tokens.store.type", havingValue = "memory")
+public class InMemoryTokenStore implements TokenStore {
+
+    private final ConcurrentHashMap<String, UserToken> byToken = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<MailSegmentKey, List<UserToken>> byTriple = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final Duration ttl;
+    private final Clock clock;
+
+    @Autowired
+    public InMemoryTokenStore(@Value("${seidor.tokens.store.memory.ttl:P3D}") Duration ttl) {
+        this(ttl, Clock.systemDefaultZone());
+    }
+
+    InMemoryTokenStore(Duration ttl, Clock clock) {
+        if (!ttl.isZero() && !ttl.isNegative() && ttl.compareTo(UserTokenService.REFRESH_AFTER) < 0) {
+            throw new IllegalArgumentException("seidor.tokens.store.memory.ttl (" + ttl
+                    + ") must be at least the refresh age of " + UserTokenService.REFRESH_AFTER);
+        }
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    @Override
+    public UserToken create(UserToken row) {
+        store(row);
+        return row;
+    }
+
+    // all or nothing: a duplicate takes back the rows already stored
+    @Override
+    public void insertAll(List<UserToken> rows) {
+        List<UserToken> stored = new ArrayList<>(rows.size());
+        try {
+            for (UserToken row : rows) {
+                stored.add(store(row));
+            }
+        } catch (RuntimeException e) {
+            stored.forEach(this::delete);
+            throw e;
+        }
+    }
+
+    @Override
+    public RefreshRow refreshOrCreate(String mailBase64, String category, String subcategory,
+                                      String newToken, LocalDateTime now, LocalDateTime cutoff) {
+        LocalDateTime expiredBefore = expiredBefore();
+        RefreshRow[] out = new RefreshRow[1];
+        byTriple.compute(new MailSegmentKey(mailBase64, category, subcategory), (k, rows) -> {
+            UserToken latest = null;
+            if (rows != null) {
+                for (UserToken t : rows) {
+                    if (live(t, expiredBefore) && (latest == null || t.getDateSent().isAfter(latest.getDateSent()))) {
+                        latest = t;
+                    }
+                }
+            }
+
+            if (latest == null) {
+                UserToken created = row(mailBase64, category, subcategory, newToken, now);
+                created.setId(ids.incrementAndGet());
+                if (byToken.putIfAbsent(newToken, created) != null) {
+                    throw new DuplicateKeyException("token already exists");
+                }
+                out[0] = new RefreshRow(copy(created), true, true, null);
+                return append(rows, created);
+            }
+            if (latest.getDateSent().isBefore(cutoff)) {
+                UserToken rotated = row(mailBase64, category, subcategory, newToken, now);
+                rotated.setId(latest.getId());
+                if (byToken.putIfAbsent(newToken, rotated) != null) {
+                    throw new DuplicateKeyException("token already exists");
+                }
+                byToken.remove(latest.getToken(), latest);
+                out[0] = new RefreshRow(copy(rotated), false, true, latest.getToken());
+                return replace(rows, latest, rotated);
+            }
+            out[0] = new RefreshRow(copy(latest), false, false, null);
+            return rows;
+        });
+        return out[0];
+    }
+
+    @Override
+    public Optional<UserToken> findByToken(String token) {
+        UserToken row = byToken.get(token);
+        return row != null && live(row, expiredBefore()) ? Optional.of(copy(row)) : Optional.empty();
+    }
+
+    @Override
+    public List<TokenSummaryResponse> findByTriple(String mailBase64, String category, String subcategory) {
+        List<UserToken> rows = byTriple.get(new MailSegmentKey(mailBase64, category, subcategory));
+        if (rows == null) {
+            return List.of();
+        }
+        LocalDateTime expiredBefore = expiredBefore();
+        List<TokenSummaryResponse> out = new ArrayList<>(rows.size());
+        for (UserToken t : rows) {
+            if (live(t, expiredBefore)) {
+                out.add(TokenSummaryResponse.of(t));
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public boolean deleteByToken(String token) {
+        UserToken row = byToken.get(token);
+        // an expired row is already gone as far as findByToken is concerned; the sweep removes it
+        return row != null && live(row, expiredBefore()) && delete(row);
+    }
+
+    @Override
+    public List<MailTokenResponse> findBySegment(String category, String subcategory) {
+        List<MailTokenResponse> out = new ArrayList<>();
+        streamBySegment(category, subcategory, (mail, token) -> out.add(new MailTokenResponse(mail, token)));
+        return out;
+    }
+
+    @Override
+    public void streamBySegment(String category, String subcategory, BiConsumer<String, String> sink) {
+        LocalDateTime expiredBefore = expiredBefore();
+        for (Map.Entry<MailSegmentKey, List<UserToken>> e : byTriple.entrySet()) {
+            MailSegmentKey k = e.getKey();
+            if (k.category().equals(category) && k.subcategory().equals(subcategory)) {
+                for (UserToken t : e.getValue()) {
+                    if (live(t, expiredBefore)) {
+                        sink.accept(t.getMailBase64(), t.getToken());
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public int deleteSentBefore(LocalDateTime cutoff, int limit) {
+        int deleted = 0;
+        for (UserToken row : byToken.values()) {
+            if (deleted >= limit) {
+                break;
+            }
+            if (row.getDateSent().isBefore(cutoff) && delete(row)) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public long count() {
+        return byToken.size();
+    }
+
+    @Override
+    public void streamTokens(Consumer<String> sink) {
+        byToken.keySet().forEach(sink);
+    }
+
+    @Scheduled(fixedDelayString = "${seidor.tokens.store.memory.sweep-interval:PT1M}")
+    public int evictExpired() {
+        return ttl.isZero() || ttl.isNegative() ? 0 : deleteSentBefore(expiredBefore(), Integer.MAX_VALUE);
+    }
+
+    private UserToken store(UserToken row) {
+        UserToken stored = copy(row);
+        stored.setId(ids.incrementAndGet());
+        byTriple.compute(key(stored), (k, rows) -> {
+            if (byToken.putIfAbsent(stored.getToken(), stored) != null) {
+                throw new DuplicateKeyException("token already exists");
+            }
+            return append(rows, stored);
+        });
+        row.setId(stored.getId());
+        return stored;
+    }
+
+    private boolean delete(UserToken row) {
+        boolean[] removed = {false};
+        byTriple.computeIfPresent(key(row), (k, rows) -> {
+            // the token index is only changed under the triple, so this can't race a rotation
+            if (!byToken.remove(row.getToken(), row)) {
+                return rows;
+            }
+            removed[0] = true;
+            List<UserToken> rest = new ArrayList<>(rows);
+            rest.remove(row);
+            return rest.isEmpty() ? null : List.copyOf(rest);
+        });
+        return removed[0];
+    }
+
+    private LocalDateTime expiredBefore() {
+        return ttl.isZero() || ttl.isNegative() ? LocalDateTime.MIN : LocalDateTime.now(clock).minus(ttl);
+    }
+
+    private static boolean live(UserToken row, LocalDateTime expiredBefore) {
+        return !row.getDateSent().isBefore(expiredBefore);
+    }
+
+    private static MailSegmentKey key(UserToken row) {
+        return new MailSegmentKey(row.getMailBase64(), row.getCategory(), row.getSubcategory());
+    }
+
+    private static List<UserToken> append(List<UserToken> rows, UserToken row) {
+        if (rows == null) {
+            return List.of(row);
+        }
+        List<UserToken> out = new ArrayList<>(rows.size() + 1);
+        out.addAll(rows);
+        out.add(row);
+        return List.copyOf(out);
+    }
+
+    private static List<UserToken> replace(List<UserToken> rows, UserToken old, UserToken row) {
+        List<UserToken> out = new ArrayList<>(rows);
+        out.set(out.indexOf(old), row);
+        return List.copyOf(out);
+    }
+
+    private static UserToken row(String mailBase64, String category, String subcategory, String token,
+                                 LocalDateTime dateSent) {
+        UserToken t = new UserToken();
+        t.setMailBase64(mailBase64);
+        t.setCategory(category);
+        t.setSubcategory(subcategory);
+        t.setToken(token);
+        t.setDateSent(dateSent);
+        t.setLookupKey(LookupKey.of(mailBase64, category, subcategory));
+        return t;
+    }
+
+    // callers get their own instance: stored rows must stay as they were written
+    private static UserToken copy(UserToken t) {
+        UserToken c = row(t.getMailBase64(), t.getCategory(), t.getSubcategory(), t.getToken(), t.getDateSent());
+        c.setId(t.getId());
+        return c;
+    }
+}
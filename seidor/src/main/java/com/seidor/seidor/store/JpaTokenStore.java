@@ -0,0 +1,111 @@
+package com.seidor.seidor.store;
+
+import com.seidor.seidor.datasource.ReadFromPrimary;
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.pojo.MailTokenResponse;
+import com.seidor.seidor.pojo.TokenSummaryResponse;
+import com.seidor.seidor.repository.UserTokenJdbcRepository;
+import com.seidor.seidor.repository.UserTokenRepository;
+import com.seidor.seidor.service.TokenWriteBuffer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+@Component
+@ConditionalOnProperty(name = "seidor.tokens.store.type", havingValue = "jpa", matchIfMissing = true)
+public class JpaTokenStore implements TokenStore {
+
+    private final UserTokenRepository repo;
+    private final UserTokenJdbcRepository jdbcRepo;
+    private final TokenWriteBuffer writes;
+
+    public JpaTokenStore(UserTokenRepository repo, UserTokenJdbcRepository jdbcRepo, TokenWriteBuffer writes) {
+        this.repo = repo;
+        this.jdbcRepo = jdbcRepo;
+        this.writes = writes;
+    }
+
+    @Override
+    public UserToken create(UserToken row) {
+        if (!writes.isEnabled()) {
+            return repo.save(row);
+        }
+        try {
+            return writes.submit(row).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void insertAll(List<UserToken> rows) {
+        jdbcRepo.insertAll(rows);
+    }
+
+    @Override
+    @ReadFromPrimary
+    public RefreshRow refreshOrCreate(String mailBase64, String category, String subcategory,
+                                      String newToken, LocalDateTime now, LocalDateTime cutoff) {
+        var row = jdbcRepo.refreshOrCreate(mailBase64, category, subcategory, newToken, now, cutoff);
+        return new RefreshRow(row.tokenRow(), row.created(), row.refreshed(), row.previousToken());
+    }
+
+    /** Stays on the primary: clients look a token up right after creating it. */
+    @Override
+    @ReadFromPrimary
+    @Transactional(readOnly = true)
+    public Optional<UserToken> findByToken(String token) {
+        return jdbcRepo.isTokenBinBackfilled() ? repo.findByBackfilledToken(token) : repo.findByToken(token);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<TokenSummaryResponse> findByTriple(String mailBase64, String category, String subcategory) {
+        return repo.findSummariesByMailBase64AndCategoryAndSubcategory(mailBase64, category, subcategory,
+                jdbcRepo.isLookupKeyBackfilled());
+    }
+
+    @Override
+    @Transactional
+    public boolean deleteByToken(String token) {
+        long deleted = jdbcRepo.isTokenBinBackfilled() ? repo.deleteByBackfilledToken(token) : repo.deleteByToken(token);
+        return deleted > 0;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<MailTokenResponse> findBySegment(String category, String subcategory) {
+        return repo.findMailsAndTokensByCategoryAndSubcategory(category, subcategory);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamBySegment(String category, String subcategory, BiConsumer<String, String> sink) {
+        jdbcRepo.streamMailsAndTokens(category, subcategory, sink);
+    }
+
+    @Override
+    public int deleteSentBefore(LocalDateTime cutoff, int limit) {
+        return jdbcRepo.deleteSentBefore(cutoff, limit);
+    }
+
+    @Override
+    public long count() {
+        return jdbcRepo.countTokens();
+    }
+
+    @Override
+    public void streamTokens(Consumer<String> sink) {
+        jdbcRepo.streamTokens(sink);
+    }
+}
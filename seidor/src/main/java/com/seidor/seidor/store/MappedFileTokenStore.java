@@ -0,0 +1,701 @@
+package com.seidor.seidor.store;
+
+import com.seidor.seidor.model.LookupKey;
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.pojo.MailTokenResponse;
+import com.seidor.seidor.pojo.TokenSummaryResponse;
+import com.seidor.seidor.token.TokenCodec;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Token rows in local files: a memory-mapped, append-only log of fixed-width records
+ * ({@code tokens.log}) plus a {@link StringTable} ({@code strings.dat}), with off-heap
+ * indexes rebuilt on startup.
+ *
+ * <p>Record layout, {@value #RECORD_SIZE} bytes:
+ * <pre>
+ *  0 state (live/dead)   1 token kind   4 mail id   8 category id   12 subcategory id
+ * 16 id   24 date sent (epoch micros)   32 previous record of the triple + 1
+ * 40 token (16 bytes; string id for tokens with no binary form)   56 LookupKey of the triple
+ * </pre>
+ * The only in-place write marks a record dead. The state byte is written last, and
+ * replay stops at the first record without one.
+ */
+@Component
+@ConditionalOnProperty(name = "seidor.tokens.store.type", havingValue = "mapped")
+public class MappedFileTokenStore implements TokenStore, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedFileTokenStore.class);
+
+    static final int RECORD_SIZE = 64;
+    static final int SEGMENT_RECORDS = 1 << 20;
+    private static final int SCAN_CHUNK = 4096;
+    private static final String COMPACTED_MARKER = "compacted";
+
+    private static final int STATE = 0;
+    private static final int TOKEN_KIND = 1;
+    private static final int MAIL = 4;
+    private static final int CATEGORY = 8;
+    private static final int SUBCATEGORY = 12;
+    private static final int ID = 16;
+    private static final int DATE_SENT = 24;
+    private static final int PREVIOUS = 32;
+    private static final int TOKEN = 40;
+    private static final int TRIPLE_KEY = 56;
+
+    // 0: never written
+    private static final byte LIVE = 1;
+    private static final byte DEAD = 2;
+
+    private static final byte UUID_TOKEN = 0;
+    private static final byte COMPACT_TOKEN = 1;
+    private static final byte STRING_TOKEN = 2;
+
+    private final Path directory;
+    private final Path logPath;
+    private final Path stringsPath;
+    private final long expectedTokens;
+    private final double compactRatio;
+    private final int segmentRecords;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private FileChannel file;
+    private StringTable strings;
+    private OffHeapHashIndex byToken;
+    private OffHeapHashIndex byTriple;
+    private long records;
+    private long live;
+    private long nextId = 1;
+    // where the next purge resumes its scan of the log
+    private volatile long purgeFrom;
+
+    @Autowired
+    public MappedFileTokenStore(@Value("${seidor.tokens.store.mapped.directory:./data/tokens}") String directory,
+                                @Value("${seidor.tokens.store.mapped.expected-tokens:1000000}") long expectedTokens,
+                                @Value("${seidor.tokens.store.mapped.compact-ratio:0.5}") double compactRatio,
+                                MeterRegistry registry) throws IOException {
+        this(Path.of(directory), expectedTokens, compactRatio, SEGMENT_RECORDS, registry);
+    }
+
+    MappedFileTokenStore(Path directory, long expectedTokens, double compactRatio, int segmentRecords,
+                         MeterRegistry registry) throws IOException {
+        this.directory = directory;
+        this.logPath = directory.resolve("tokens.log");
+        this.stringsPath = directory.resolve("strings.dat");
+        this.expectedTokens = Math.max(1, expectedTokens);
+        this.compactRatio = compactRatio;
+        this.segmentRecords = segmentRecords;
+        open();
+
+        Gauge.builder("tokens.store.mapped.records", this, MappedFileTokenStore::count)
+                .tag("state", "live").register(registry);
+        Gauge.builder("tokens.store.mapped.records", this, s -> s.records() - s.count())
+                .tag("state", "dead").register(registry);
+    }
+
+    @Override
+    public UserToken create(UserToken row) {
+        lock.writeLock().lock();
+        try {
+            requireNew(row.getToken());
+            long id = nextId++;
+            append(row.getMailBase64(), row.getCategory(), row.getSubcategory(), id, row.getDateSent(),
+                    encode(row.getToken(), true));
+            row.setId(id);
+            return row;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Checks every token before appending any. */
+    @Override
+    public void insertAll(List<UserToken> rows) {
+        lock.writeLock().lock();
+        try {
+            Set<String> seen = new HashSet<>();
+            for (UserToken row : rows) {
+                if (!seen.add(row.getToken())) {
+                    throw new DuplicateKeyException("token already exists");
+                }
+                requireNew(row.getToken());
+            }
+            for (UserToken row : rows) {
+                append(row.getMailBase64(), row.getCategory(), row.getSubcategory(), nextId++, row.getDateSent(),
+                        encode(row.getToken(), true));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public RefreshRow refreshOrCreate(String mailBase64, String category, String subcategory,
+                                      String newToken, LocalDateTime now, LocalDateTime cutoff) {
+        lock.writeLock().lock();
+        try {
+            long[] latest = {-1};
+            forEachInTriple(mailBase64, category, subcategory, r -> {
+                if (latest[0] < 0 || dateSent(r) > dateSent(latest[0])) {
+                    latest[0] = r;
+                }
+            });
+
+            if (latest[0] < 0 || dateSent(latest[0]) < micros(cutoff)) {
+                requireNew(newToken);
+                EncodedToken token = encode(newToken, true);
+                if (latest[0] < 0) {
+                    long r = append(mailBase64, category, subcategory, nextId++, now, token);
+                    return new RefreshRow(read(r), true, true, null);
+                }
+                UserToken stale = read(latest[0]);
+                long r = append(mailBase64, category, subcategory, stale.getId(), now, token);
+                kill(latest[0]);
+                return new RefreshRow(read(r), false, true, stale.getToken());
+            }
+            return new RefreshRow(read(latest[0]), false, false, null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<UserToken> findByToken(String token) {
+        lock.readLock().lock();
+        try {
+            EncodedToken encoded = encode(token, false);
+            long r = encoded == null ? -1 : find(encoded);
+            return r < 0 ? Optional.empty() : Optional.of(read(r));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<TokenSummaryResponse> findByTriple(String mailBase64, String category, String subcategory) {
+        lock.readLock().lock();
+        try {
+            List<TokenSummaryResponse> out = new ArrayList<>();
+            forEachInTriple(mailBase64, category, subcategory, r -> out.add(TokenSummaryResponse.of(read(r))));
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteByToken(String token) {
+        lock.writeLock().lock();
+        try {
+            EncodedToken encoded = encode(token, false);
+            long r = encoded == null ? -1 : find(encoded);
+            if (r < 0) {
+                return false;
+            }
+            kill(r);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<MailTokenResponse> findBySegment(String category, String subcategory) {
+        List<MailTokenResponse> out = new ArrayList<>();
+        streamBySegment(category, subcategory, (mail, token) -> out.add(new MailTokenResponse(mail, token)));
+        return out;
+    }
+
+    /** A scan of the whole log: there is no segment index. */
+    @Override
+    public void streamBySegment(String category, String subcategory, BiConsumer<String, String> sink) {
+        int cat;
+        int sub;
+        lock.readLock().lock();
+        try {
+            cat = strings.id(category);
+            sub = strings.id(subcategory);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (cat < 0 || sub < 0) {
+            return;
+        }
+
+        List<String> pairs = new ArrayList<>();
+        for (long next = 0; next >= 0; ) {
+            next = scan(next, r -> {
+                ByteBuffer seg = segment(r);
+                int at = offset(r);
+                if (seg.getInt(at + CATEGORY) == cat && seg.getInt(at + SUBCATEGORY) == sub) {
+                    pairs.add(strings.get(seg.getInt(at + MAIL)));
+                    pairs.add(token(r));
+                }
+            });
+            // outside the lock: the sink may be writing to a slow client
+            for (int i = 0; i < pairs.size(); i += 2) {
+                sink.accept(pairs.get(i), pairs.get(i + 1));
+            }
+            pairs.clear();
+        }
+    }
+
+    // resumes where the previous call stopped and wraps around, so a chunked purge reads the log once
+    @Override
+    public int deleteSentBefore(LocalDateTime cutoff, int limit) {
+        long before = micros(cutoff);
+        long from = purgeFrom;
+        long resumeAt = 0;
+        int deleted = 0;
+        boolean wrapped = false;
+        List<Long> expired = new ArrayList<>();
+        for (long next = from; deleted < limit; ) {
+            if (next < 0 || (wrapped && next >= from)) {
+                if (wrapped || from == 0) {
+                    break;
+                }
+                wrapped = true;
+                next = 0;
+                continue;
+            }
+            long stop = wrapped ? from : Long.MAX_VALUE;
+            next = scan(next, r -> {
+                if (r < stop && dateSent(r) < before) {
+                    expired.add(r);
+                }
+            });
+            if (expired.isEmpty()) {
+                continue;
+            }
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < expired.size() && deleted < limit; i++) {
+                    long r = expired.get(i);
+                    // dates never change in place, so a record still live is still expired
+                    if (state(r) == LIVE) {
+                        kill(r);
+                        deleted++;
+                        resumeAt = r + 1;
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            expired.clear();
+        }
+        // a call that went all the way round starts the next one from the top
+        purgeFrom = deleted < limit ? 0 : resumeAt;
+        return deleted;
+    }
+
+    @Override
+    public long count() {
+        lock.readLock().lock();
+        try {
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void streamTokens(Consumer<String> sink) {
+        List<String> tokens = new ArrayList<>();
+        for (long next = 0; next >= 0; ) {
+            next = scan(next, r -> tokens.add(token(r)));
+            tokens.forEach(sink);
+            tokens.clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!file.isOpen()) {
+                return;
+            }
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            strings.force();
+            strings.close();
+            file.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private long records() {
+        lock.readLock().lock();
+        try {
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---- startup ----
+
+    private void open() throws IOException {
+        long started = System.nanoTime();
+        Files.createDirectories(directory);
+        finishCompaction();
+        strings = new StringTable(stringsPath, expectedTokens);
+        file = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        // before mapping anything: a mapped file can't be replaced on every platform
+        boolean compacted = compactIfWorthIt();
+
+        long segmentBytes = (long) segmentRecords * RECORD_SIZE;
+        for (long mapped = 0; mapped < file.size(); mapped += segmentBytes) {
+            mapSegment();
+        }
+        replay();
+        log.info("Mapped token store opened in {}: {} live of {} records{} in {} ms", directory, live, records,
+                compacted ? " after compaction" : "", (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // string ids are offsets, so the records copied over get the ids of the new string table
+    private boolean compactIfWorthIt() throws IOException {
+        long[] total = {0};
+        long[] alive = {0};
+        readLog(record -> {
+            total[0]++;
+            alive[0] += record.get(STATE) == LIVE ? 1 : 0;
+        });
+        if (total[0] == 0 || total[0] - alive[0] < compactRatio * total[0]) {
+            return false;
+        }
+
+        Path compactLog = compactPath(logPath);
+        Path compactStrings = compactPath(stringsPath);
+        Files.deleteIfExists(compactStrings);
+        try (FileChannel out = FileChannel.open(compactLog, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             StringTable kept = new StringTable(compactStrings, alive[0])) {
+            ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE * 1024);
+            readLog(record -> {
+                if (record.get(STATE) == LIVE) {
+                    int at = buf.position();
+                    buf.put(record);
+                    for (int field : new int[]{MAIL, CATEGORY, SUBCATEGORY}) {
+                        buf.putInt(at + field, kept.idOrAdd(strings.get(buf.getInt(at + field))));
+                    }
+                    if (buf.get(at + TOKEN_KIND) == STRING_TOKEN) {
+                        buf.putLong(at + TOKEN, kept.idOrAdd(strings.get((int) buf.getLong(at + TOKEN))));
+                    }
+                    if (!buf.hasRemaining()) {
+                        drain(buf, out);
+                    }
+                }
+            });
+            drain(buf, out);
+            out.force(true);
+            kept.force();
+        }
+        // from here on the next startup completes the swap if this one doesn't
+        Files.createFile(directory.resolve(COMPACTED_MARKER));
+        file.close();
+        strings.close();
+        finishCompaction();
+        strings = new StringTable(stringsPath, expectedTokens);
+        file = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return true;
+    }
+
+    // with the marker both compacted files are complete; without it they may not be
+    private void finishCompaction() throws IOException {
+        Path marker = directory.resolve(COMPACTED_MARKER);
+        if (Files.exists(marker)) {
+            for (Path target : List.of(stringsPath, logPath)) {
+                if (Files.exists(compactPath(target))) {
+                    Files.move(compactPath(target), target, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+            Files.delete(marker);
+        } else {
+            Files.deleteIfExists(compactPath(logPath));
+            Files.deleteIfExists(compactPath(stringsPath));
+        }
+    }
+
+    private static Path compactPath(Path target) {
+        return target.resolveSibling(target.getFileName() + ".compact");
+    }
+
+    private void readLog(Consumer<ByteBuffer> visitor) throws IOException {
+        ByteBuffer in = ByteBuffer.allocate(RECORD_SIZE * 1024);
+        long at = 0;
+        while (true) {
+            int read = file.read(in.clear(), at);
+            if (read < RECORD_SIZE) {
+                return;
+            }
+            int whole = read / RECORD_SIZE;
+            for (int i = 0; i < whole; i++) {
+                ByteBuffer record = in.slice(i * RECORD_SIZE, RECORD_SIZE);
+                byte state = record.get(STATE);
+                if (state != LIVE && state != DEAD) {
+                    return;
+                }
+                visitor.accept(record);
+            }
+            at += (long) whole * RECORD_SIZE;
+        }
+    }
+
+    private static void drain(ByteBuffer buf, FileChannel out) {
+        try {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            buf.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void replay() {
+        byToken = new OffHeapHashIndex(expectedTokens);
+        byTriple = new OffHeapHashIndex(expectedTokens);
+        long capacity = (long) segments.size() * segmentRecords;
+        for (long r = 0; r < capacity; r++) {
+            byte state = state(r);
+            if (state != LIVE && state != DEAD) {
+                break;
+            }
+            records = r + 1;
+            nextId = Math.max(nextId, segment(r).getLong(offset(r) + ID) + 1);
+            if (state == LIVE) {
+                link(r);
+                live++;
+            }
+        }
+    }
+
+    // ---- records ----
+
+    private long append(String mailBase64, String category, String subcategory, long id, LocalDateTime dateSent,
+                        EncodedToken token) {
+        long r = records;
+        if (r == (long) segments.size() * segmentRecords) {
+            mapSegment();
+        }
+        ByteBuffer seg = segment(r);
+        int at = offset(r);
+        seg.put(at + TOKEN_KIND, token.kind());
+        seg.putInt(at + MAIL, strings.idOrAdd(mailBase64));
+        seg.putInt(at + CATEGORY, strings.idOrAdd(category));
+        seg.putInt(at + SUBCATEGORY, strings.idOrAdd(subcategory));
+        seg.putLong(at + ID, id);
+        seg.putLong(at + DATE_SENT, micros(dateSent));
+        seg.putLong(at + TOKEN, token.hi());
+        seg.putLong(at + TOKEN + 8, token.lo());
+        seg.putLong(at + TRIPLE_KEY, LookupKey.of(mailBase64, category, subcategory));
+        link(r);
+        // last: replay stops at the first record without it
+        seg.put(at + STATE, LIVE);
+        records++;
+        live++;
+        return r;
+    }
+
+    private void link(long r) {
+        ByteBuffer seg = segment(r);
+        int at = offset(r);
+        long key = seg.getLong(at + TRIPLE_KEY);
+        long head = byTriple.find(key, any -> true);
+        if (seg.getLong(at + PREVIOUS) != head + 1) {
+            seg.putLong(at + PREVIOUS, head + 1);
+        }
+        if (head < 0) {
+            byTriple.put(key, r);
+        } else {
+            byTriple.replace(key, head, r);
+        }
+        byToken.put(hash(tokenAt(r)), r);
+    }
+
+    // dead records stay in their triple chain; walks skip them
+    private void kill(long r) {
+        segment(r).put(offset(r) + STATE, DEAD);
+        byToken.remove(hash(tokenAt(r)), r);
+        live--;
+    }
+
+    private void forEachInTriple(String mailBase64, String category, String subcategory, LongConsumer action) {
+        int mail = strings.id(mailBase64);
+        int cat = strings.id(category);
+        int sub = strings.id(subcategory);
+        if (mail < 0 || cat < 0 || sub < 0) {
+            return;
+        }
+        long r = byTriple.find(LookupKey.of(mailBase64, category, subcategory), any -> true);
+        while (r >= 0) {
+            ByteBuffer seg = segment(r);
+            int at = offset(r);
+            // triples can share a LookupKey, so the chain may hold other triples too
+            if (seg.get(at + STATE) == LIVE && seg.getInt(at + MAIL) == mail
+                    && seg.getInt(at + CATEGORY) == cat && seg.getInt(at + SUBCATEGORY) == sub) {
+                action.accept(r);
+            }
+            r = seg.getLong(at + PREVIOUS) - 1;
+        }
+    }
+
+    // one chunk under the read lock; returns where to go on, or -1
+    private long scan(long from, LongConsumer action) {
+        lock.readLock().lock();
+        try {
+            long end = Math.min(records, from + SCAN_CHUNK);
+            for (long r = from; r < end; r++) {
+                if (state(r) == LIVE) {
+                    action.accept(r);
+                }
+            }
+            return end < records ? end : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // looks the token up without adding it to the string table
+    private void requireNew(String token) {
+        EncodedToken encoded = encode(token, false);
+        if (encoded != null && find(encoded) >= 0) {
+            throw new DuplicateKeyException("token already exists");
+        }
+    }
+
+    private long find(EncodedToken token) {
+        return byToken.find(hash(token), r -> token.equals(tokenAt(r)));
+    }
+
+    private UserToken read(long r) {
+        ByteBuffer seg = segment(r);
+        int at = offset(r);
+        UserToken t = new UserToken();
+        t.setId(seg.getLong(at + ID));
+        t.setMailBase64(strings.get(seg.getInt(at + MAIL)));
+        t.setCategory(strings.get(seg.getInt(at + CATEGORY)));
+        t.setSubcategory(strings.get(seg.getInt(at + SUBCATEGORY)));
+        t.setToken(token(r));
+        t.setDateSent(dateTime(seg.getLong(at + DATE_SENT)));
+        t.setLookupKey(seg.getLong(at + TRIPLE_KEY));
+        return t;
+    }
+
+    private byte state(long r) {
+        return segment(r).get(offset(r) + STATE);
+    }
+
+    private long dateSent(long r) {
+        return segment(r).getLong(offset(r) + DATE_SENT);
+    }
+
+    private EncodedToken tokenAt(long r) {
+        ByteBuffer seg = segment(r);
+        int at = offset(r);
+        return new EncodedToken(seg.get(at + TOKEN_KIND), seg.getLong(at + TOKEN), seg.getLong(at + TOKEN + 8));
+    }
+
+    private String token(long r) {
+        EncodedToken token = tokenAt(r);
+        if (token.kind() == STRING_TOKEN) {
+            return strings.get((int) token.hi());
+        }
+        byte[] bin = ByteBuffer.allocate(TokenCodec.BINARY_LENGTH).putLong(token.hi()).putLong(token.lo()).array();
+        return TokenCodec.fromBinary(bin, token.kind() == COMPACT_TOKEN);
+    }
+
+    private ByteBuffer segment(long r) {
+        return segments.get((int) (r / segmentRecords));
+    }
+
+    private int offset(long r) {
+        return (int) (r % segmentRecords) * RECORD_SIZE;
+    }
+
+    private void mapSegment() {
+        long position = (long) segments.size() * segmentRecords * RECORD_SIZE;
+        try {
+            segments.add(file.map(FileChannel.MapMode.READ_WRITE, position, (long) segmentRecords * RECORD_SIZE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ---- encoding ----
+
+    // null for a string token not in the table when !add
+    private EncodedToken encode(String token, boolean add) {
+        byte[] bin = TokenCodec.toBinary(token);
+        if (bin != null) {
+            ByteBuffer b = ByteBuffer.wrap(bin);
+            if (TokenCodec.fromBinary(bin, false).equals(token)) {
+                return new EncodedToken(UUID_TOKEN, b.getLong(), b.getLong());
+            }
+            if (TokenCodec.fromBinary(bin, true).equals(token)) {
+                return new EncodedToken(COMPACT_TOKEN, b.getLong(), b.getLong());
+            }
+        }
+        int id = add ? strings.idOrAdd(token) : strings.id(token);
+        return id < 0 ? null : new EncodedToken(STRING_TOKEN, id, 0);
+    }
+
+    private static long hash(EncodedToken token) {
+        long k = (token.hi() * 0x9e3779b97f4a7c15L + token.lo()) ^ token.kind();
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long micros(LocalDateTime t) {
+        return t.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + t.getNano() / 1_000;
+    }
+
+    private static LocalDateTime dateTime(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    private record EncodedToken(byte kind, long hi, long lo) {
+    }
+}
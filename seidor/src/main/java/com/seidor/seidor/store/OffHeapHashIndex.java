@@ -0,0 +1,120 @@
+package com.seidor.seidor.store;
+
+import java.nio.ByteBuffer;
+import java.util.function.LongPredicate;
+
+/**
+ * Hash multimap from long keys to non-negative long values in a direct buffer. Linear
+ * probing over 16-byte slots (key, value + 1): 0 marks a free slot, -1 a removed one.
+ * Not thread-safe.
+ */
+final class OffHeapHashIndex {
+
+    private static final int SLOT_BYTES = 16;
+    private static final int MAX_SLOTS = 1 << 26;
+    private static final long FREE = 0;
+    private static final long REMOVED = -1;
+
+    private ByteBuffer slots;
+    private int mask;
+    private int used;
+    private int size;
+
+    OffHeapHashIndex(long expectedEntries) {
+        allocate(tableSize(expectedEntries));
+    }
+
+    void put(long key, long value) {
+        if ((used + 1L) * 4 > (mask + 1L) * 3) {
+            rehash(tableSize(size + 1L));
+        }
+        int i = slot(key);
+        while (slots.getLong(i * SLOT_BYTES + 8) != FREE) {
+            i = (i + 1) & mask;
+        }
+        slots.putLong(i * SLOT_BYTES, key);
+        slots.putLong(i * SLOT_BYTES + 8, value + 1);
+        used++;
+        size++;
+    }
+
+    /** First value stored under {@code key} that {@code match} accepts, or -1. */
+    long find(long key, LongPredicate match) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long v = slots.getLong(i * SLOT_BYTES + 8);
+            if (v == FREE) {
+                return -1;
+            }
+            if (v != REMOVED && slots.getLong(i * SLOT_BYTES) == key && match.test(v - 1)) {
+                return v - 1;
+            }
+        }
+    }
+
+    boolean replace(long key, long oldValue, long newValue) {
+        int i = locate(key, oldValue);
+        if (i < 0) {
+            return false;
+        }
+        slots.putLong(i * SLOT_BYTES + 8, newValue + 1);
+        return true;
+    }
+
+    boolean remove(long key, long value) {
+        int i = locate(key, value);
+        if (i < 0) {
+            return false;
+        }
+        slots.putLong(i * SLOT_BYTES + 8, REMOVED);
+        size--;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int locate(long key, long value) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long v = slots.getLong(i * SLOT_BYTES + 8);
+            if (v == FREE) {
+                return -1;
+            }
+            if (v == value + 1 && slots.getLong(i * SLOT_BYTES) == key) {
+                return i;
+            }
+        }
+    }
+
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    // at most half full after a resize, resized again at three quarters
+    private static int tableSize(long entries) {
+        long wanted = Math.max(16, entries * 2);
+        if (wanted > MAX_SLOTS) {
+            throw new IllegalStateException("Off-heap index cannot hold " + entries + " entries");
+        }
+        return Integer.highestOneBit((int) wanted - 1) << 1;
+    }
+
+    private void allocate(int slotCount) {
+        slots = ByteBuffer.allocateDirect(slotCount * SLOT_BYTES);
+        mask = slotCount - 1;
+        used = 0;
+        size = 0;
+    }
+
+    private void rehash(int slotCount) {
+        ByteBuffer old = slots;
+        int oldSlots = mask + 1;
+        allocate(slotCount);
+        for (int i = 0; i < oldSlots; i++) {
+            long v = old.getLong(i * SLOT_BYTES + 8);
+            if (v != FREE && v != REMOVED) {
+                put(old.getLong(i * SLOT_BYTES), v - 1);
+            }
+        }
+    }
+}
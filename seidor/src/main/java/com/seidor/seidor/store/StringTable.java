@@ -0,0 +1,148 @@
+package com.seidor.seidor.store;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Append-only file of distinct strings. Each entry is its UTF-8 length followed by the
+ * bytes; its id is its offset, so the file can't grow past 2 GB. Not thread-safe for writers.
+ */
+final class StringTable implements AutoCloseable {
+
+    // most entries (Base64 mails, categories) fit in one read
+    private static final int READ_AHEAD = 512;
+
+    private final FileChannel file;
+    private final OffHeapHashIndex ids;
+    private long end;
+    private int count;
+
+    StringTable(Path path, long expectedStrings) throws IOException {
+        this.file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.ids = new OffHeapHashIndex(expectedStrings);
+        load();
+    }
+
+    /** Id of {@code s}, or -1 if it was never added. */
+    int id(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        return (int) ids.find(hash(bytes), at -> Arrays.equals(bytes, read((int) at)));
+    }
+
+    int idOrAdd(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(bytes);
+        long found = ids.find(hash, at -> Arrays.equals(bytes, read((int) at)));
+        if (found >= 0) {
+            return (int) found;
+        }
+        long at = end;
+        if (at + Integer.BYTES + bytes.length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("String table is full (2 GB)");
+        }
+        ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES + bytes.length).putInt(bytes.length).put(bytes).flip();
+        try {
+            for (long pos = at; entry.hasRemaining(); ) {
+                pos += file.write(entry, pos);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        end = at + entry.limit();
+        ids.put(hash, at);
+        count++;
+        return (int) at;
+    }
+
+    String get(int id) {
+        return new String(read(id), StandardCharsets.UTF_8);
+    }
+
+    int size() {
+        return count;
+    }
+
+    void force() throws IOException {
+        file.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private byte[] read(int id) {
+        try {
+            ByteBuffer head = ByteBuffer.allocate(READ_AHEAD);
+            readFully(head, id, Integer.BYTES);
+            int length = head.getInt(0);
+            if (head.position() >= Integer.BYTES + length) {
+                return Arrays.copyOfRange(head.array(), Integer.BYTES, Integer.BYTES + length);
+            }
+            ByteBuffer body = ByteBuffer.allocate(length);
+            readFully(body, id + Integer.BYTES, length);
+            return body.array();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // reads at least {@code atLeast} bytes into {@code buf} from {@code at}, more if they come along
+    private void readFully(ByteBuffer buf, long at, int atLeast) throws IOException {
+        while (buf.position() < atLeast) {
+            int n = file.read(buf, at + buf.position());
+            if (n < 0) {
+                throw new EOFException("string table entry at " + at + " is cut short");
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        long good = 0;
+        long size = file.size();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(file.position(0)),
+                1 << 16));
+        try {
+            while (true) {
+                int length = in.readInt();
+                if (length < 0 || good + Integer.BYTES + length > size) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                ids.put(hash(bytes), good);
+                count++;
+                good += Integer.BYTES + length;
+            }
+        } catch (EOFException e) {
+            // torn tail, dropped below
+        }
+        if (good < size) {
+            file.truncate(good);
+        }
+        end = good;
+    }
+
+    // FNV-1a, then the murmur finalizer to spread it over the index slots
+    private static long hash(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
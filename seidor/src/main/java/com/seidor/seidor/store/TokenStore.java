@@ -0,0 +1,48 @@
+package com.seidor.seidor.store;
+
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.pojo.MailTokenResponse;
+import com.seidor.seidor.pojo.TokenSummaryResponse;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * USERS_TOKEN rows, kept where {@code seidor.tokens.store.type} says. Each method is
+ * atomic on its own.
+ */
+public interface TokenStore {
+
+    /** @throws org.springframework.dao.DataIntegrityViolationException if the token already exists */
+    UserToken create(UserToken row);
+
+    /** Inserts rows in bulk, as one unit; ids are not read back. */
+    void insertAll(List<UserToken> rows);
+
+    /** Concurrent calls for one triple never both insert. */
+    RefreshRow refreshOrCreate(String mailBase64, String category, String subcategory,
+                               String newToken, LocalDateTime now, LocalDateTime cutoff);
+
+    Optional<UserToken> findByToken(String token);
+
+    List<TokenSummaryResponse> findByTriple(String mailBase64, String category, String subcategory);
+
+    boolean deleteByToken(String token);
+
+    List<MailTokenResponse> findBySegment(String category, String subcategory);
+
+    void streamBySegment(String category, String subcategory, BiConsumer<String, String> sink);
+
+    int deleteSentBefore(LocalDateTime cutoff, int limit);
+
+    long count();
+
+    void streamTokens(Consumer<String> sink);
+
+    /** {@code previousToken} is set only when the value was rotated. */
+    record RefreshRow(UserToken tokenRow, boolean created, boolean refreshed, String previousToken) {
+    }
+}
@@ -0,0 +1,91 @@
+package com.seidor.seidor.token;
+
+import java.util.Base64;
+import java.util.UUID;
+
+/** Random token values and their 16-byte form in USERS_TOKEN.token_bin. */
+public final class TokenCodec {
+
+    public static final int BINARY_LENGTH = 16;
+
+    private static final int UUID_LENGTH = 36;
+    private static final int COMPACT_LENGTH = 22;
+
+    private static final Base64.Encoder B64 = Base64.getUrlEncoder().withoutPadding();
+
+    private TokenCodec() {
+    }
+
+    public static String random(boolean compact) {
+        UUID uuid = UUID.randomUUID();
+        return compact ? B64.encodeToString(toBytes(uuid)) : uuid.toString();
+    }
+
+    /** {@code null} for anything but a UUID-string or compact token. */
+    public static byte[] toBinary(String token) {
+        if (token == null) return null;
+        if (token.length() == UUID_LENGTH) return parseUuid(token);
+        if (token.length() == COMPACT_LENGTH) return parseCompact(token);
+        return null;
+    }
+
+    public static String fromBinary(byte[] bin, boolean compact) {
+        if (compact) return B64.encodeToString(bin);
+        long msb = 0;
+        long lsb = 0;
+        for (int i = 0; i < 8; i++) {
+            msb = msb << 8 | (bin[i] & 0xff);
+            lsb = lsb << 8 | (bin[8 + i] & 0xff);
+        }
+        return new UUID(msb, lsb).toString();
+    }
+
+    /** {@code null} when token_bin alone spells the token back. */
+    public static String toText(String token) {
+        byte[] bin = toBinary(token);
+        return bin != null && fromBinary(bin, false).equals(token) ? null : token;
+    }
+
+    public static String fromColumns(String text, byte[] bin) {
+        return text != null || bin == null ? text : fromBinary(bin, false);
+    }
+
+    private static byte[] parseUuid(String s) {
+        if (s.charAt(8) != '-' || s.charAt(13) != '-' || s.charAt(18) != '-' || s.charAt(23) != '-') {
+            return null;
+        }
+        byte[] out = new byte[BINARY_LENGTH];
+        int o = 0;
+        for (int i = 0; i < UUID_LENGTH; i += 2) {
+            if (i == 8 || i == 13 || i == 18 || i == 23) i++;
+            int hi = Character.digit(s.charAt(i), 16);
+            int lo = Character.digit(s.charAt(i + 1), 16);
+            if (hi < 0 || lo < 0) return null;
+            out[o++] = (byte) (hi << 4 | lo);
+        }
+        return out;
+    }
+
+    private static byte[] parseCompact(String s) {
+        for (int i = 0; i < COMPACT_LENGTH; i++) {
+            char c = s.charAt(i);
+            boolean ok = (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_';
+            if (!ok) return null;
+        }
+        byte[] out = Base64.getUrlDecoder().decode(s);
+        // the last char carries 2 spare bits; only the canonical spelling maps to these bytes
+        return B64.encodeToString(out).equals(s) ? out : null;
+    }
+
+    private static byte[] toBytes(UUID uuid) {
+        byte[] out = new byte[BINARY_LENGTH];
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        for (int i = 0; i < 8; i++) {
+            out[i] = (byte) (msb >>> (56 - 8 * i));
+            out[8 + i] = (byte) (lsb >>> (56 - 8 * i));
+        }
+        return out;
+    }
+}
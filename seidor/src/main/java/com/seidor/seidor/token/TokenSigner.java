@@ -0,0 +1,190 @@
+package com.seidor.seidor.token;
+
+import com.seidor.seidor.model.UserToken;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Mints and verifies tokens of the form {@code kid.payload.signature}: mail, category,
+ * subcategory and issue time under a truncated HMAC-SHA256. Only the active key signs;
+ * every configured key verifies.
+ */
+@Component
+public class TokenSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte VERSION = 1;
+    private static final int SIGNATURE_BYTES = 16;
+    private static final int MAX_TOKEN_LENGTH = 256;
+
+    private static final Base64.Encoder B64 = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder B64D = Base64.getUrlDecoder();
+
+    private final boolean enabled;
+    private final String activeKey;
+    private final Map<String, SecretKeySpec> keys;
+    private final Duration maxAge;
+    private final boolean checkRevocation;
+    private final boolean compact;
+    private final Clock clock;
+
+    @Autowired
+    public TokenSigner(@Value("${seidor.tokens.signing.enabled:false}") boolean enabled,
+                       @Value("${seidor.tokens.signing.active-key:}") String activeKey,
+                       @Value("${seidor.tokens.signing.keys:}") String keys,
+                       @Value("${seidor.tokens.signing.max-age:P30D}") Duration maxAge,
+                       @Value("${seidor.tokens.signing.check-revocation:false}") boolean checkRevocation,
+                       @Value("${seidor.tokens.compact:false}") boolean compact) {
+        this(enabled, activeKey, keys, maxAge, checkRevocation, compact, Clock.systemDefaultZone());
+    }
+
+    TokenSigner(boolean enabled, String activeKey, String keys, Duration maxAge,
+                boolean checkRevocation, boolean compact, Clock clock) {
+        this.enabled = enabled;
+        this.activeKey = activeKey;
+        this.keys = parseKeys(keys);
+        this.maxAge = maxAge;
+        this.checkRevocation = checkRevocation;
+        this.compact = compact;
+        this.clock = clock;
+
+        if (enabled && !this.keys.containsKey(activeKey)) {
+            throw new IllegalStateException("seidor.tokens.signing.active-key '" + activeKey
+                    + "' is not among seidor.tokens.signing.keys");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** When true, a verified token must still have its USERS_TOKEN row. */
+    public boolean isRevocationChecked() {
+        return checkRevocation;
+    }
+
+    /** A random token when signing is disabled or the signed form would not fit the token column. */
+    public String mint(String mailBase64, String category, String subcategory, LocalDateTime issuedAt) {
+        if (!enabled) {
+            return TokenCodec.random(compact);
+        }
+
+        String payload = B64.encodeToString(encode(mailBase64, category, subcategory, issuedAt));
+        String signed = activeKey + "." + payload;
+        String token = signed + "." + B64.encodeToString(sign(keys.get(activeKey), signed));
+        return token.length() <= MAX_TOKEN_LENGTH ? token : TokenCodec.random(compact);
+    }
+
+    public boolean isSigned(String token) {
+        return enabled && token != null && token.indexOf('.') > 0
+                && token.indexOf('.') != token.lastIndexOf('.');
+    }
+
+    /** Empty if forged, signed by an unknown key, or expired. */
+    public Optional<UserToken> verify(String token) {
+        if (!isSigned(token)) return Optional.empty();
+
+        int first = token.indexOf('.');
+        int last = token.lastIndexOf('.');
+        SecretKeySpec key = keys.get(token.substring(0, first));
+        if (key == null) return Optional.empty();
+
+        try {
+            byte[] expected = sign(key, token.substring(0, last));
+            byte[] actual = B64D.decode(token.substring(last + 1));
+            if (!MessageDigest.isEqual(expected, actual)) return Optional.empty();
+
+            UserToken t = decode(B64D.decode(token.substring(first + 1, last)));
+            if (t == null || t.getDateSent().isBefore(LocalDateTime.now(clock).minus(maxAge))) {
+                return Optional.empty();
+            }
+            t.setToken(token);
+            return Optional.of(t);
+        } catch (IllegalArgumentException | IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static byte[] encode(String mailBase64, String category, String subcategory, LocalDateTime issuedAt) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeLong(ChronoUnit.NANOS.between(Instant.EPOCH, issuedAt.toInstant(ZoneOffset.UTC)));
+            out.writeUTF(mailBase64);
+            out.writeUTF(category);
+            out.writeUTF(subcategory);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static UserToken decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        if (in.readByte() != VERSION) return null;
+
+        UserToken t = new UserToken();
+        t.setDateSent(LocalDateTime.ofInstant(Instant.EPOCH.plus(in.readLong(), ChronoUnit.NANOS), ZoneOffset.UTC));
+        t.setMailBase64(in.readUTF());
+        t.setCategory(in.readUTF());
+        t.setSubcategory(in.readUTF());
+        return t;
+    }
+
+    private static byte[] sign(SecretKeySpec key, String data) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            byte[] full = mac.doFinal(data.getBytes(StandardCharsets.US_ASCII));
+            byte[] truncated = new byte[SIGNATURE_BYTES];
+            System.arraycopy(full, 0, truncated, 0, SIGNATURE_BYTES);
+            return truncated;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, SecretKeySpec> parseKeys(String spec) {
+        Map<String, SecretKeySpec> parsed = new LinkedHashMap<>();
+        if (spec == null || spec.isBlank()) return parsed;
+
+        for (String pair : spec.split(",")) {
+            int colon = pair.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalStateException("seidor.tokens.signing.keys entries must be kid:base64secret");
+            }
+            String kid = pair.substring(0, colon).trim();
+            if (!kid.matches("[A-Za-z0-9_-]+")) {
+                throw new IllegalStateException("Invalid signing key id '" + kid + "'");
+            }
+            byte[] secret = Base64.getDecoder().decode(pair.substring(colon + 1).trim());
+            if (secret.length < 32) {
+                throw new IllegalStateException("Signing key '" + kid + "' must be at least 256 bits");
+            }
+            parsed.put(kid, new SecretKeySpec(secret, ALGORITHM));
+        }
+        return parsed;
+    }
+}
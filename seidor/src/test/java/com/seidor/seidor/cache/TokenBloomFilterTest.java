@@ -0,0 +1,71 @@
+package com.seidor.seidor.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBloomFilterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void noFalseNegatives_andFalsePositivesUnderTheConfiguredRate() {
+        TokenBloomFilter filter = new TokenBloomFilter(true, 10_000, 0.01, registry);
+        TokenBloomFilter.Build build = filter.beginRebuild(10_000);
+        String[] tokens = new String[10_000];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = UUID.randomUUID().toString();
+            build.add(tokens[i]);
+        }
+        build.publish();
+
+        for (String t : tokens) {
+            assertThat(filter.mightContain(t)).isTrue();
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(UUID.randomUUID().toString())) falsePositives++;
+        }
+        // sized for 1.5x the row count, so the filled filter sits well under 1%
+        assertThat(falsePositives / 100_000.0).isLessThan(0.005);
+        assertThat(registry.get("tokens.bloom.fpp").gauge().value()).isBetween(0.0005, 0.005);
+    }
+
+    @Test
+    void beforeFirstBuild_everythingMightBePresent() {
+        TokenBloomFilter filter = new TokenBloomFilter(true, 100, 0.01, registry);
+
+        assertThat(filter.mightContain("anything")).isTrue();
+    }
+
+    @Test
+    void addsDuringABuild_reachTheNewFilter_andAbandonKeepsTheOldOne() {
+        TokenBloomFilter filter = new TokenBloomFilter(true, 100, 0.01, registry);
+        filter.beginRebuild(0).publish();
+        filter.add("old");
+
+        TokenBloomFilter.Build next = filter.beginRebuild(0);
+        filter.add("during");
+        next.publish();
+        assertThat(filter.mightContain("during")).isTrue();
+        assertThat(filter.mightContain("old")).isFalse();
+
+        TokenBloomFilter.Build failed = filter.beginRebuild(0);
+        failed.abandon();
+        filter.add("after");
+        assertThat(filter.mightContain("after")).isTrue();
+        assertThat(filter.mightContain("during")).isTrue();
+    }
+
+    @Test
+    void disabled_addsNothing() {
+        TokenBloomFilter filter = new TokenBloomFilter(false, 100, 0.01, registry);
+        filter.add("t");
+
+        assertThat(filter.mightContain("t")).isTrue();
+        assertThat(filter.isEnabled()).isFalse();
+    }
+}
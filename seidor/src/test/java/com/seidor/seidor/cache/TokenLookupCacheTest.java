@@ -0,0 +1,100 @@
+package com.seidor.seidor.cache;
+
+import com.seidor.seidor.model.UserToken;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenLookupCacheTest {
+
+    private AtomicLong now;
+    private SimpleMeterRegistry registry;
+    private TokenLookupCache cache;
+
+    @BeforeEach
+    void setup() {
+        now = new AtomicLong();
+        registry = new SimpleMeterRegistry();
+        cache = new TokenLookupCache(2, Duration.ofSeconds(10), registry, now::get);
+    }
+
+    @Test
+    void get_returnsPutRow_andCountsHitsAndMisses() {
+        UserToken t = row("a");
+
+        assertThat(cache.get("a")).isNull();
+        cache.put("a", t, cache.stamp());
+        assertThat(cache.get("a")).isSameAs(t);
+
+        assertThat(count("tokens.cache.requests", "result", "hit")).isEqualTo(1.0);
+        assertThat(count("tokens.cache.requests", "result", "miss")).isEqualTo(1.0);
+    }
+
+    @Test
+    void get_dropsEntriesOlderThanTtl() {
+        cache.put("a", row("a"), cache.stamp());
+
+        now.addAndGet(Duration.ofSeconds(11).toNanos());
+
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.size()).isZero();
+        assertThat(count("tokens.cache.evictions", "cause", "expired")).isEqualTo(1.0);
+    }
+
+    @Test
+    void put_evictsLeastRecentlyUsed_whenFull() {
+        cache.put("a", row("a"), cache.stamp());
+        cache.put("b", row("b"), cache.stamp());
+        cache.get("a");
+        cache.put("c", row("c"), cache.stamp());
+
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("a")).isNotNull();
+        assertThat(cache.get("c")).isNotNull();
+        assertThat(count("tokens.cache.evictions", "cause", "size")).isEqualTo(1.0);
+    }
+
+    @Test
+    void put_isIgnored_ifInvalidatedSinceStamp() {
+        long stamp = cache.stamp();
+        cache.invalidate("a");
+
+        cache.put("a", row("a"), stamp);
+
+        assertThat(cache.get("a")).isNull();
+    }
+
+    @Test
+    void invalidate_removesEntry() {
+        cache.put("a", row("a"), cache.stamp());
+
+        cache.invalidate("a");
+
+        assertThat(cache.get("a")).isNull();
+    }
+
+    @Test
+    void zeroMaxSize_disablesCache() {
+        TokenLookupCache disabled = new TokenLookupCache(0, Duration.ofSeconds(10), registry, now::get);
+
+        disabled.put("a", row("a"), disabled.stamp());
+
+        assertThat(disabled.isEnabled()).isFalse();
+        assertThat(disabled.get("a")).isNull();
+    }
+
+    private double count(String name, String tag, String value) {
+        return registry.get(name).tag(tag, value).counter().count();
+    }
+
+    private static UserToken row(String token) {
+        UserToken t = new UserToken();
+        t.setToken(token);
+        return t;
+    }
+}
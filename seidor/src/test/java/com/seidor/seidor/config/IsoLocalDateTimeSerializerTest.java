@@ -0,0 +1,45 @@
+package com.seidor.seidor.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IsoLocalDateTimeSerializerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new SimpleModule().addSerializer(LocalDateTime.class, new IsoLocalDateTimeSerializer()));
+
+    @Test
+    void matchesIsoLocalDateTime_forRandomValues() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            int nano = switch (i % 4) {
+                case 0 -> 0;
+                case 1 -> random.nextInt(1000) * 1_000_000;
+                case 2 -> random.nextInt(1_000_000) * 1_000;
+                default -> random.nextInt(1_000_000_000);
+            };
+            LocalDateTime value = LocalDateTime.of(random.nextInt(10_000), 1 + random.nextInt(12),
+                    1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60), nano);
+
+            assertThat(mapper.writeValueAsString(value))
+                    .isEqualTo("\"" + DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(value) + "\"");
+        }
+    }
+
+    @Test
+    void writesSecondsAlways_andStripsTrailingZeros() throws Exception {
+        assertThat(mapper.writeValueAsString(LocalDateTime.of(2025, 11, 1, 12, 0)))
+                .isEqualTo("\"2025-11-01T12:00:00\"");
+        assertThat(mapper.writeValueAsString(LocalDateTime.of(2025, 11, 1, 12, 0, 5, 120_000_000)))
+                .isEqualTo("\"2025-11-01T12:00:05.12\"");
+        assertThat(mapper.writeValueAsString(LocalDateTime.of(10_000, 1, 1, 0, 0)))
+                .isEqualTo("\"+10000-01-01T00:00:00\"");
+    }
+}
@@ -0,0 +1,111 @@
+package com.seidor.seidor.config;
+
+import com.seidor.seidor.datasource.ReadFromPrimary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.aop.AopAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReadReplicaConfigTest {
+
+    private static final String PRIMARY = "jdbc:h2:mem:rr-primary;DB_CLOSE_DELAY=-1";
+    private static final String REPLICA = "jdbc:h2:mem:rr-replica;DB_CLOSE_DELAY=-1";
+
+    // the conversion service SpringApplication would install, for the Duration @Value
+    private final ApplicationContextRunner runner = new ApplicationContextRunner()
+            .withInitializer(ctx -> ctx.getBeanFactory().setConversionService(
+                    ApplicationConversionService.getSharedInstance()))
+            .withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class,
+                    DataSourceTransactionManagerAutoConfiguration.class, JdbcTemplateAutoConfiguration.class,
+                    TransactionAutoConfiguration.class, AopAutoConfiguration.class))
+            .withUserConfiguration(ReadReplicaConfig.class)
+            .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+            .withBean(Lookups.class)
+            .withPropertyValues("spring.datasource.url=" + PRIMARY, "spring.datasource.username=sa");
+
+    @BeforeAll
+    static void databases() {
+        for (String url : new String[]{PRIMARY, REPLICA}) {
+            JdbcTemplate jdbc = new JdbcTemplate(new DriverManagerDataSource(url, "sa", ""));
+            jdbc.execute("CREATE TABLE IF NOT EXISTS WHO (name VARCHAR(20))");
+            jdbc.execute("DELETE FROM WHO");
+            jdbc.update("INSERT INTO WHO VALUES (?)", url.equals(PRIMARY) ? "primary" : "replica");
+        }
+    }
+
+    @Test
+    void withReplicas_readOnlyTransactionsUseThem_unlessReadFromPrimary() {
+        runner.withPropertyValues("seidor.datasource.replicas.urls=" + REPLICA).run(context -> {
+            assertThat(context.getBean(DataSource.class)).isInstanceOf(LazyConnectionDataSourceProxy.class);
+
+            Lookups lookups = context.getBean(Lookups.class);
+            assertThat(lookups.readOnly()).isEqualTo("replica");
+            assertThat(lookups.readOnlyFromPrimary()).isEqualTo("primary");
+            assertThat(lookups.write()).isEqualTo("primary");
+        });
+    }
+
+    @Test
+    void unreachableReplica_fallsBackWithinTheConnectionTimeout() {
+        runner.withPropertyValues("seidor.datasource.replicas.urls=jdbc:h2:tcp://127.0.0.1:1/nowhere",
+                "seidor.datasource.replicas.connection-timeout=PT0.25S").run(context -> {
+            long start = System.nanoTime();
+
+            assertThat(context.getBean(Lookups.class).readOnly()).isEqualTo("primary");
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+        });
+    }
+
+    @Test
+    void withoutReplicas_everythingUsesTheSingleDatasource() {
+        runner.run(context -> {
+            assertThat(context).doesNotHaveBean(ReadReplicaConfig.class);
+            assertThat(context.getBean(Lookups.class).readOnly()).isEqualTo("primary");
+        });
+    }
+
+    static class Lookups {
+        private final JdbcTemplate jdbc;
+
+        Lookups(JdbcTemplate jdbc) {
+            this.jdbc = jdbc;
+        }
+
+        @Transactional(readOnly = true)
+        public String readOnly() {
+            return who();
+        }
+
+        @ReadFromPrimary
+        @Transactional(readOnly = true)
+        public String readOnlyFromPrimary() {
+            return who();
+        }
+
+        @Transactional
+        public String write() {
+            return who();
+        }
+
+        private String who() {
+            return jdbc.queryForObject("SELECT name FROM WHO", String.class);
+        }
+    }
+}
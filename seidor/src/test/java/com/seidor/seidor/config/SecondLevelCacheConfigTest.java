@@ -0,0 +1,136 @@
+package com.seidor.seidor.config;
+
+import com.seidor.seidor.cache.SubscriptionCache;
+import com.seidor.seidor.model.User;
+import com.seidor.seidor.repository.UserRepository;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.cache.CacheManager;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// no test transaction: the query cache is only used once the writes have committed
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "seidor.subscriptions.cache.enabled=true"
+})
+@Import({SecondLevelCacheConfig.class, SubscriptionCache.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SecondLevelCacheConfigTest {
+
+    @Autowired
+    private UserRepository repo;
+
+    @Autowired
+    private SubscriptionCache cache;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    @Autowired
+    private MeterBinder secondLevelCacheMetrics;
+
+    private Statistics stats;
+
+    @BeforeEach
+    void setup() {
+        stats = emf.unwrap(SessionFactory.class).getStatistics();
+        repo.save(user("bWFpbDE="));
+        repo.save(user("bWFpbDI="));
+        stats.clear();
+    }
+
+    @AfterEach
+    void cleanup() {
+        repo.deleteAll();
+        cache.evictAll();
+    }
+
+    @Test
+    void segmentQuery_isServedFromTheQueryCache_onRepeatedReads() {
+        assertThat(repo.findMailsByCategoryAndSubcategory("promos", "bf")).hasSize(2);
+        assertThat(repo.findMailsByCategoryAndSubcategory("promos", "bf")).hasSize(2);
+
+        assertThat(stats.getQueryCacheMissCount()).isEqualTo(1);
+        assertThat(stats.getQueryCacheHitCount()).isEqualTo(1);
+        assertThat(stats.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void jdbcInsert_isOnlySeen_afterEvictingTheSegments() {
+        repo.findMailsByCategoryAndSubcategory("promos", "bf");
+        jdbc.update("INSERT INTO USER_SUBSCRIPTION (mail_base64, category, subcategory, date_subscribed) "
+                + "VALUES ('bWFpbDM=', 'promos', 'bf', ?)", LocalDateTime.now());
+
+        assertThat(repo.findMailsByCategoryAndSubcategory("promos", "bf")).hasSize(2);
+
+        cache.evictSegments();
+
+        assertThat(repo.findMailsByCategoryAndSubcategory("promos", "bf")).hasSize(3);
+    }
+
+    @Test
+    void entity_isServedFromTheEntityRegion_andEvictedById() {
+        Long id = repo.findPageAfter(0L, Limit.of(1)).get(0).id();
+
+        repo.findById(id);
+        repo.findById(id);
+        assertThat(stats.getDomainDataRegionStatistics(SubscriptionCache.ENTITY_REGION).getHitCount())
+                .isGreaterThanOrEqualTo(1);
+
+        cache.evict(id);
+        assertThat(emf.getCache().contains(User.class, id)).isFalse();
+    }
+
+    @Test
+    void metrics_reportRegionHitsAndMisses() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        secondLevelCacheMetrics.bindTo(registry);
+
+        repo.findMailsByCategoryAndSubcategory("promos", "bf");
+        repo.findMailsByCategoryAndSubcategory("promos", "bf");
+
+        assertThat(registry.get("subscriptions.cache.requests")
+                .tag("region", SubscriptionCache.SEGMENT_REGION).tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("subscriptions.cache.requests")
+                .tag("region", SubscriptionCache.SEGMENT_REGION).tag("result", "miss")
+                .functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void cacheManager_canBeCreatedAgain_whileAnotherContextHoldsOne() {
+        SecondLevelCacheConfig config = new SecondLevelCacheConfig();
+
+        try (CacheManager other = config.subscriptionCacheManager(10, 10, Duration.ofMinutes(1))) {
+            assertThat(other.getCache(SubscriptionCache.ENTITY_REGION)).isNotNull();
+        }
+    }
+
+    private static User user(String mail) {
+        User u = new User();
+        u.setMailBase64(mail);
+        u.setCategory("promos");
+        u.setSubcategory("bf");
+        return u;
+    }
+}
@@ -1,15 +1,26 @@
 package com.seidor.seidor.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.seidor.seidor.model.User;
+import com.seidor.seidor.pojo.BulkSubscribeResponse;
+import com.seidor.seidor.pojo.SubscriptionResponse;
 import com.seidor.seidor.pojo.UserRequest;
 import com.seidor.seidor.service.UserService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -23,8 +34,9 @@ class UserControllerTest {
     @BeforeEach
     void setup() {
         service = mock(UserService.class);
-        controller = new UserController(service);
-        objectMapper = new ObjectMapper();
+        objectMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        controller = new UserController(service, objectMapper);
     }
 
     @Test
@@ -43,74 +55,104 @@ class UserControllerTest {
 
         when(service.subscribe(any(UserRequest.class))).thenReturn(saved);
 
-        ResponseEntity<java.util.Map<String, Object>> response = controller.subscribe(req);
+        ResponseEntity<SubscriptionResponse> response = controller.subscribe(req);
 
         assertThat(response.getStatusCode().value()).isEqualTo(201);
-
-        var body = response.getBody();
-        assertThat(body).isNotNull();
-        assertThat(body.get("id")).isEqualTo(12L);
-        assertThat(body.get("mailBase64")).isEqualTo("dGVzdEB0ZXN0LmNvbQ==");
-        assertThat(body.get("category")).isEqualTo("promos");
-        assertThat(body.get("subcategory")).isEqualTo("black-friday");
-        assertThat(body.get("dateSubscribed"))
-                .isEqualTo(LocalDateTime.of(2025, 11, 1, 18, 45));
-
+        assertThat(response.getBody()).isEqualTo(new SubscriptionResponse(12L, "dGVzdEB0ZXN0LmNvbQ==",
+                "promos", "black-friday", LocalDateTime.of(2025, 11, 1, 18, 45)));
 
         verify(service, times(1)).subscribe(any(UserRequest.class));
     }
 
     @Test
     void getAll_returnsAllSubscriptions() {
-        User u1 = new User();
-        u1.setId(1L);
-        u1.setMailBase64("bWFpbDE=");
-        u1.setCategory("promos");
-        u1.setSubcategory("black-friday");
-        u1.setDateSubscribed(LocalDateTime.of(2025, 11, 1, 10, 0));
+        var u1 = new SubscriptionResponse(1L, "bWFpbDE=", "promos", "black-friday",
+                LocalDateTime.of(2025, 11, 1, 10, 0));
+        var u2 = new SubscriptionResponse(2L, "bWFpbDI=", "news", "daily",
+                LocalDateTime.of(2025, 11, 1, 11, 0));
 
-        User u2 = new User();
-        u2.setId(2L);
-        u2.setMailBase64("bWFpbDI=");
-        u2.setCategory("news");
-        u2.setSubcategory("daily");
-        u2.setDateSubscribed(LocalDateTime.of(2025, 11, 1, 11, 0));
+        when(service.findPage(null, 1000)).thenReturn(List.of(u1, u2));
 
-        when(service.findAll()).thenReturn(List.of(u1, u2));
-
-        ResponseEntity<List<java.util.Map<String, Object>>> resp = controller.getAll();
+        ResponseEntity<List<SubscriptionResponse>> resp = controller.getAll(null, null);
 
         assertThat(resp.getStatusCode().value()).isEqualTo(200);
         var list = resp.getBody();
         assertThat(list).isNotNull();
         assertThat(list).hasSize(2);
-        assertThat(list.get(0).get("id")).isEqualTo(1L);
-        assertThat(list.get(1).get("id")).isEqualTo(2L);
+        assertThat(list.get(0).id()).isEqualTo(1L);
+        assertThat(list.get(1).id()).isEqualTo(2L);
+        assertThat(resp.getHeaders().containsKey(UserController.NEXT_AFTER_HEADER)).isFalse();
+
+        verify(service, times(1)).findPage(null, 1000);
+    }
+
+    @Test
+    void getAll_fullPage_returnsNextAfterCursor() {
+        var u1 = new SubscriptionResponse(41L, "bWFpbDE=", "promos", "black-friday", null);
+        var u2 = new SubscriptionResponse(42L, "bWFpbDI=", "promos", "black-friday", null);
+
+        when(service.findPage(40L, 2)).thenReturn(List.of(u1, u2));
+
+        ResponseEntity<List<SubscriptionResponse>> resp = controller.getAll(40L, 2);
 
-        verify(service, times(1)).findAll();
+        assertThat(resp.getStatusCode().value()).isEqualTo(200);
+        assertThat(resp.getHeaders().getFirst(UserController.NEXT_AFTER_HEADER)).isEqualTo("42");
+    }
+
+    @Test
+    void getAll_returns400_forLimitBelowOne() {
+        assertThat(controller.getAll(null, 0).getStatusCode().value()).isEqualTo(400);
+        assertThat(controller.getAll(40L, -5).getStatusCode().value()).isEqualTo(400);
+
+        verifyNoInteractions(service);
     }
 
     @Test
     void getAll_returns204_ifEmpty() {
-        when(service.findAll()).thenReturn(List.of());
+        when(service.findPage(null, 1000)).thenReturn(List.of());
 
-        ResponseEntity<List<java.util.Map<String, Object>>> resp = controller.getAll();
+        ResponseEntity<List<SubscriptionResponse>> resp = controller.getAll(null, null);
 
         assertThat(resp.getStatusCode().value()).isEqualTo(204);
         assertThat(resp.getBody()).isEmpty();
 
-        verify(service, times(1)).findAll();
+        verify(service, times(1)).findPage(null, 1000);
     }
 
     @Test
-    void getMailsForSegment_returnsList() {
+    @SuppressWarnings("unchecked")
+    void streamAll_writesOneJsonObjectPerLine() throws Exception {
         User u1 = new User();
+        u1.setId(1L);
         u1.setMailBase64("bWFpbDE=");
-        User u2 = new User();
-        u2.setMailBase64("bWFpbDI=");
+        u1.setCategory("promos");
+        u1.setSubcategory("black-friday");
+        u1.setDateSubscribed(LocalDateTime.of(2025, 11, 1, 10, 0));
 
-        when(service.findByCategoryAndSubcategory("promos", "black-friday"))
-                .thenReturn(List.of(u1, u2));
+        doAnswer(inv -> {
+            Consumer<User> sink = inv.getArgument(0);
+            sink.accept(u1);
+            sink.accept(u1);
+            return null;
+        }).when(service).streamAll(any(Consumer.class));
+
+        ResponseEntity<StreamingResponseBody> resp = controller.streamAll("ndjson");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        resp.getBody().writeTo(out);
+
+        assertThat(resp.getHeaders().getContentType().toString()).isEqualTo("application/x-ndjson");
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(2);
+        var row = objectMapper.readTree(lines[0]);
+        assertThat(row.get("id").asLong()).isEqualTo(1L);
+        assertThat(row.get("mailBase64").asText()).isEqualTo("bWFpbDE=");
+        assertThat(row.get("dateSubscribed").asText()).isEqualTo("2025-11-01T10:00:00");
+    }
+
+    @Test
+    void getMailsForSegment_returnsList() {
+        when(service.findMailsByCategoryAndSubcategory("promos", "black-friday"))
+                .thenReturn(List.of("bWFpbDE=", "bWFpbDI="));
 
         ResponseEntity<List<String>> resp =
                 controller.getMailsForSegment("promos", "black-friday");
@@ -119,12 +161,12 @@ class UserControllerTest {
         assertThat(resp.getBody()).containsExactly("bWFpbDE=", "bWFpbDI=");
 
         verify(service, times(1))
-                .findByCategoryAndSubcategory("promos", "black-friday");
+                .findMailsByCategoryAndSubcategory("promos", "black-friday");
     }
 
     @Test
     void getMailsForSegment_returns204_ifEmpty() {
-        when(service.findByCategoryAndSubcategory("promos", "black-friday"))
+        when(service.findMailsByCategoryAndSubcategory("promos", "black-friday"))
                 .thenReturn(List.of());
 
         ResponseEntity<List<String>> resp =
@@ -134,7 +176,7 @@ class UserControllerTest {
         assertThat(resp.getBody()).isEmpty();
 
         verify(service, times(1))
-                .findByCategoryAndSubcategory("promos", "black-friday");
+                .findMailsByCategoryAndSubcategory("promos", "black-friday");
     }
 
     @Test
@@ -156,4 +198,84 @@ class UserControllerTest {
         assertThat(resp.getStatusCode().value()).isEqualTo(404);
         verify(service, times(1)).deleteById(99L);
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void streamMailsForSegment_writesJsonArray() throws Exception {
+        doAnswer(inv -> {
+            Consumer<String> sink = inv.getArgument(2);
+            sink.accept("bWFpbDE=");
+            sink.accept("bWFpbDI=");
+            return null;
+        }).when(service).streamMailsBySegment(eq("promos"), eq("black-friday"), any(Consumer.class));
+
+        ResponseEntity<StreamingResponseBody> resp =
+                controller.streamMailsForSegment("promos", "black-friday", "JSON");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        resp.getBody().writeTo(out);
+
+        assertThat(resp.getStatusCode().value()).isEqualTo(200);
+        assertThat(out.toString(StandardCharsets.UTF_8))
+                .isEqualTo("[{\"mailBase64\":\"bWFpbDE=\"},{\"mailBase64\":\"bWFpbDI=\"}]");
+    }
+
+    @Test
+    void streamAll_returns400_forUnknownFormat() {
+        ResponseEntity<StreamingResponseBody> resp = controller.streamAll("parquet");
+
+        assertThat(resp.getStatusCode().value()).isEqualTo(400);
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    void subscribeBulk_acceptsJsonArray() throws Exception {
+        List<String> seen = captureBulkMails();
+
+        ResponseEntity<BulkSubscribeResponse> resp = controller.subscribeBulk(body(
+                "[{\"mail\":\"a@test.com\",\"category\":\"promos\",\"subcategory\":\"bf\"},"
+                        + "{\"mail\":\"b@test.com\",\"category\":\"promos\",\"subcategory\":\"bf\"}]"));
+
+        assertThat(resp.getStatusCode().value()).isEqualTo(200);
+        assertThat(resp.getBody()).isEqualTo(new BulkSubscribeResponse(2, 2, 0, 0));
+        assertThat(seen).containsExactly("a@test.com", "b@test.com");
+    }
+
+    @Test
+    void subscribeBulk_acceptsNdjson() throws Exception {
+        List<String> seen = captureBulkMails();
+
+        ResponseEntity<BulkSubscribeResponse> resp = controller.subscribeBulk(body(
+                "{\"mail\":\"a@test.com\",\"category\":\"promos\",\"subcategory\":\"bf\"}\n"
+                        + "{\"mail\":\"b@test.com\",\"category\":\"promos\",\"subcategory\":\"bf\"}\n"));
+
+        assertThat(resp.getStatusCode().value()).isEqualTo(200);
+        assertThat(seen).containsExactly("a@test.com", "b@test.com");
+    }
+
+    @Test
+    void subscribeBulk_returns400_onMalformedBody() throws Exception {
+        when(service.subscribeAll(any())).thenAnswer(inv -> {
+            Iterator<UserRequest> it = inv.getArgument(0);
+            while (it.hasNext()) it.next();
+            return new UserService.BulkResult(0, 0, 0, 0);
+        });
+
+        ResponseEntity<BulkSubscribeResponse> resp = controller.subscribeBulk(body("[{\"mail\": }"));
+
+        assertThat(resp.getStatusCode().value()).isEqualTo(400);
+    }
+
+    private List<String> captureBulkMails() {
+        List<String> seen = new ArrayList<>();
+        when(service.subscribeAll(any())).thenAnswer(inv -> {
+            Iterator<UserRequest> it = inv.getArgument(0);
+            while (it.hasNext()) seen.add(it.next().getMailBase64());
+            return new UserService.BulkResult(seen.size(), 0, seen.size(), 0);
+        });
+        return seen;
+    }
+
+    private static ByteArrayInputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
 }
@@ -1,14 +1,31 @@
 package com.seidor.seidor.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.pojo.MailTokenResponse;
+import com.seidor.seidor.pojo.SegmentRequest;
+import com.seidor.seidor.pojo.TokenCreatedResponse;
+import com.seidor.seidor.pojo.TokenRefreshResponse;
 import com.seidor.seidor.pojo.TokenRequest;
+import com.seidor.seidor.pojo.TokenResponse;
+import com.seidor.seidor.pojo.TokenSummaryResponse;
+import com.seidor.seidor.ratelimit.TokenRateLimiter;
+import com.seidor.seidor.service.MailNormalizer;
 import com.seidor.seidor.service.UserTokenService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -16,12 +33,17 @@ import static org.mockito.Mockito.*;
 class UserTokenControllerTest {
 
     private UserTokenService service;
+    private TokenRateLimiter limiter;
     private UserTokenController controller;
+    private final MockHttpServletRequest http = new MockHttpServletRequest();
 
     @BeforeEach
     void setup() {
         service = mock(UserTokenService.class);
-        controller = new UserTokenController(service);
+        // two permits per mail per minute, no burst beyond that
+        limiter = new TokenRateLimiter(new SimpleMeterRegistry(), true, 1000, 2, Duration.ofMinutes(1), 2,
+                false, 0, Duration.ofMinutes(1), 1);
+        controller = new UserTokenController(service, new ObjectMapper(), limiter, new MailNormalizer(0));
     }
 
     @Test
@@ -40,30 +62,56 @@ class UserTokenControllerTest {
 
         when(service.create(any(TokenRequest.class))).thenReturn(saved);
 
-        ResponseEntity<Map<String, Object>> resp = controller.create(req);
+        ResponseEntity<TokenCreatedResponse> resp = controller.create(req, http);
 
         assertThat(resp.getStatusCode().value()).isEqualTo(201);
-        Map<String, Object> body = resp.getBody();
-        assertThat(body).isNotNull();
-        assertThat(body.get("id")).isEqualTo(1L);
-        assertThat(body.get("category")).isEqualTo("promo");
-        assertThat(body.get("subcategory")).isEqualTo("black-friday");
-        assertThat(body.get("token")).isEqualTo("uuid-token-123");
+        assertThat(resp.getBody()).isEqualTo(new TokenCreatedResponse(1L, "uuid-token-123", "promo", "black-friday"));
 
         verify(service, times(1)).create(any(TokenRequest.class));
     }
 
+    @Test
+    void create_bufferFull_returns503WithRetryAfter() {
+        when(service.create(any(TokenRequest.class))).thenThrow(new RejectedExecutionException("full"));
+
+        ResponseEntity<TokenCreatedResponse> resp = controller.create(new TokenRequest(), http);
+
+        assertThat(resp.getStatusCode().value()).isEqualTo(503);
+        assertThat(resp.getHeaders().getFirst("Retry-After")).isEqualTo("1");
+        assertThat(resp.getBody()).isNull();
+    }
+
+    @Test
+    void refresh_overMailLimit_returns429WithRetryAfter_withoutCallingService() {
+        TokenRequest req = new TokenRequest();
+        req.setMailBase64("test@test.com");
+        req.setCategory("promo");
+        req.setSubcategory("bf");
+        UserToken row = new UserToken();
+        row.setToken("tok");
+        when(service.refreshOrCreate(anyString(), anyString(), anyString()))
+                .thenReturn(new UserTokenService.RefreshResult(row, false, false));
+
+        controller.refreshOrCreate(req, http);
+        controller.refreshOrCreate(req, http);
+        ResponseEntity<TokenRefreshResponse> limited = controller.refreshOrCreate(req, http);
+
+        assertThat(limited.getStatusCode().value()).isEqualTo(429);
+        assertThat(Long.parseLong(limited.getHeaders().getFirst("Retry-After"))).isBetween(1L, 30L);
+        verify(service, times(2)).refreshOrCreate(anyString(), anyString(), anyString());
+
+        req.setMailBase64("other@test.com");
+        assertThat(controller.refreshOrCreate(req, http).getStatusCode().value()).isEqualTo(200);
+    }
+
     @Test
     void find_returnsListOfTokens_ifExists() {
-        UserToken t = new UserToken();
-        t.setId(2L);
-        t.setToken("tok-123");
-        t.setDateSent(LocalDateTime.of(2025, 11, 1, 12, 0));
+        var t = new TokenSummaryResponse(2L, "tok-123", LocalDateTime.of(2025, 11, 1, 12, 0));
 
         when(service.findByMailCategorySubcategory("test@test.com", "promo", "black-friday"))
                 .thenReturn(List.of(t));
 
-        ResponseEntity<List<Map<String,Object>>> resp = controller.find(
+        ResponseEntity<List<TokenSummaryResponse>> resp = controller.find(
                 "test@test.com", "promo", "black-friday"
         );
 
@@ -71,9 +119,9 @@ class UserTokenControllerTest {
         var body = resp.getBody();
         assertThat(body).isNotNull();
         assertThat(body).hasSize(1);
-        assertThat(body.get(0).get("id")).isEqualTo(2L);
-        assertThat(body.get(0).get("token")).isEqualTo("tok-123");
-        assertThat(body.get(0).get("dateSent")).isEqualTo("2025-11-01T12:00");
+        assertThat(body.get(0).id()).isEqualTo(2L);
+        assertThat(body.get(0).token()).isEqualTo("tok-123");
+        assertThat(body.get(0).dateSent()).isEqualTo(LocalDateTime.of(2025, 11, 1, 12, 0));
 
         verify(service, times(1))
                 .findByMailCategorySubcategory("test@test.com", "promo", "black-friday");
@@ -84,7 +132,7 @@ class UserTokenControllerTest {
         when(service.findByMailCategorySubcategory("test@test.com", "promo", "black-friday"))
                 .thenReturn(List.of());
 
-        ResponseEntity<List<Map<String,Object>>> resp = controller.find(
+        ResponseEntity<List<TokenSummaryResponse>> resp = controller.find(
                 "test@test.com", "promo", "black-friday"
         );
 
@@ -118,18 +166,11 @@ class UserTokenControllerTest {
         when(service.refreshOrCreate("test@test.com", "promo", "black-friday"))
                 .thenReturn(result);
 
-        ResponseEntity<Map<String,Object>> resp = controller.refreshOrCreate(req);
+        ResponseEntity<TokenRefreshResponse> resp = controller.refreshOrCreate(req, http);
 
         assertThat(resp.getStatusCode().value()).isEqualTo(201);
-        var body = resp.getBody();
-        assertThat(body).isNotNull();
-        assertThat(body.get("id")).isEqualTo(50L);
-        assertThat(body.get("token")).isEqualTo("fresh-token-uuid");
-        assertThat(body.get("category")).isEqualTo("promo");
-        assertThat(body.get("subcategory")).isEqualTo("black-friday");
-        assertThat(body.get("created")).isEqualTo(true);
-        assertThat(body.get("refreshed")).isEqualTo(true);
-        assertThat(body.get("dateSent")).isEqualTo(LocalDateTime.of(2025, 11, 1, 13, 0));
+        assertThat(resp.getBody()).isEqualTo(new TokenRefreshResponse(50L, "fresh-token-uuid", "promo",
+                "black-friday", LocalDateTime.of(2025, 11, 1, 13, 0), true, true));
 
         verify(service, times(1))
                 .refreshOrCreate("test@test.com", "promo", "black-friday");
@@ -147,21 +188,11 @@ class UserTokenControllerTest {
 
         when(service.findByToken("abc-123")).thenReturn(Optional.of(token));
 
-        ResponseEntity<Map<String,Object>> resp = controller.getByToken("abc-123");
+        ResponseEntity<TokenResponse> resp = controller.getByToken("abc-123");
 
         assertThat(resp.getStatusCode().value()).isEqualTo(200);
-        var body = resp.getBody();
-        assertThat(body).isNotNull();
-        assertThat(body.get("id")).isEqualTo(10L);
-        assertThat(body.get("token")).isEqualTo("abc-123");
-        assertThat(body.get("mailBase64")).isEqualTo("dGVzdEB0ZXN0LmNvbQ==");
-        assertThat(body.get("category")).isEqualTo("promo");
-        assertThat(body.get("subcategory")).isEqualTo("test");
-        Object dateSentObj = body.get("dateSent");
-        assertThat(dateSentObj).isNotNull();
-        assertThat(dateSentObj.toString())
-                .isEqualTo("2025-11-01T14:30");
-
+        assertThat(resp.getBody()).isEqualTo(new TokenResponse(10L, "dGVzdEB0ZXN0LmNvbQ==", "abc-123",
+                "promo", "test", LocalDateTime.of(2025, 11, 1, 14, 30)));
 
         verify(service, times(1)).findByToken("abc-123");
     }
@@ -170,7 +201,7 @@ class UserTokenControllerTest {
     void getByToken_returns404_ifNotFound() {
         when(service.findByToken("does-not-exist")).thenReturn(Optional.empty());
 
-        ResponseEntity<Map<String,Object>> resp = controller.getByToken("does-not-exist");
+        ResponseEntity<TokenResponse> resp = controller.getByToken("does-not-exist");
 
         assertThat(resp.getStatusCode().value()).isEqualTo(404);
         assertThat(resp.getBody()).isNull();
@@ -200,39 +231,92 @@ class UserTokenControllerTest {
 
     @Test
     void getMailsAndTokensByCategoryAndSubcategory_returnsList() {
-        UserToken t = new UserToken();
-        t.setMailBase64("dGVzdEB0ZXN0LmNvbQ==");
-        t.setToken("tok-999");
+        when(service.findMailsAndTokensByCategoryAndSubcategory("promo", "black-friday"))
+                .thenReturn(List.of(new MailTokenResponse("dGVzdEB0ZXN0LmNvbQ==", "tok-999")));
 
-        when(service.findByCategoryAndSubcategory("promo", "black-friday"))
-                .thenReturn(List.of(t));
-
-        ResponseEntity<List<Map<String,String>>> resp =
+        ResponseEntity<List<MailTokenResponse>> resp =
                 controller.getMailsAndTokensByCategoryAndSubcategory("promo", "black-friday");
 
         assertThat(resp.getStatusCode().value()).isEqualTo(200);
         var body = resp.getBody();
         assertThat(body).isNotNull();
         assertThat(body).hasSize(1);
-        assertThat(body.get(0).get("mailBase64")).isEqualTo("dGVzdEB0ZXN0LmNvbQ==");
-        assertThat(body.get(0).get("token")).isEqualTo("tok-999");
+        assertThat(body.get(0)).isEqualTo(new MailTokenResponse("dGVzdEB0ZXN0LmNvbQ==", "tok-999"));
 
         verify(service, times(1))
-                .findByCategoryAndSubcategory("promo", "black-friday");
+                .findMailsAndTokensByCategoryAndSubcategory("promo", "black-friday");
     }
 
     @Test
     void getMailsAndTokensByCategoryAndSubcategory_returns404_ifEmpty() {
-        when(service.findByCategoryAndSubcategory("promo", "black-friday"))
+        when(service.findMailsAndTokensByCategoryAndSubcategory("promo", "black-friday"))
                 .thenReturn(List.of());
 
-        ResponseEntity<List<Map<String,String>>> resp =
+        ResponseEntity<List<MailTokenResponse>> resp =
                 controller.getMailsAndTokensByCategoryAndSubcategory("promo", "black-friday");
 
         assertThat(resp.getStatusCode().value()).isEqualTo(404);
         assertThat(resp.getBody()).isEmpty();
 
         verify(service, times(1))
-                .findByCategoryAndSubcategory("promo", "black-friday");
+                .findMailsAndTokensByCategoryAndSubcategory("promo", "black-friday");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void streamMailsAndTokens_writesCsvRows() throws Exception {
+        doAnswer(inv -> {
+            BiConsumer<String, String> sink = inv.getArgument(2);
+            sink.accept("bWFpbDE=", "tok-1");
+            sink.accept("bWFpbDI=", "tok-2");
+            return null;
+        }).when(service).streamMailsAndTokens(eq("promo"), eq("black-friday"), any(BiConsumer.class));
+
+        ResponseEntity<StreamingResponseBody> resp =
+                controller.streamMailsAndTokensByCategoryAndSubcategory("promo", "black-friday", "csv");
+
+        assertThat(resp.getStatusCode().value()).isEqualTo(200);
+        assertThat(resp.getHeaders().getContentType().toString()).isEqualTo("text/csv;charset=UTF-8");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        resp.getBody().writeTo(out);
+
+        assertThat(out.toString(StandardCharsets.UTF_8))
+                .isEqualTo("mailBase64,token\r\nbWFpbDE=,tok-1\r\nbWFpbDI=,tok-2\r\n");
+    }
+
+    @Test
+    void streamMailsAndTokens_returns400_forUnknownFormat() {
+        ResponseEntity<StreamingResponseBody> resp =
+                controller.streamMailsAndTokensByCategoryAndSubcategory("promo", "black-friday", "xml");
+
+        assertThat(resp.getStatusCode().value()).isEqualTo(400);
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void issueForSegment_streamsIssuedPairs() throws Exception {
+        SegmentRequest req = new SegmentRequest();
+        req.setCategory("promo");
+        req.setSubcategory("black-friday");
+
+        when(service.issueForSegment(eq("promo"), eq("black-friday"), any(BiConsumer.class))).thenAnswer(inv -> {
+            BiConsumer<String, String> sink = inv.getArgument(2);
+            sink.accept("bWFpbDE=", "tok-1");
+            return 1;
+        });
+
+        ResponseEntity<StreamingResponseBody> resp = controller.issueForSegment(req, "ndjson");
+
+        assertThat(resp.getStatusCode().value()).isEqualTo(201);
+        verify(service, never()).issueForSegment(any(), any(), any());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        resp.getBody().writeTo(out);
+
+        assertThat(out.toString(StandardCharsets.UTF_8))
+                .isEqualTo("{\"mailBase64\":\"bWFpbDE=\",\"token\":\"tok-1\"}\n");
+        verify(service, times(1)).issueForSegment(eq("promo"), eq("black-friday"), any(BiConsumer.class));
     }
 }
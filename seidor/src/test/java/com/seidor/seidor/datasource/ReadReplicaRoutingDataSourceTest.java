@@ -0,0 +1,158 @@
+package com.seidor.seidor.datasource;
+
+import com.seidor.seidor.config.ReadReplicaConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReadReplicaRoutingDataSourceTest {
+
+    private final long[] now = {0};
+    private SimpleMeterRegistry registry;
+    private SwitchableDataSource replicaA;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate reads;
+    private TransactionTemplate writes;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        DataSource primary = database("primary");
+        replicaA = new SwitchableDataSource(database("replica-a"));
+        DataSource replicaB = database("replica-b");
+
+        var routing = new ReadReplicaRoutingDataSource(primary, List.of(replicaA, replicaB), Duration.ofSeconds(30),
+                registry, () -> now[0]);
+        var dataSource = new LazyConnectionDataSourceProxy(routing);
+        var tx = new DataSourceTransactionManager(dataSource);
+
+        jdbc = new JdbcTemplate(dataSource);
+        reads = new TransactionTemplate(tx);
+        reads.setReadOnly(true);
+        writes = new TransactionTemplate(tx);
+    }
+
+    @Test
+    void readOnlyTransactions_goToReplicas_roundRobin() {
+        assertThat(List.of(readOnly(), readOnly(), readOnly(), readOnly()))
+                .containsExactly("replica-a", "replica-b", "replica-a", "replica-b");
+        assertThat(connections("replica")).isEqualTo(4);
+    }
+
+    @Test
+    void writeTransactions_andNonTransactionalCalls_goToPrimary() {
+        String written = writes.execute(s -> who());
+
+        assertThat(written).isEqualTo("primary");
+        assertThat(who()).isEqualTo("primary");
+        assertThat(connections("replica")).isZero();
+    }
+
+    @Test
+    void failingReplica_isSkipped_untilRetryAfter() {
+        replicaA.down = true;
+
+        assertThat(List.of(readOnly(), readOnly(), readOnly())).containsOnly("replica-b");
+
+        replicaA.down = false;
+        assertThat(List.of(readOnly(), readOnly())).containsOnly("replica-b");
+
+        now[0] += Duration.ofSeconds(30).toNanos();
+        assertThat(List.of(readOnly(), readOnly())).containsExactlyInAnyOrder("replica-a", "replica-b");
+    }
+
+    @Test
+    void allReplicasDown_fallsBackToPrimary() {
+        var routing = new ReadReplicaRoutingDataSource(database("primary"), List.of(new SwitchableDataSource(null)),
+                Duration.ofSeconds(30), registry, () -> now[0]);
+        var dataSource = new LazyConnectionDataSourceProxy(routing);
+        var tx = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        tx.setReadOnly(true);
+
+        String read = tx.execute(s -> new JdbcTemplate(dataSource).queryForObject("SELECT name FROM WHO", String.class));
+
+        assertThat(read).isEqualTo("primary");
+        assertThat(connections("fallback")).isEqualTo(1);
+    }
+
+    @Test
+    void readFromPrimary_pinsReadOnlyCallsToPrimary() {
+        ProxyFactory factory = new ProxyFactory(new Reader(this));
+        factory.addAdvisor(ReadReplicaConfig.readFromPrimaryAdvisor());
+        Reader reader = (Reader) factory.getProxy();
+
+        assertThat(reader.fromPrimary()).isEqualTo("primary");
+        assertThat(reader.anywhere()).startsWith("replica-");
+    }
+
+    public static class Reader {
+        private final ReadReplicaRoutingDataSourceTest test;
+
+        Reader(ReadReplicaRoutingDataSourceTest test) {
+            this.test = test;
+        }
+
+        @ReadFromPrimary
+        public String fromPrimary() {
+            return test.readOnly();
+        }
+
+        public String anywhere() {
+            return test.readOnly();
+        }
+    }
+
+    private String readOnly() {
+        return reads.execute(s -> who());
+    }
+
+    private String who() {
+        return jdbc.queryForObject("SELECT name FROM WHO", String.class);
+    }
+
+    private double connections(String target) {
+        return registry.get("datasource.routing.connections").tag("target", target).counter().count();
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        new JdbcTemplate(ds).execute("CREATE TABLE IF NOT EXISTS WHO (name VARCHAR(20))");
+        new JdbcTemplate(ds).execute("DELETE FROM WHO");
+        new JdbcTemplate(ds).update("INSERT INTO WHO VALUES (?)", name);
+        return ds;
+    }
+
+    private static final class SwitchableDataSource extends DelegatingDataSource {
+        volatile boolean down;
+
+        SwitchableDataSource(DataSource target) {
+            if (target != null) {
+                setTargetDataSource(target);
+            } else {
+                down = true;
+            }
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (down) throw new SQLException("replica down");
+            return super.getConnection();
+        }
+    }
+}
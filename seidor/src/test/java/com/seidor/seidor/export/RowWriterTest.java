@@ -0,0 +1,69 @@
+package com.seidor.seidor.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RowWriterTest {
+
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Test
+    void json_writesArrayOfObjects() throws Exception {
+        assertThat(render(ExportFormat.JSON))
+                .isEqualTo("[{\"id\":1,\"when\":\"2025-11-01T10:00:00\"},{\"id\":2,\"when\":null}]");
+    }
+
+    @Test
+    void json_emptyExport_isEmptyArray() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new RowWriter(ExportFormat.JSON, mapper, out, "id").close();
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("[]");
+    }
+
+    @Test
+    void ndjson_writesOneObjectPerLine() throws Exception {
+        assertThat(render(ExportFormat.NDJSON))
+                .isEqualTo("{\"id\":1,\"when\":\"2025-11-01T10:00:00\"}\n{\"id\":2,\"when\":null}\n");
+    }
+
+    @Test
+    void csv_writesHeaderAndRows() throws Exception {
+        assertThat(render(ExportFormat.CSV))
+                .isEqualTo("id,when\r\n1,2025-11-01T10:00:00\r\n2,\r\n");
+    }
+
+    @Test
+    void csv_quotesFieldsWithSeparators() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (RowWriter w = new RowWriter(ExportFormat.CSV, mapper, out, "v")) {
+            w.write("a,\"b\"");
+        }
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("v\r\n\"a,\"\"b\"\"\"\r\n");
+    }
+
+    @Test
+    void parse_isCaseInsensitive_andRejectsUnknown() {
+        assertThat(ExportFormat.parse("NdJson")).isEqualTo(ExportFormat.NDJSON);
+        assertThatThrownBy(() -> ExportFormat.parse("xml")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private String render(ExportFormat format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (RowWriter w = new RowWriter(format, mapper, out, "id", "when")) {
+            w.write(1L, LocalDateTime.of(2025, 11, 1, 10, 0));
+            w.write(2L, null);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,88 @@
+package com.seidor.seidor.job;
+
+import com.seidor.seidor.model.User;
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.repository.LookupKeyBackfillState;
+import com.seidor.seidor.repository.UserJdbcRepository;
+import com.seidor.seidor.repository.UserTokenJdbcRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class LookupKeyBackfillJobTest {
+
+    private UserJdbcRepository users;
+    private UserTokenJdbcRepository tokens;
+    private LookupKeyBackfillState state;
+    private LookupKeyBackfillJob job;
+
+    @BeforeEach
+    void setup() {
+        users = mock(UserJdbcRepository.class);
+        tokens = mock(UserTokenJdbcRepository.class);
+        state = new LookupKeyBackfillState(false);
+        job = new LookupKeyBackfillJob(users, tokens, state, new SyncTaskExecutor(), 2, Duration.ZERO);
+    }
+
+    @Test
+    void run_updatesBothTables_inBatches_pagingById() {
+        List<User> firstUsers = List.of(user(3L), user(8L));
+        List<User> lastUsers = List.of(user(11L));
+        when(users.findWithoutLookupKey(0L, 2)).thenReturn(firstUsers);
+        when(users.findWithoutLookupKey(8L, 2)).thenReturn(lastUsers);
+        when(users.findWithoutLookupKey(11L, 2)).thenReturn(List.of());
+
+        List<UserToken> someTokens = List.of(token(5L));
+        when(tokens.findWithoutLookupKey(0L, 2)).thenReturn(someTokens);
+        when(tokens.findWithoutLookupKey(5L, 2)).thenReturn(List.of());
+
+        assertThat(job.run()).isEqualTo(4);
+
+        verify(users).updateLookupKeys(firstUsers);
+        verify(users).updateLookupKeys(lastUsers);
+        verify(tokens).updateLookupKeys(someTokens);
+        assertThat(state.isComplete()).isTrue();
+    }
+
+    @Test
+    void run_interrupted_leavesLookupsOnTheNullBranch() {
+        when(users.findWithoutLookupKey(anyLong(), anyInt())).thenReturn(List.of(user(3L)));
+        job = new LookupKeyBackfillJob(users, tokens, state, new SyncTaskExecutor(), 2, Duration.ofMillis(1));
+        Thread.currentThread().interrupt();
+
+        assertThat(job.run()).isEqualTo(1);
+
+        assertThat(Thread.interrupted()).isTrue();
+        assertThat(state.isComplete()).isFalse();
+    }
+
+    @Test
+    void start_runsOnTheExecutor() {
+        when(users.findWithoutLookupKey(anyLong(), anyInt())).thenReturn(List.of());
+        when(tokens.findWithoutLookupKey(anyLong(), anyInt())).thenReturn(List.of());
+
+        job.start();
+
+        verify(users).findWithoutLookupKey(0L, 2);
+        verify(tokens).findWithoutLookupKey(0L, 2);
+        verify(users, never()).updateLookupKeys(anyList());
+    }
+
+    private static User user(long id) {
+        User u = new User();
+        u.setId(id);
+        return u;
+    }
+
+    private static UserToken token(long id) {
+        UserToken t = new UserToken();
+        t.setId(id);
+        return t;
+    }
+}
@@ -0,0 +1,52 @@
+package com.seidor.seidor.job;
+
+import com.seidor.seidor.cache.SubscriptionCache;
+import com.seidor.seidor.repository.UserJdbcRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class SubscriptionDedupeJobTest {
+
+    private UserJdbcRepository jdbcRepo;
+    private SubscriptionCache cache;
+    private SubscriptionDedupeJob job;
+
+    @BeforeEach
+    void setup() {
+        jdbcRepo = mock(UserJdbcRepository.class);
+        cache = mock(SubscriptionCache.class);
+        job = new SubscriptionDedupeJob(jdbcRepo, cache, new SyncTaskExecutor(), 2, Duration.ZERO);
+    }
+
+    @Test
+    void run_deletesBatchesUntilNoDuplicatesLeft_pagingById() {
+        when(jdbcRepo.findDuplicateIds(0L, 2)).thenReturn(List.of(5L, 7L));
+        when(jdbcRepo.findDuplicateIds(7L, 2)).thenReturn(List.of(9L));
+        when(jdbcRepo.findDuplicateIds(9L, 2)).thenReturn(List.of());
+        when(jdbcRepo.deleteByIds(anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+
+        int deleted = job.run();
+
+        assertThat(deleted).isEqualTo(3);
+        verify(jdbcRepo).deleteByIds(List.of(5L, 7L));
+        verify(jdbcRepo).deleteByIds(List.of(9L));
+        verify(cache, times(2)).evictAll();
+    }
+
+    @Test
+    void start_runsOnTheExecutor() {
+        when(jdbcRepo.findDuplicateIds(anyLong(), anyInt())).thenReturn(List.of());
+
+        job.start();
+
+        verify(jdbcRepo, times(1)).findDuplicateIds(0L, 2);
+        verify(jdbcRepo, never()).deleteByIds(anyList());
+    }
+}
@@ -0,0 +1,41 @@
+package com.seidor.seidor.job;
+
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.repository.TokenBinBackfillState;
+import com.seidor.seidor.repository.UserTokenJdbcRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class TokenBinBackfillJobTest {
+
+    @Test
+    void run_pagesById_evenWhenRowsHaveNoBinaryForm() {
+        UserTokenJdbcRepository tokens = mock(UserTokenJdbcRepository.class);
+        TokenBinBackfillState state = new TokenBinBackfillState(false);
+        TokenBinBackfillJob job = new TokenBinBackfillJob(tokens, state, new SyncTaskExecutor(), 2, Duration.ZERO);
+
+        List<UserToken> first = List.of(token(4L), token(6L));
+        List<UserToken> second = List.of(token(9L));
+        when(tokens.findWithoutTokenBin(0L, 2)).thenReturn(first);
+        when(tokens.findWithoutTokenBin(6L, 2)).thenReturn(second);
+        when(tokens.findWithoutTokenBin(9L, 2)).thenReturn(List.of());
+        when(tokens.updateTokenBins(first)).thenReturn(1);
+        when(tokens.updateTokenBins(second)).thenReturn(0);
+
+        assertThat(job.run()).isEqualTo(1);
+        verify(tokens).findWithoutTokenBin(9L, 2);
+        assertThat(state.isComplete()).isTrue();
+    }
+
+    private static UserToken token(long id) {
+        UserToken t = new UserToken();
+        t.setId(id);
+        return t;
+    }
+}
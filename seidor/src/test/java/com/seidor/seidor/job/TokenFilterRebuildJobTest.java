@@ -0,0 +1,61 @@
+package com.seidor.seidor.job;
+
+import com.seidor.seidor.cache.TokenBloomFilter;
+import com.seidor.seidor.store.TokenStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class TokenFilterRebuildJobTest {
+
+    private TokenStore store;
+    private TokenBloomFilter filter;
+    private TokenFilterRebuildJob job;
+
+    @BeforeEach
+    void setup() {
+        store = mock(TokenStore.class);
+        filter = new TokenBloomFilter(true, 100, 0.01, new SimpleMeterRegistry());
+        job = new TokenFilterRebuildJob(store, filter, new SyncTaskExecutor(), Duration.ZERO);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rebuild_publishesTheTableContents_andForgetsDeletedTokens() {
+        when(store.count()).thenReturn(2L);
+        doAnswer(inv -> {
+            Consumer<String> sink = inv.getArgument(0);
+            sink.accept("t1");
+            sink.accept("t2");
+            return null;
+        }).doAnswer(inv -> {
+            ((Consumer<String>) inv.getArgument(0)).accept("t2");
+            return null;
+        }).when(store).streamTokens(any());
+
+        job.start();
+        assertThat(filter.mightContain("t1")).isTrue();
+        assertThat(filter.mightContain("t2")).isTrue();
+        assertThat(filter.mightContain("t3")).isFalse();
+
+        assertThat(job.rebuild()).isTrue();
+        assertThat(filter.mightContain("t1")).isFalse();
+        assertThat(filter.mightContain("t2")).isTrue();
+    }
+
+    @Test
+    void failedScan_keepsLookupsGoingToTheDatabase() {
+        doThrow(new IllegalStateException("db down")).when(store).streamTokens(any());
+
+        assertThat(job.rebuild()).isFalse();
+        assertThat(filter.mightContain("anything")).isTrue();
+    }
+}
@@ -0,0 +1,65 @@
+package com.seidor.seidor.job;
+
+import com.seidor.seidor.cache.TokenLookupCache;
+import com.seidor.seidor.store.TokenStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class TokenPurgeJobTest {
+
+    private TokenStore store;
+    private TokenLookupCache cache;
+    private SimpleMeterRegistry registry;
+    private TokenPurgeJob job;
+
+    @BeforeEach
+    void setup() {
+        store = mock(TokenStore.class);
+        cache = mock(TokenLookupCache.class);
+        registry = new SimpleMeterRegistry();
+        job = new TokenPurgeJob(store, cache, registry, Duration.ofDays(30), 2, Duration.ZERO, false, Duration.ofDays(30));
+    }
+
+    @Test
+    void purge_deletesChunksUntilAShortOne_andRecordsMetrics() {
+        when(store.deleteSentBefore(any(LocalDateTime.class), eq(2))).thenReturn(2, 2, 1);
+
+        job.purge();
+
+        verify(store, times(3)).deleteSentBefore(any(LocalDateTime.class), eq(2));
+        verify(cache).invalidateAll();
+        assertThat(registry.get("tokens.purge.rows").counter().count()).isEqualTo(5.0);
+        assertThat(registry.get("tokens.purge.duration").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void purge_usesTtlCutoff() {
+        LocalDateTime before = LocalDateTime.now().minusDays(30);
+        when(store.deleteSentBefore(any(LocalDateTime.class), anyInt())).thenReturn(0);
+
+        assertThat(job.purgeExpired()).isZero();
+
+        verify(store).deleteSentBefore(argThat(c -> !c.isBefore(before)
+                && !c.isAfter(LocalDateTime.now().minusDays(30))), eq(2));
+        verify(cache, never()).invalidateAll();
+    }
+
+    @Test
+    void ttlShorterThanTheSigningMaxAge_isRejected_whenRevocationIsChecked() {
+        assertThatThrownBy(() -> new TokenPurgeJob(store, cache, registry, Duration.ofDays(7), 2, Duration.ZERO,
+                true, Duration.ofDays(30)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("seidor.tokens.signing.max-age");
+        new TokenPurgeJob(store, cache, registry, Duration.ofDays(7), 2, Duration.ZERO, false, Duration.ofDays(30));
+    }
+}
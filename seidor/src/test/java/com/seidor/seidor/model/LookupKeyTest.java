@@ -0,0 +1,42 @@
+package com.seidor.seidor.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LookupKeyTest {
+
+    @Test
+    void of_isDeterministic() {
+        assertThat(LookupKey.of("dGVzdEB0ZXN0LmNvbQ==", "promo", "bf"))
+                .isEqualTo(LookupKey.of(new String("dGVzdEB0ZXN0LmNvbQ=="), "promo", "bf"));
+    }
+
+    @Test
+    void of_distinguishesFieldBoundaries_andNulls() {
+        assertThat(LookupKey.of("ab", "c", "d")).isNotEqualTo(LookupKey.of("a", "bc", "d"));
+        assertThat(LookupKey.of("a", "", "b")).isNotEqualTo(LookupKey.of("a", "b", ""));
+        assertThat(LookupKey.of(null, "c", "d")).isNotEqualTo(LookupKey.of("", "c", "d"));
+    }
+
+    @Test
+    void of_ignoresCaseAndTrailingSpaces_likeTheColumnCollation() {
+        long key = LookupKey.of("bWFpbA==", "promo", "bf");
+
+        assertThat(LookupKey.of("bWFpbA==", "PROMO", "Bf")).isEqualTo(key);
+        assertThat(LookupKey.of("bWFpbA==  ", "promo ", "bf")).isEqualTo(key);
+        assertThat(LookupKey.of("bWFpbA==", " promo", "bf")).isNotEqualTo(key);
+    }
+
+    @Test
+    void of_spreadsSimilarInputs() {
+        Set<Long> keys = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            keys.add(LookupKey.of("user" + i + "@example.com", "promo", "bf"));
+        }
+        assertThat(keys).hasSize(100_000);
+    }
+}
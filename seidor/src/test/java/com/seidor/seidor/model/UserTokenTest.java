@@ -29,6 +29,17 @@ class UserTokenTest {
         assertThat(t.getDateSent()).isEqualTo(sentTs);
     }
 
+    @Test
+    void setToken_shouldKeepBinaryForm_inSync() {
+        UserToken t = new UserToken();
+
+        t.setToken("123e4567-e89b-12d3-a456-426614174000");
+        assertThat(t.getTokenBin()).hasSize(16);
+
+        t.setToken("k1.payload.sig");
+        assertThat(t.getTokenBin()).isNull();
+    }
+
     @Test
     void onCreate_shouldSetDateSent_ifNull() {
         UserToken t = new UserToken();
@@ -70,4 +81,19 @@ class UserTokenTest {
 
         assertThat(t.getDateSent()).isNotEqualTo(old);
     }
+
+    @Test
+    void onCreate_andOnUpdate_shouldSetLookupKey() {
+        UserToken t = new UserToken();
+        t.setMailBase64("dGVzdEB0ZXN0LmNvbQ==");
+        t.setCategory("promo");
+        t.setSubcategory("black-friday");
+
+        t.onCreate();
+        assertThat(t.getLookupKey()).isEqualTo(LookupKey.of("dGVzdEB0ZXN0LmNvbQ==", "promo", "black-friday"));
+
+        t.setSubcategory("cyber-monday");
+        t.onUpdate();
+        assertThat(t.getLookupKey()).isEqualTo(LookupKey.of("dGVzdEB0ZXN0LmNvbQ==", "promo", "cyber-monday"));
+    }
 }
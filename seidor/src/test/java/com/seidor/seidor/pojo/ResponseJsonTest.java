@@ -0,0 +1,51 @@
+package com.seidor.seidor.pojo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.seidor.seidor.config.JacksonConfig;
+import com.seidor.seidor.model.UserToken;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** The wire format the controllers produce: fixed field order and ISO-8601 dates. */
+class ResponseJsonTest {
+
+    // built the way Boot builds the MVC mapper from the Module beans
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json()
+            .modulesToInstall(new JacksonConfig().blackbirdModule(), new JacksonConfig().isoDateTimeModule())
+            .build();
+
+    @Test
+    void tokenResponse_hasFixedOrder_andIsoDate() throws Exception {
+        UserToken t = new UserToken();
+        t.setId(10L);
+        t.setMailBase64("dGVzdEB0ZXN0LmNvbQ==");
+        t.setToken("abc-123");
+        t.setCategory("promo");
+        t.setSubcategory("bf");
+        t.setDateSent(LocalDateTime.of(2025, 11, 1, 14, 30));
+
+        assertThat(mapper.writeValueAsString(TokenResponse.of(t))).isEqualTo(
+                "{\"id\":10,\"mailBase64\":\"dGVzdEB0ZXN0LmNvbQ==\",\"token\":\"abc-123\","
+                        + "\"category\":\"promo\",\"subcategory\":\"bf\",\"dateSent\":\"2025-11-01T14:30:00\"}");
+        assertThat(mapper.writeValueAsString(List.of(TokenSummaryResponse.of(t)))).isEqualTo(
+                "[{\"id\":10,\"token\":\"abc-123\",\"dateSent\":\"2025-11-01T14:30:00\"}]");
+    }
+
+    @Test
+    void refreshAndBulkResponses_keepDeclaredOrder() throws Exception {
+        TokenRefreshResponse refresh = new TokenRefreshResponse(5L, "tok", "promo", "bf",
+                LocalDateTime.of(2025, 11, 1, 14, 30, 15, 123_000_000), false, true);
+        BulkSubscribeResponse bulk = new BulkSubscribeResponse(3, 1, 1, 1);
+
+        assertThat(mapper.writeValueAsString(refresh)).isEqualTo(
+                "{\"id\":5,\"token\":\"tok\",\"category\":\"promo\",\"subcategory\":\"bf\","
+                        + "\"dateSent\":\"2025-11-01T14:30:15.123\",\"created\":false,\"refreshed\":true}");
+        assertThat(mapper.writeValueAsString(bulk)).isEqualTo(
+                "{\"received\":3,\"created\":1,\"existing\":1,\"rejected\":1}");
+    }
+}
@@ -0,0 +1,87 @@
+package com.seidor.seidor.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GcraLimiterTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final long[] now = {5 * SECOND};
+
+    // 6 per minute = one every 10s, bursts of 3
+    private GcraLimiter limiter(int maxKeys) {
+        return new GcraLimiter(6, Duration.ofMinutes(1), 3, maxKeys, () -> now[0]);
+    }
+
+    @Test
+    void allowsBurst_thenOnePermitPerInterval() {
+        GcraLimiter limiter = limiter(100);
+
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isEqualTo(10 * SECOND);
+
+        now[0] += 4 * SECOND;
+        assertThat(limiter.tryAcquire("a")).isEqualTo(6 * SECOND);
+        now[0] += 6 * SECOND;
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isPositive();
+    }
+
+    @Test
+    void keysAreIndependent() {
+        GcraLimiter limiter = limiter(100);
+        for (int i = 0; i < 3; i++) limiter.tryAcquire("a");
+
+        assertThat(limiter.tryAcquire("a")).isPositive();
+        assertThat(limiter.tryAcquire("b")).isZero();
+    }
+
+    @Test
+    void evictIdle_dropsOnlyRefilledKeys_withoutChangingTheirLimit() {
+        GcraLimiter limiter = limiter(100);
+        limiter.tryAcquire("idle");
+        for (int i = 0; i < 3; i++) limiter.tryAcquire("busy");
+
+        now[0] += 10 * SECOND;
+        assertThat(limiter.evictIdle()).isEqualTo(1);
+        assertThat(limiter.size()).isEqualTo(1);
+
+        assertThat(limiter.tryAcquire("busy")).isZero();
+        assertThat(limiter.tryAcquire("busy")).isPositive();
+    }
+
+    @Test
+    void fullMap_evictsOldestKey_soNewKeysKeepTheirOwnBucket() {
+        GcraLimiter limiter = limiter(2);
+        for (int i = 0; i < 3; i++) limiter.tryAcquire("a");
+        limiter.tryAcquire("b");
+
+        // a flood of distinct keys never throttles a newcomer
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.tryAcquire("spray-" + i)).isZero();
+        }
+        assertThat(limiter.tryAcquire("legit")).isZero();
+        assertThat(limiter.tryAcquire("legit")).isZero();
+        assertThat(limiter.size()).isEqualTo(2);
+    }
+
+    @Test
+    void fullMap_prefersDroppingIdleKeys() {
+        GcraLimiter limiter = limiter(2);
+        limiter.tryAcquire("idle");
+        for (int i = 0; i < 3; i++) limiter.tryAcquire("busy");
+
+        now[0] += 10 * SECOND;
+        assertThat(limiter.tryAcquire("new")).isZero();
+
+        assertThat(limiter.size()).isEqualTo(2);
+        assertThat(limiter.tryAcquire("busy")).isZero();
+        assertThat(limiter.tryAcquire("busy")).isPositive();
+    }
+}
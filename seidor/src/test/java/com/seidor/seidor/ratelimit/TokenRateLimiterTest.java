@@ -0,0 +1,55 @@
+package com.seidor.seidor.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenRateLimiterTest {
+
+    private final long[] now = {0};
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private TokenRateLimiter limiter(boolean enabled, boolean byIp) {
+        return new TokenRateLimiter(registry, enabled, 100, 1, Duration.ofSeconds(30), 1,
+                byIp, 2, Duration.ofSeconds(10), 2, () -> now[0]);
+    }
+
+    @Test
+    void limitsPerMail_withRetryAfterInWholeSeconds() {
+        TokenRateLimiter limiter = limiter(true, false);
+
+        assertThat(limiter.acquire("bWFpbA==", "10.0.0.1").allowed).isTrue();
+        TokenRateLimiter.Decision second = limiter.acquire("bWFpbA==", "10.0.0.2");
+
+        assertThat(second.allowed).isFalse();
+        assertThat(second.retryAfterSeconds).isEqualTo(30);
+        assertThat(count("mail", "limited")).isEqualTo(1);
+    }
+
+    @Test
+    void ipLimit_appliesAcrossMails() {
+        TokenRateLimiter limiter = limiter(true, true);
+
+        assertThat(limiter.acquire("a", "10.0.0.1").allowed).isTrue();
+        assertThat(limiter.acquire("b", "10.0.0.1").allowed).isTrue();
+        assertThat(limiter.acquire("c", "10.0.0.1").allowed).isFalse();
+        assertThat(limiter.acquire("c", "10.0.0.2").allowed).isTrue();
+        assertThat(count("ip", "limited")).isEqualTo(1);
+    }
+
+    @Test
+    void disabled_allowsEverything() {
+        TokenRateLimiter limiter = limiter(false, true);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.acquire("a", "10.0.0.1").allowed).isTrue();
+        }
+    }
+
+    private double count(String scope, String result) {
+        return registry.get("tokens.ratelimit.requests").tag("scope", scope).tag("result", result).counter().count();
+    }
+}
@@ -0,0 +1,175 @@
+package com.seidor.seidor.repository;
+
+import com.seidor.seidor.model.LookupKey;
+import com.seidor.seidor.model.User;
+import com.seidor.seidor.pojo.MailSegmentKey;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserJdbcRepositoryTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 11, 10, 12, 0);
+
+    private EmbeddedDatabase db;
+    private JdbcTemplate jdbc;
+    private LookupKeyBackfillState lookupKeys;
+    private UserJdbcRepository repo;
+
+    @BeforeEach
+    void setup() {
+        db = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema/user_subscription.sql")
+                .build();
+        jdbc = new JdbcTemplate(db);
+        lookupKeys = new LookupKeyBackfillState(false);
+        repo = new UserJdbcRepository(jdbc, 100, lookupKeys);
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    void insertIfAbsent_insertsOnce_thenReportsExisting() {
+        var first = repo.insertIfAbsent("bWFpbA==", "promos", "bf", NOW);
+        var second = repo.insertIfAbsent("bWFpbA==", "promos", "bf", NOW);
+        var otherSegment = repo.insertIfAbsent("bWFpbA==", "promos", "cyber-monday", NOW);
+
+        assertThat(first).isPresent();
+        assertThat(second).isEmpty();
+        assertThat(otherSegment).isPresent();
+        assertThat(count()).isEqualTo(2);
+    }
+
+    @Test
+    void insertIfAbsent_withUniqueKeyInPlace_reportsExisting() {
+        addUniqueKey();
+        jdbc.update("INSERT INTO USER_SUBSCRIPTION (mail_base64, category, subcategory, date_subscribed) "
+                + "VALUES ('bWFpbA==', 'promos', 'bf', CURRENT_TIMESTAMP)");
+
+        assertThat(repo.insertIfAbsent("bWFpbA==", "promos", "bf", NOW)).isEmpty();
+    }
+
+    @Test
+    void insertIfAbsent_caseVariantOfAnExistingTriple_reportsExisting() {
+        assertThat(repo.insertIfAbsent("bWFpbA==", "promos", "bf", NOW)).isPresent();
+
+        assertThat(repo.insertIfAbsent("bWFpbA==", "PROMOS", "BF", NOW)).isEmpty();
+        assertThat(count()).isEqualTo(1);
+    }
+
+    @Test
+    void insertAll_skipsRowsAlreadySubscribed() {
+        repo.insertIfAbsent("bWFpbDE=", "promos", "bf", NOW);
+
+        int written = repo.insertAll(List.of(
+                new MailSegmentKey("bWFpbDE=", "promos", "bf"),
+                new MailSegmentKey("bWFpbDI=", "promos", "bf")), NOW);
+
+        assertThat(written).isEqualTo(1);
+        assertThat(repo.findExistingMails("promos", "bf", List.of("bWFpbDE=", "bWFpbDI=", "bWFpbDM=")))
+                .containsExactlyInAnyOrder("bWFpbDE=", "bWFpbDI=");
+    }
+
+    @Test
+    void streamAll_andSegmentStreams_readRowsInOrder() {
+        repo.insertIfAbsent("bWFpbDE=", "promos", "bf", NOW);
+        repo.insertIfAbsent("bWFpbDI=", "promos", "bf", NOW);
+        repo.insertIfAbsent("bWFpbDM=", "news", "daily", NOW);
+
+        List<User> all = new ArrayList<>();
+        repo.streamAll(all::add);
+        List<String> segment = new ArrayList<>();
+        repo.streamMailsBySegment("promos", "bf", segment::add);
+
+        assertThat(all).extracting(User::getMailBase64).containsExactly("bWFpbDE=", "bWFpbDI=", "bWFpbDM=");
+        assertThat(all.get(0).getDateSubscribed()).isEqualTo(NOW);
+        assertThat(segment).containsExactly("bWFpbDE=", "bWFpbDI=");
+    }
+
+    @Test
+    void duplicates_areFoundAfterOldestRow_andDeleted() {
+        insertRaw("bWFpbDE=");
+        insertRaw("bWFpbDE=");
+        insertRaw("bWFpbDI=");
+        insertRaw("bWFpbDE=");
+
+        List<Long> dupes = repo.findDuplicateIds(0, 10);
+        List<String> distinct = new ArrayList<>();
+        repo.streamDistinctMailsBySegment("promos", "bf", distinct::add);
+
+        assertThat(dupes).hasSize(2);
+        assertThat(distinct).containsExactlyInAnyOrder("bWFpbDE=", "bWFpbDI=");
+        assertThat(repo.findDuplicateIds(dupes.get(1), 10)).isEmpty();
+
+        assertThat(repo.deleteByIds(dupes)).isEqualTo(2);
+        assertThat(count()).isEqualTo(2);
+        assertThat(repo.findDuplicateIds(0, 10)).isEmpty();
+    }
+
+    @Test
+    void insertIfAbsent_writesLookupKey() {
+        repo.insertIfAbsent("bWFpbA==", "promos", "bf", NOW);
+
+        assertThat(jdbc.queryForObject("SELECT lookup_key FROM USER_SUBSCRIPTION", Long.class))
+                .isEqualTo(LookupKey.of("bWFpbA==", "promos", "bf"));
+    }
+
+    @Test
+    void legacyRowsWithoutLookupKey_areStillFound_andBackfilled() {
+        insertRaw("bWFpbDE=");
+        insertRaw("bWFpbDI=");
+
+        assertThat(repo.insertIfAbsent("bWFpbDE=", "promos", "bf", NOW)).isEmpty();
+        assertThat(repo.findExistingMails("promos", "bf", List.of("bWFpbDE=", "bWFpbDM="))).containsExactly("bWFpbDE=");
+
+        List<User> missing = repo.findWithoutLookupKey(0, 10);
+        assertThat(missing).extracting(User::getMailBase64).containsExactly("bWFpbDE=", "bWFpbDI=");
+        repo.updateLookupKeys(missing);
+
+        assertThat(repo.findWithoutLookupKey(0, 10)).isEmpty();
+        assertThat(jdbc.queryForList("SELECT lookup_key FROM USER_SUBSCRIPTION ORDER BY id", Long.class))
+                .containsExactly(LookupKey.of("bWFpbDE=", "promos", "bf"), LookupKey.of("bWFpbDI=", "promos", "bf"));
+        assertThat(repo.findExistingMails("promos", "bf", List.of("bWFpbDE=", "bWFpbDM="))).containsExactly("bWFpbDE=");
+    }
+
+    @Test
+    void onceBackfilled_lookupsNoLongerMatchRowsWithoutKey() {
+        repo.insertIfAbsent("bWFpbDE=", "promos", "bf", NOW);
+        insertRaw("bWFpbDI=");
+
+        lookupKeys.markComplete();
+
+        assertThat(repo.isLookupKeyBackfilled()).isTrue();
+        assertThat(repo.insertIfAbsent("bWFpbDE=", "promos", "bf", NOW)).isEmpty();
+        assertThat(repo.findExistingMails("promos", "bf", List.of("bWFpbDE=", "bWFpbDI="))).containsExactly("bWFpbDE=");
+    }
+
+    private void insertRaw(String mail) {
+        jdbc.update("INSERT INTO USER_SUBSCRIPTION (mail_base64, category, subcategory, date_subscribed) "
+                + "VALUES (?, 'promos', 'bf', CURRENT_TIMESTAMP)", mail);
+    }
+
+    private void addUniqueKey() {
+        jdbc.execute("ALTER TABLE USER_SUBSCRIPTION ADD CONSTRAINT UK_USER_SUBSCRIPTION_MAIL_SEGMENT "
+                + "UNIQUE (mail_base64, category, subcategory)");
+    }
+
+    private int count() {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM USER_SUBSCRIPTION", Integer.class);
+    }
+}
@@ -0,0 +1,51 @@
+package com.seidor.seidor.repository;
+
+import com.seidor.seidor.model.User;
+import com.seidor.seidor.pojo.SubscriptionResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect")
+class UserRepositoryTest {
+
+    @Autowired
+    private UserRepository repo;
+
+    @Test
+    void findPageAfter_returnsResponseRows_inIdOrder() {
+        LocalDateTime at = LocalDateTime.of(2025, 11, 1, 10, 0);
+        User first = repo.saveAndFlush(user("bWFpbDE=", "promos", at));
+        User second = repo.saveAndFlush(user("bWFpbDI=", "promos", at));
+        repo.saveAndFlush(user("bWFpbDM=", "promos", at));
+
+        assertThat(repo.findPageAfter(first.getId(), Limit.of(1)))
+                .containsExactly(new SubscriptionResponse(second.getId(), "bWFpbDI=", "promos", "bf", at));
+        assertThat(repo.findPageAfter(0L, Limit.of(10))).hasSize(3);
+    }
+
+    @Test
+    void findMailsByCategoryAndSubcategory_readsOnlyTheMailColumn() {
+        repo.saveAndFlush(user("bWFpbDE=", "promos", null));
+        repo.saveAndFlush(user("bWFpbDI=", "promos", null));
+        repo.saveAndFlush(user("bWFpbDM=", "news", null));
+
+        assertThat(repo.findMailsByCategoryAndSubcategory("promos", "bf"))
+                .containsExactlyInAnyOrder("bWFpbDE=", "bWFpbDI=");
+        assertThat(repo.findMailsByCategoryAndSubcategory("promos", "none")).isEmpty();
+    }
+
+    private static User user(String mail, String category, LocalDateTime at) {
+        User u = new User();
+        u.setMailBase64(mail);
+        u.setCategory(category);
+        u.setSubcategory("bf");
+        u.setDateSubscribed(at);
+        return u;
+    }
+}
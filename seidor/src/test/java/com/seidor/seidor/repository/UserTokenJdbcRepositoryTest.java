@@ -0,0 +1,320 @@
+package com.seidor.seidor.repository;
+
+import com.seidor.seidor.model.LookupKey;
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.token.TokenCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserTokenJdbcRepositoryTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 11, 10, 12, 0);
+
+    private EmbeddedDatabase db;
+    private JdbcTemplate jdbc;
+    private LookupKeyBackfillState lookupKeys;
+    private TokenBinBackfillState tokenBins;
+    private UserTokenJdbcRepository repo;
+
+    @BeforeEach
+    void setup() {
+        db = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema/users_token.sql")
+                .build();
+        jdbc = new JdbcTemplate(db);
+        lookupKeys = new LookupKeyBackfillState(false);
+        tokenBins = new TokenBinBackfillState(false);
+        repo = new UserTokenJdbcRepository(jdbc, new SqlDialect(jdbc), 100, lookupKeys, tokenBins);
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    void refreshOrCreate_insertsWhenTripleUnknown() {
+        var row = repo.refreshOrCreate("bWFpbA==", "promo", "bf", "tok-1", NOW, NOW.minusHours(48));
+
+        assertThat(row.created()).isTrue();
+        assertThat(row.refreshed()).isTrue();
+        assertThat(row.previousToken()).isNull();
+        assertThat(row.tokenRow().getId()).isPositive();
+        assertThat(row.tokenRow().getToken()).isEqualTo("tok-1");
+        assertThat(row.tokenRow().getDateSent()).isEqualTo(NOW);
+        assertThat(count()).isEqualTo(1);
+    }
+
+    @Test
+    void refreshOrCreate_caseVariantCategory_refreshesTheExistingRow() {
+        repo.refreshOrCreate("bWFpbA==", "promo", "bf", "tok-1", NOW.minusDays(3), NOW.minusDays(5));
+
+        var row = repo.refreshOrCreate("bWFpbA==", "PROMO", "Bf", "tok-2", NOW, NOW.minusHours(48));
+
+        assertThat(row.created()).isFalse();
+        assertThat(row.refreshed()).isTrue();
+        assertThat(row.previousToken()).isEqualTo("tok-1");
+        assertThat(count()).isEqualTo(1);
+    }
+
+    @Test
+    void refreshOrCreate_concurrentFirstCalls_insertOnce() throws Exception {
+        TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(db));
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<UserTokenJdbcRepository.RefreshRow>> calls = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String minted = "tok-" + i;
+                calls.add(pool.submit(() -> {
+                    start.await();
+                    return tx.execute(s -> repo.refreshOrCreate("bWFpbA==", "promo", "bf", minted, NOW,
+                            NOW.minusHours(48)));
+                }));
+            }
+            start.countDown();
+
+            int created = 0;
+            for (Future<UserTokenJdbcRepository.RefreshRow> call : calls) {
+                created += call.get().created() ? 1 : 0;
+            }
+            assertThat(created).isEqualTo(1);
+            assertThat(count()).isEqualTo(1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void refreshOrCreate_keepsRecentToken() {
+        insert("bWFpbA==", "tok-old", NOW.minusHours(1));
+
+        var row = repo.refreshOrCreate("bWFpbA==", "promo", "bf", "tok-new", NOW, NOW.minusHours(48));
+
+        assertThat(row.created()).isFalse();
+        assertThat(row.refreshed()).isFalse();
+        assertThat(row.tokenRow().getToken()).isEqualTo("tok-old");
+        assertThat(row.tokenRow().getDateSent()).isEqualTo(NOW.minusHours(1));
+        assertThat(count()).isEqualTo(1);
+    }
+
+    @Test
+    void refreshOrCreate_rotatesStaleToken_andReportsPreviousValue() {
+        insert("bWFpbA==", "tok-old", NOW.minusHours(72));
+
+        var row = repo.refreshOrCreate("bWFpbA==", "promo", "bf", "tok-new", NOW, NOW.minusHours(48));
+
+        assertThat(row.created()).isFalse();
+        assertThat(row.refreshed()).isTrue();
+        assertThat(row.previousToken()).isEqualTo("tok-old");
+        assertThat(row.tokenRow().getToken()).isEqualTo("tok-new");
+        assertThat(jdbc.queryForObject("SELECT token FROM USERS_TOKEN", String.class)).isEqualTo("tok-new");
+        assertThat(count()).isEqualTo(1);
+    }
+
+    @Test
+    void refreshOrCreate_looksAtNewestRowOfTriple() {
+        insert("bWFpbA==", "tok-older", NOW.minusHours(100));
+        insert("bWFpbA==", "tok-newer", NOW.minusHours(2));
+
+        var row = repo.refreshOrCreate("bWFpbA==", "promo", "bf", "tok-new", NOW, NOW.minusHours(48));
+
+        assertThat(row.refreshed()).isFalse();
+        assertThat(row.tokenRow().getToken()).isEqualTo("tok-newer");
+    }
+
+    @Test
+    void insertAll_thenStreamMailsAndTokens_returnsOnlySegmentRows() {
+        repo.insertAll(List.of(token("bWFpbDE=", "t1", "promo"), token("bWFpbDI=", "t2", "promo"),
+                token("bWFpbDM=", "t3", "news")));
+
+        List<String> rows = new ArrayList<>();
+        repo.streamMailsAndTokens("promo", "bf", (mail, tok) -> rows.add(mail + "|" + tok));
+
+        assertThat(rows).containsExactly("bWFpbDE=|t1", "bWFpbDI=|t2");
+    }
+
+    @Test
+    void insertAllReturningIds_setsEachRowsGeneratedId() {
+        List<UserToken> rows = List.of(token("bWFpbDE=", "t1", "promo"), token("bWFpbDI=", "t2", "promo"),
+                token("bWFpbDM=", "t3", "news"));
+
+        repo.insertAllReturningIds(rows);
+
+        for (UserToken t : rows) {
+            assertThat(t.getId()).isNotNull();
+            assertThat(jdbc.queryForObject("SELECT token FROM USERS_TOKEN WHERE id = ?", String.class, t.getId()))
+                    .isEqualTo(t.getToken());
+        }
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM USERS_TOKEN WHERE lookup_key IS NULL", Integer.class))
+                .isZero();
+    }
+
+    @Test
+    void countTokens_andStreamTokens_coverEveryRow() {
+        repo.insertAll(List.of(token("bWFpbDE=", "t1", "promo"), token("bWFpbDI=", "t2", "news")));
+
+        List<String> tokens = new ArrayList<>();
+        repo.streamTokens(tokens::add);
+
+        assertThat(repo.countTokens()).isEqualTo(2);
+        assertThat(tokens).containsExactlyInAnyOrder("t1", "t2");
+    }
+
+    @Test
+    void deleteSentBefore_deletesOnlyExpiredRows_atMostLimit() {
+        insert("bWFpbDE=", "t1", NOW.minusDays(40));
+        insert("bWFpbDI=", "t2", NOW.minusDays(35));
+        insert("bWFpbDM=", "t3", NOW.minusDays(31));
+        insert("bWFpbDQ=", "t4", NOW.minusDays(1));
+
+        assertThat(repo.deleteSentBefore(NOW.minusDays(30), 2)).isEqualTo(2);
+        assertThat(repo.deleteSentBefore(NOW.minusDays(30), 2)).isEqualTo(1);
+        assertThat(repo.deleteSentBefore(NOW.minusDays(30), 2)).isZero();
+
+        assertThat(jdbc.queryForList("SELECT token FROM USERS_TOKEN", String.class)).containsExactly("t4");
+    }
+
+    @Test
+    void refreshOrCreate_findsLegacyRowWithoutLookupKey_andBackfillFillsIt() {
+        jdbc.update("INSERT INTO USERS_TOKEN (mail_base64, token, date_sent, category, subcategory) "
+                + "VALUES ('bWFpbA==', 'tok-legacy', ?, 'promo', 'bf')", NOW.minusHours(1));
+
+        var row = repo.refreshOrCreate("bWFpbA==", "promo", "bf", "tok-new", NOW, NOW.minusHours(48));
+        assertThat(row.created()).isFalse();
+        assertThat(row.tokenRow().getToken()).isEqualTo("tok-legacy");
+
+        List<UserToken> missing = repo.findWithoutLookupKey(0, 10);
+        assertThat(missing).hasSize(1);
+        repo.updateLookupKeys(missing);
+
+        assertThat(repo.findWithoutLookupKey(0, 10)).isEmpty();
+        assertThat(jdbc.queryForObject("SELECT lookup_key FROM USERS_TOKEN", Long.class))
+                .isEqualTo(LookupKey.of("bWFpbA==", "promo", "bf"));
+
+        lookupKeys.markComplete();
+        row = repo.refreshOrCreate("bWFpbA==", "promo", "bf", "tok-new", NOW, NOW.minusHours(48));
+        assertThat(row.created()).isFalse();
+        assertThat(row.tokenRow().getToken()).isEqualTo("tok-legacy");
+    }
+
+    @Test
+    void insertAll_writesLookupKey() {
+        insert("bWFpbA==", "t1", NOW);
+
+        assertThat(jdbc.queryForObject("SELECT lookup_key FROM USERS_TOKEN", Long.class))
+                .isEqualTo(LookupKey.of("bWFpbA==", "promo", "bf"));
+    }
+
+    @Test
+    void writes_storeTokenBin_forUuidTokens_only() {
+        String uuid = TokenCodec.random(false);
+        insert("bWFpbDE=", uuid, NOW);
+        insert("bWFpbDI=", "k1.signed.token", NOW);
+        repo.refreshOrCreate("bWFpbDM=", "promo", "bf", TokenCodec.random(true), NOW, NOW.minusHours(48));
+
+        List<byte[]> bins = jdbc.queryForList("SELECT token_bin FROM USERS_TOKEN ORDER BY id", byte[].class);
+        assertThat(bins.get(0)).isEqualTo(TokenCodec.toBinary(uuid));
+        assertThat(bins.get(1)).isNull();
+        assertThat(bins.get(2)).hasSize(16);
+    }
+
+    @Test
+    void tokenBinBackfill_fillsLegacyUuidRows_andSkipsOthers() {
+        String uuid = TokenCodec.random(false);
+        jdbc.update("INSERT INTO USERS_TOKEN (mail_base64, token, date_sent, category, subcategory) "
+                + "VALUES ('bWFpbA==', ?, ?, 'promo', 'bf')", uuid, NOW);
+        jdbc.update("INSERT INTO USERS_TOKEN (mail_base64, token, date_sent, category, subcategory) "
+                + "VALUES ('bWFpbA==', 'legacy-token', ?, 'promo', 'bf')", NOW);
+
+        List<UserToken> missing = repo.findWithoutTokenBin(0, 10);
+
+        assertThat(missing).hasSize(2);
+        assertThat(repo.updateTokenBins(missing)).isEqualTo(1);
+        assertThat(repo.findWithoutTokenBin(0, 10)).extracting(UserToken::getToken).containsExactly("legacy-token");
+        assertThat(jdbc.queryForList("SELECT token FROM USERS_TOKEN ORDER BY id", String.class))
+                .containsExactly(null, "legacy-token");
+    }
+
+    @Test
+    void tokenIndexes_areUnique_andLeaveRowsWithoutAValueOut() {
+        jdbc.execute("DROP INDEX IX_USERS_TOKEN_TOKEN");
+        jdbc.execute("DROP INDEX IX_USERS_TOKEN_TOKEN_BIN");
+        TokenIndexes indexes = new TokenIndexes(jdbc, new SqlDialect(jdbc));
+        indexes.ensure();
+        indexes.ensure();
+
+        insert("bWFpbDE=", "k1.signed.a", NOW);
+        insert("bWFpbDI=", "k1.signed.b", NOW);
+        String uuid = TokenCodec.random(false);
+        insert("bWFpbDM=", uuid, NOW);
+        insert("bWFpbDQ=", TokenCodec.random(false), NOW);
+
+        assertThatThrownBy(() -> jdbc.update("INSERT INTO USERS_TOKEN "
+                + "(mail_base64, token, token_bin, date_sent, category, subcategory) "
+                + "VALUES ('bWFpbDQ=', 'other', ?, ?, 'promo', 'bf')", TokenCodec.toBinary(uuid), NOW))
+                .isInstanceOf(DuplicateKeyException.class);
+        assertThatThrownBy(() -> insert("bWFpbDU=", "k1.signed.a", NOW))
+                .isInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    void uuidTokens_areStoredInTokenBinOnly_andReadBackWhole() {
+        String uuid = TokenCodec.random(false);
+        String compact = TokenCodec.random(true);
+        insert("bWFpbA==", uuid, NOW);
+        insert("bWFpbA==", compact, NOW);
+
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM USERS_TOKEN WHERE token IS NULL", Integer.class))
+                .isEqualTo(1);
+        List<String> tokens = new ArrayList<>();
+        repo.streamTokens(tokens::add);
+        assertThat(tokens).contains(uuid, compact);
+        List<String> pairs = new ArrayList<>();
+        repo.streamMailsAndTokens("promo", "bf", (mail, token) -> pairs.add(token));
+        assertThat(pairs).containsExactlyInAnyOrder(uuid, compact);
+    }
+
+    private void insert(String mail, String token, LocalDateTime sent) {
+        repo.insertAll(List.of(token(mail, token, "promo", sent)));
+    }
+
+    private static UserToken token(String mail, String token, String category) {
+        return token(mail, token, category, NOW);
+    }
+
+    private static UserToken token(String mail, String token, String category, LocalDateTime sent) {
+        UserToken t = new UserToken();
+        t.setMailBase64(mail);
+        t.setToken(token);
+        t.setCategory(category);
+        t.setSubcategory("bf");
+        t.setDateSent(sent);
+        return t;
+    }
+
+    private int count() {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM USERS_TOKEN", Integer.class);
+    }
+}
@@ -0,0 +1,116 @@
+package com.seidor.seidor.repository;
+
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.pojo.MailTokenResponse;
+import com.seidor.seidor.pojo.TokenSummaryResponse;
+import com.seidor.seidor.token.TokenCodec;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect")
+class UserTokenRepositoryTest {
+
+    @Autowired
+    private UserTokenRepository repo;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Test
+    void findByToken_usesBinaryForm_forUuidAndCompactTokens() {
+        String uuid = TokenCodec.random(false);
+        String compact = TokenCodec.random(true);
+        repo.saveAndFlush(token(uuid));
+        repo.saveAndFlush(token(compact));
+
+        assertThat(repo.findByTokenBin(TokenCodec.toBinary(uuid), uuid)).isPresent();
+        assertThat(repo.findByToken(uuid)).get().extracting(UserToken::getToken).isEqualTo(uuid);
+        assertThat(repo.findByToken(compact)).get().extracting(UserToken::getToken).isEqualTo(compact);
+    }
+
+    @Test
+    void findByToken_resolvesLegacyRowsWithoutBinaryForm() {
+        String uuid = TokenCodec.random(false);
+        jdbc.update("INSERT INTO USERS_TOKEN (mail_base64, token, date_sent, category, subcategory) "
+                + "VALUES ('bWFpbA==', ?, ?, 'promo', 'bf')", uuid, LocalDateTime.now());
+
+        assertThat(repo.findByTokenBin(TokenCodec.toBinary(uuid), uuid)).isEmpty();
+        assertThat(repo.findByToken(uuid)).isPresent();
+        assertThat(repo.findByToken("no-such-token")).isEmpty();
+    }
+
+    @Test
+    void findByBackfilledToken_looksForBinaryFormsInTokenBinOnly() {
+        String legacy = TokenCodec.random(false);
+        jdbc.update("INSERT INTO USERS_TOKEN (mail_base64, token, date_sent, category, subcategory) "
+                + "VALUES ('bWFpbA==', ?, ?, 'promo', 'bf')", legacy, LocalDateTime.now());
+        String uuid = TokenCodec.random(false);
+        repo.saveAndFlush(token(uuid));
+        repo.saveAndFlush(token("k1.signed.token"));
+
+        assertThat(repo.findByBackfilledToken(uuid)).isPresent();
+        assertThat(repo.findByBackfilledToken("k1.signed.token")).isPresent();
+        assertThat(repo.findByBackfilledToken(legacy)).isEmpty();
+
+        assertThat(repo.deleteByBackfilledToken(uuid)).isEqualTo(1);
+        assertThat(repo.deleteByBackfilledToken("k1.signed.token")).isEqualTo(1);
+        assertThat(repo.deleteByBackfilledToken(legacy)).isZero();
+    }
+
+    @Test
+    void deleteByToken_deletesBinaryAndLegacyRows() {
+        String uuid = TokenCodec.random(false);
+        repo.saveAndFlush(token(uuid));
+        repo.saveAndFlush(token("k1.signed.token"));
+
+        assertThat(repo.deleteByToken(uuid)).isEqualTo(1);
+        assertThat(repo.deleteByToken("k1.signed.token")).isEqualTo(1);
+        assertThat(repo.deleteByToken(uuid)).isZero();
+        assertThat(repo.count()).isZero();
+    }
+
+    @Test
+    void findSummaries_readsOnlyResponseColumns_includingRowsWithoutLookupKey() {
+        LocalDateTime sent = LocalDateTime.of(2025, 11, 1, 12, 0);
+        UserToken t = token("tok-1");
+        t.setDateSent(sent);
+        repo.saveAndFlush(t);
+        jdbc.update("INSERT INTO USERS_TOKEN (mail_base64, token, date_sent, category, subcategory) "
+                + "VALUES ('bWFpbA==', 'tok-legacy', ?, 'promo', 'bf')", sent);
+        UserToken other = token("tok-other");
+        other.setCategory("news");
+        repo.saveAndFlush(other);
+
+        assertThat(repo.findSummariesByMailBase64AndCategoryAndSubcategory("bWFpbA==", "promo", "bf"))
+                .extracting(TokenSummaryResponse::token)
+                .containsExactlyInAnyOrder("tok-1", "tok-legacy");
+        assertThat(repo.findSummariesByMailBase64AndCategoryAndSubcategory("bWFpbA==", "promo", "bf"))
+                .allSatisfy(r -> assertThat(r.dateSent()).isEqualTo(sent));
+    }
+
+    @Test
+    void findMailsAndTokens_returnsPairsOfTheSegment() {
+        repo.saveAndFlush(token("tok-1"));
+        UserToken other = token("tok-2");
+        other.setSubcategory("daily");
+        repo.saveAndFlush(other);
+
+        assertThat(repo.findMailsAndTokensByCategoryAndSubcategory("promo", "bf"))
+                .containsExactly(new MailTokenResponse("bWFpbA==", "tok-1"));
+    }
+
+    private static UserToken token(String value) {
+        UserToken t = new UserToken();
+        t.setMailBase64("bWFpbA==");
+        t.setToken(value);
+        t.setCategory("promo");
+        t.setSubcategory("bf");
+        return t;
+    }
+}
@@ -0,0 +1,54 @@
+package com.seidor.seidor.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MailNormalizerTest {
+
+    private final MailNormalizer normalizer = new MailNormalizer(0);
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "test@test.com", "  test@test.com  ", "a", "ab", "abc", "abcd", "",
+            "dGVzdEB0ZXN0LmNvbQ==", "  dGVzdEB0ZXN0LmNvbQ==\t", "short+base64",
+            "has space inside x", "Ab-_+/=0123456789", "josé@ejemplo.es", "ñandú_unicode_mail_1234",
+            "mail@dominio.com ", "\u0000x"
+    })
+    void normalize_matchesPreviousRegexImplementation(String input) {
+        assertThat(normalizer.normalize(input)).isEqualTo(legacy(input));
+    }
+
+    @Test
+    void normalize_null_returnsNull() {
+        assertThat(normalizer.normalize(null)).isNull();
+    }
+
+    @Test
+    void normalize_canonicalInput_returnsSameInstance() {
+        String canonical = "dGVzdEB0ZXN0LmNvbQ==";
+        assertThat(normalizer.normalize(canonical)).isSameAs(canonical);
+    }
+
+    @Test
+    void cache_returnsSameEncodingInstance_forRepeatedInput() {
+        MailNormalizer cached = new MailNormalizer(64);
+
+        String first = cached.normalize("test@test.com");
+        String second = cached.normalize(new String("test@test.com"));
+
+        assertThat(first).isEqualTo(legacy("test@test.com"));
+        assertThat(second).isSameAs(first);
+    }
+
+    private static String legacy(String mailBase64OrPlain) {
+        String s = mailBase64OrPlain.trim();
+        if (!s.contains("@") && s.length() >= 16 && s.matches("^[A-Za-z0-9+/_=\\-]+$")) return s;
+        return Base64.getEncoder().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
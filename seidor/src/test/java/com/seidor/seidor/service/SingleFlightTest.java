@@ -0,0 +1,97 @@
+package com.seidor.seidor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private final AtomicInteger shared = new AtomicInteger();
+    private final SingleFlight<String, Integer> flight = new SingleFlight<>(s -> {
+        if (s) shared.incrementAndGet();
+    });
+
+    @Test
+    void sequentialCalls_eachRunTheWork() {
+        AtomicInteger runs = new AtomicInteger();
+
+        assertThat(flight.run("k", runs::incrementAndGet)).isEqualTo(1);
+        assertThat(flight.run("k", runs::incrementAndGet)).isEqualTo(2);
+        assertThat(flight.inFlight()).isZero();
+        assertThat(shared).hasValue(0);
+    }
+
+    @Test
+    void followers_shareTheLeadersException_andTheKeyIsForgotten() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<Integer>> calls = new ArrayList<>();
+            calls.add(pool.submit(() -> flight.run("k", () -> {
+                entered.countDown();
+                await(release);
+                throw new IllegalStateException("boom");
+            })));
+            assertThat(entered.await(2, TimeUnit.SECONDS)).isTrue();
+            calls.add(pool.submit(() -> flight.run("k", () -> 42)));
+            calls.add(pool.submit(() -> flight.run("k", () -> 42)));
+            while (shared.get() < 2) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (Future<Integer> call : calls) {
+                assertThatThrownBy(() -> call.get(2, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(flight.inFlight()).isZero();
+        assertThat(flight.run("k", () -> 7)).isEqualTo(7);
+    }
+
+    @Test
+    void differentKeys_runIndependently() throws Exception {
+        CountDownLatch bothIn = new CountDownLatch(2);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> a = pool.submit(() -> flight.run("a", () -> {
+                bothIn.countDown();
+                await(bothIn);
+                return 1;
+            }));
+            Future<Integer> b = pool.submit(() -> flight.run("b", () -> {
+                bothIn.countDown();
+                await(bothIn);
+                return 2;
+            }));
+
+            assertThat(a.get(2, TimeUnit.SECONDS)).isEqualTo(1);
+            assertThat(b.get(2, TimeUnit.SECONDS)).isEqualTo(2);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(shared).hasValue(0);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(2, TimeUnit.SECONDS)) throw new IllegalStateException("timed out");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.seidor.seidor.service;
+
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.repository.LookupKeyBackfillState;
+import com.seidor.seidor.repository.SqlDialect;
+import com.seidor.seidor.repository.TokenBinBackfillState;
+import com.seidor.seidor.repository.UserTokenJdbcRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class TokenWriteBufferTest {
+
+    private EmbeddedDatabase db;
+    private JdbcTemplate jdbc;
+    private UserTokenJdbcRepository repo;
+    private SimpleMeterRegistry registry;
+    private TokenWriteBuffer buffer;
+
+    @BeforeEach
+    void setup() {
+        db = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema/users_token.sql")
+                .build();
+        jdbc = new JdbcTemplate(db);
+        repo = new UserTokenJdbcRepository(jdbc, new SqlDialect(jdbc), 100,
+                new LookupKeyBackfillState(false), new TokenBinBackfillState(false));
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (buffer != null) buffer.stop();
+        db.shutdown();
+    }
+
+    @Test
+    void concurrentSubmits_areInsertedInBatches_withTheirIds() throws Exception {
+        buffer = start(repo, 1000, 20, Duration.ofMillis(50));
+        ExecutorService callers = Executors.newFixedThreadPool(10);
+        List<CompletableFuture<UserToken>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 60; i++) {
+                UserToken row = row("t" + i);
+                futures.add(CompletableFuture.supplyAsync(() -> buffer.submit(row), callers).thenCompose(f -> f));
+            }
+            for (CompletableFuture<UserToken> f : futures) {
+                UserToken saved = f.get(5, TimeUnit.SECONDS);
+                assertThat(jdbc.queryForObject("SELECT token FROM USERS_TOKEN WHERE id = ?", String.class,
+                        saved.getId())).isEqualTo(saved.getToken());
+            }
+        } finally {
+            callers.shutdown();
+        }
+
+        var batches = registry.get("tokens.write-behind.batch.size").summary();
+        assertThat(batches.totalAmount()).isEqualTo(60);
+        assertThat(batches.count()).isLessThan(60);
+        assertThat(batches.max()).isLessThanOrEqualTo(20);
+    }
+
+    @Test
+    void loneRow_isFlushedAfterMaxDelay() throws Exception {
+        buffer = start(repo, 1000, 100, Duration.ofMillis(5));
+
+        UserToken saved = buffer.submit(row("alone")).get(2, TimeUnit.SECONDS);
+
+        assertThat(saved.getId()).isNotNull();
+    }
+
+    @Test
+    void fullQueue_rejectsInsteadOfBlocking() throws Exception {
+        CountDownLatch inInsert = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        UserTokenJdbcRepository slow = mock(UserTokenJdbcRepository.class);
+        doAnswer(inv -> {
+            inInsert.countDown();
+            release.await();
+            return null;
+        }).when(slow).insertAllReturningIds(anyList());
+        buffer = start(slow, 1, 1, Duration.ZERO);
+
+        CompletableFuture<UserToken> first = buffer.submit(row("a"));
+        assertThat(inInsert.await(2, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<UserToken> queued = buffer.submit(row("b"));
+
+        assertThatThrownBy(() -> buffer.submit(row("c"))).isInstanceOf(RejectedExecutionException.class);
+        assertThat(registry.get("tokens.write-behind.rejected").counter().count()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(first.get(2, TimeUnit.SECONDS).getToken()).isEqualTo("a");
+        assertThat(queued.get(2, TimeUnit.SECONDS).getToken()).isEqualTo("b");
+    }
+
+    @Test
+    void stop_flushesQueuedRows_thenRejects() throws Exception {
+        buffer = start(repo, 1000, 1000, Duration.ofSeconds(30));
+        List<CompletableFuture<UserToken>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(buffer.submit(row("t" + i)));
+        }
+
+        buffer.stop();
+
+        for (CompletableFuture<UserToken> f : futures) {
+            assertThat(f.getNow(null)).isNotNull();
+        }
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM USERS_TOKEN", Integer.class)).isEqualTo(5);
+        assertThatThrownBy(() -> buffer.submit(row("late"))).isInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    void failedBatch_failsItsCallers() {
+        jdbc.update("INSERT INTO USERS_TOKEN (mail_base64, token, date_sent, category, subcategory) "
+                + "VALUES ('bWFpbA==', 'taken', CURRENT_TIMESTAMP, 'promo', 'bf')");
+        buffer = start(repo, 1000, 10, Duration.ZERO);
+
+        CompletableFuture<UserToken> f = buffer.submit(row("taken"));
+
+        assertThatThrownBy(() -> f.get(2, TimeUnit.SECONDS)).hasCauseInstanceOf(RuntimeException.class);
+    }
+
+    private TokenWriteBuffer start(UserTokenJdbcRepository target, int capacity, int batchSize, Duration maxDelay) {
+        TokenWriteBuffer b = new TokenWriteBuffer(target, registry, true, capacity, batchSize, maxDelay);
+        b.start();
+        return b;
+    }
+
+    private static UserToken row(String token) {
+        UserToken t = new UserToken();
+        t.setMailBase64("bWFpbA==");
+        t.setToken(token);
+        t.setCategory("promo");
+        t.setSubcategory("bf");
+        t.setDateSent(LocalDateTime.of(2025, 11, 10, 12, 0));
+        return t;
+    }
+}
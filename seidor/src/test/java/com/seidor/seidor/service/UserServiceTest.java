@@ -1,29 +1,44 @@
 package com.seidor.seidor.service;
 
+import com.seidor.seidor.cache.SubscriptionCache;
 import com.seidor.seidor.model.User;
+import com.seidor.seidor.pojo.MailSegmentKey;
+import com.seidor.seidor.pojo.SubscriptionResponse;
 import com.seidor.seidor.pojo.UserRequest;
+import com.seidor.seidor.repository.UserJdbcRepository;
 import com.seidor.seidor.repository.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
 class UserServiceTest {
 
     private UserRepository repo;
+    private UserJdbcRepository jdbcRepo;
+    private SubscriptionCache cache;
     private UserService service;
 
     @BeforeEach
     void setup() {
         repo = mock(UserRepository.class);
-        service = new UserService(repo);
+        jdbcRepo = mock(UserJdbcRepository.class);
+        cache = mock(SubscriptionCache.class);
+        service = new UserService(repo, jdbcRepo, new MailNormalizer(0), cache);
     }
 
     @Test
@@ -33,27 +48,23 @@ class UserServiceTest {
         req.setCategory("promos");
         req.setSubcategory("black-friday");
 
-        when(repo.findByMailBase64AndCategoryAndSubcategory(anyString(), anyString(), anyString()))
-                .thenReturn(List.of());
+        String expectedB64 = Base64.getEncoder()
+                .encodeToString("test@test.com".getBytes());
 
-        when(repo.save(any(User.class))).thenAnswer(invocation -> {
-            User u = invocation.getArgument(0);
-            u.setId(10L);
-            u.setDateSubscribed(LocalDateTime.now());
-            return u;
-        });
+        when(jdbcRepo.insertIfAbsent(eq(expectedB64), eq("promos"), eq("black-friday"), any()))
+                .thenReturn(Optional.of(10L));
 
         User result = service.subscribe(req);
 
         assertThat(result.getId()).isEqualTo(10L);
         assertThat(result.getCategory()).isEqualTo("promos");
         assertThat(result.getSubcategory()).isEqualTo("black-friday");
-
-        String expectedB64 = Base64.getEncoder()
-                .encodeToString("test@test.com".getBytes());
         assertThat(result.getMailBase64()).isEqualTo(expectedB64);
+        assertThat(result.getDateSubscribed()).isNotNull();
 
-        verify(repo, times(1)).save(any(User.class));
+        verify(repo, never()).findByMailBase64AndCategoryAndSubcategory(anyString(), anyString(), anyString(), anyBoolean());
+        verify(repo, never()).save(any(User.class));
+        verify(cache, times(1)).evictSegments();
     }
 
     @Test
@@ -65,15 +76,8 @@ class UserServiceTest {
         req.setCategory("alerts");
         req.setSubcategory("security");
 
-        when(repo.findByMailBase64AndCategoryAndSubcategory(anyString(), anyString(), anyString()))
-                .thenReturn(List.of());
-
-        when(repo.save(any(User.class))).thenAnswer(invocation -> {
-            User u = invocation.getArgument(0);
-            u.setId(777L);
-            u.setDateSubscribed(LocalDateTime.now());
-            return u;
-        });
+        when(jdbcRepo.insertIfAbsent(anyString(), anyString(), anyString(), any()))
+                .thenReturn(Optional.of(777L));
 
         User result = service.subscribe(req);
 
@@ -84,33 +88,26 @@ class UserServiceTest {
 
         ArgumentCaptor<String> mailCaptured = ArgumentCaptor.forClass(String.class);
 
-        verify(repo, times(1))
-                .findByMailBase64AndCategoryAndSubcategory(
+        verify(jdbcRepo, times(1))
+                .insertIfAbsent(
                         mailCaptured.capture(),
                         eq("alerts"),
-                        eq("security")
+                        eq("security"),
+                        any()
                 );
 
         assertThat(mailCaptured.getValue()).isEqualTo(alreadyB64);
-        verify(repo, times(1)).save(any(User.class));
     }
 
     @Test
-    void subscribe_handlesNullMailWithoutExploding_andSavesNull() {
+    void subscribe_handlesNullMailWithoutExploding() {
         UserRequest req = new UserRequest();
         req.setMailBase64(null);
         req.setCategory("promo");
         req.setSubcategory("vip");
 
-        when(repo.findByMailBase64AndCategoryAndSubcategory(any(), anyString(), anyString()))
-                .thenReturn(List.of());
-
-        when(repo.save(any(User.class))).thenAnswer(invocation -> {
-            User u = invocation.getArgument(0);
-            u.setId(55L);
-            u.setDateSubscribed(LocalDateTime.now());
-            return u;
-        });
+        when(jdbcRepo.insertIfAbsent(isNull(), anyString(), anyString(), any()))
+                .thenReturn(Optional.of(55L));
 
         User result = service.subscribe(req);
 
@@ -118,8 +115,41 @@ class UserServiceTest {
         assertThat(result.getMailBase64()).isNull();
         assertThat(result.getCategory()).isEqualTo("promo");
         assertThat(result.getSubcategory()).isEqualTo("vip");
+    }
 
-        verify(repo, times(1)).save(any(User.class));
+    @Test
+    void subscribe_insertsAgain_ifCollidingRowVanished() {
+        UserRequest req = new UserRequest();
+        req.setMailBase64("test@test.com");
+        req.setCategory("promos");
+        req.setSubcategory("black-friday");
+
+        when(jdbcRepo.insertIfAbsent(anyString(), anyString(), anyString(), any()))
+                .thenReturn(Optional.empty(), Optional.of(12L));
+        when(repo.findByMailBase64AndCategoryAndSubcategory(anyString(), anyString(), anyString(), anyBoolean()))
+                .thenReturn(List.of());
+
+        User result = service.subscribe(req);
+
+        assertThat(result.getId()).isEqualTo(12L);
+        verify(repo, never()).save(any(User.class));
+    }
+
+    @Test
+    void subscribe_conflicts_ifTheTripleKeepsVanishing() {
+        UserRequest req = new UserRequest();
+        req.setMailBase64("test@test.com");
+        req.setCategory("promos");
+        req.setSubcategory("black-friday");
+
+        when(jdbcRepo.insertIfAbsent(anyString(), anyString(), anyString(), any())).thenReturn(Optional.empty());
+        when(repo.findByMailBase64AndCategoryAndSubcategory(anyString(), anyString(), anyString(), anyBoolean()))
+                .thenReturn(List.of());
+
+        assertThatThrownBy(() -> service.subscribe(req))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT));
+        verify(repo, never()).save(any(User.class));
     }
 
     @Test
@@ -136,7 +166,7 @@ class UserServiceTest {
         existing.setSubcategory("black-friday");
         existing.setDateSubscribed(LocalDateTime.now().minusDays(1));
 
-        when(repo.findByMailBase64AndCategoryAndSubcategory(anyString(), anyString(), anyString()))
+        when(repo.findByMailBase64AndCategoryAndSubcategory(anyString(), anyString(), anyString(), anyBoolean()))
                 .thenReturn(List.of(existing));
 
         User result = service.subscribe(req);
@@ -149,38 +179,40 @@ class UserServiceTest {
     }
 
     @Test
-    void findAll_delegatesToRepo() {
-        User u1 = new User();
-        u1.setId(1L);
-        User u2 = new User();
-        u2.setId(2L);
+    void findPage_delegatesToRepo_withKeysetCursor() {
+        var u1 = new SubscriptionResponse(11L, "bWFpbDE=", "promos", "bf", null);
+        var u2 = new SubscriptionResponse(12L, "bWFpbDI=", "promos", "bf", null);
 
-        when(repo.findAll()).thenReturn(List.of(u1, u2));
+        when(repo.findPageAfter(10L, Limit.of(2))).thenReturn(List.of(u1, u2));
 
-        List<User> all = service.findAll();
+        List<SubscriptionResponse> page = service.findPage(10L, 2);
 
-        assertThat(all).hasSize(2);
-        assertThat(all.get(0).getId()).isEqualTo(1L);
-        assertThat(all.get(1).getId()).isEqualTo(2L);
+        assertThat(page).hasSize(2);
+        assertThat(page.get(0).id()).isEqualTo(11L);
+        assertThat(page.get(1).id()).isEqualTo(12L);
 
-        verify(repo, times(1)).findAll();
+        verify(repo, times(1)).findPageAfter(10L, Limit.of(2));
     }
 
     @Test
-    void findByCategoryAndSubcategory_delegatesToRepo() {
-        User u1 = new User();
-        u1.setId(1L);
-        User u2 = new User();
-        u2.setId(2L);
+    void findPage_startsFromZero_andClampsLimit() {
+        when(repo.findPageAfter(anyLong(), any(Limit.class))).thenReturn(List.of());
+
+        service.findPage(null, 1_000_000);
 
-        when(repo.findByCategoryAndSubcategory("promos", "black-friday"))
-                .thenReturn(List.of(u1, u2));
+        verify(repo).findPageAfter(0L, Limit.of(UserService.MAX_PAGE_SIZE));
+    }
+
+    @Test
+    void findMailsByCategoryAndSubcategory_delegatesToRepo() {
+        when(repo.findMailsByCategoryAndSubcategory("promos", "black-friday"))
+                .thenReturn(List.of("bWFpbDE=", "bWFpbDI="));
 
-        List<User> list = service.findByCategoryAndSubcategory("promos", "black-friday");
+        List<String> list = service.findMailsByCategoryAndSubcategory("promos", "black-friday");
 
-        assertThat(list).hasSize(2);
+        assertThat(list).containsExactly("bWFpbDE=", "bWFpbDI=");
         verify(repo, times(1))
-                .findByCategoryAndSubcategory("promos", "black-friday");
+                .findMailsByCategoryAndSubcategory("promos", "black-friday");
     }
 
     @Test
@@ -194,6 +226,7 @@ class UserServiceTest {
 
         assertThat(deleted).isTrue();
         verify(repo, times(1)).deleteById(42L);
+        verify(cache, times(1)).evict(42L);
     }
 
     @Test
@@ -204,5 +237,91 @@ class UserServiceTest {
 
         assertThat(deleted).isFalse();
         verify(repo, never()).deleteById(anyLong());
+        verifyNoInteractions(cache);
+    }
+
+    @Test
+    void streamMailsBySegment_delegatesToJdbcRepo() {
+        java.util.function.Consumer<String> sink = m -> { };
+
+        service.streamMailsBySegment("promos", "black-friday", sink);
+
+        verify(jdbcRepo, times(1)).streamMailsBySegment("promos", "black-friday", sink);
+        verifyNoInteractions(repo);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void subscribeAll_dedupes_skipsExisting_andBatchInsertsTheRest() {
+        String b64 = Base64.getEncoder().encodeToString("a@test.com".getBytes());
+
+        when(jdbcRepo.findExistingMails(eq("promos"), eq("bf"), anyList())).thenReturn(Set.of(b64));
+        when(jdbcRepo.insertAll(anyList(), any())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+
+        UserService.BulkResult result = service.subscribeAll(List.of(
+                request("a@test.com", "promos", "bf"),
+                request(b64, "promos", "bf"),
+                request("b@test.com", "promos", "bf"),
+                request("b@test.com", "promos", "bf"),
+                request("", "promos", "bf")
+        ).iterator());
+
+        assertThat(result.received).isEqualTo(5);
+        assertThat(result.rejected).isEqualTo(1);
+        assertThat(result.existing).isEqualTo(1);
+        assertThat(result.created).isEqualTo(1);
+
+        ArgumentCaptor<List<MailSegmentKey>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(jdbcRepo, times(1)).insertAll(inserted.capture(), any());
+        verify(cache, times(1)).evictSegments();
+        assertThat(inserted.getValue()).containsExactly(new MailSegmentKey(
+                Base64.getEncoder().encodeToString("b@test.com".getBytes()), "promos", "bf"));
+        verify(repo, never()).save(any(User.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void subscribeAll_chunksLookups_andInsertBatches() {
+        List<UserRequest> reqs = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            reqs.add(request("user" + i + "@test.com", "news", "daily"));
+        }
+        reqs.add(request("x@test.com", "news", "weekly"));
+
+        when(jdbcRepo.findExistingMails(anyString(), anyString(), anyList())).thenReturn(Set.of());
+        when(jdbcRepo.insertAll(anyList(), any())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+
+        UserService.BulkResult result = service.subscribeAll(reqs.iterator());
+
+        assertThat(result.created).isEqualTo(2501);
+        assertThat(result.existing).isZero();
+        verify(jdbcRepo, times(5)).findExistingMails(eq("news"), eq("daily"), anyList());
+        verify(jdbcRepo, times(1)).findExistingMails(eq("news"), eq("weekly"), anyList());
+        verify(jdbcRepo, times(3)).insertAll(anyList(), any());
+    }
+
+    @Test
+    void subscribeAll_batchRolledBackByARace_retriesRowByRow_andCountsWhatItWrote() {
+        when(jdbcRepo.findExistingMails(anyString(), anyString(), anyList())).thenReturn(Set.of());
+        when(jdbcRepo.insertAll(anyList(), any())).thenThrow(new DuplicateKeyException("raced"));
+        when(jdbcRepo.insertIfAbsent(anyString(), anyString(), anyString(), any()))
+                .thenReturn(Optional.of(1L), Optional.empty(), Optional.of(3L));
+
+        UserService.BulkResult result = service.subscribeAll(List.of(
+                request("a@test.com", "news", "daily"),
+                request("b@test.com", "news", "daily"),
+                request("c@test.com", "news", "daily")).iterator());
+
+        assertThat(result.created).isEqualTo(2);
+        assertThat(result.existing).isEqualTo(1);
+        verify(jdbcRepo, times(3)).insertIfAbsent(anyString(), eq("news"), eq("daily"), any());
+    }
+
+    private static UserRequest request(String mail, String category, String subcategory) {
+        UserRequest req = new UserRequest();
+        req.setMailBase64(mail);
+        req.setCategory(category);
+        req.setSubcategory(subcategory);
+        return req;
     }
 }
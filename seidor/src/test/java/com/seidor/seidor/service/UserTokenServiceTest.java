@@ -1,29 +1,105 @@
 package com.seidor.seidor.service;
 
+import com.seidor.seidor.cache.TokenBloomFilter;
+import com.seidor.seidor.cache.TokenLookupCache;
 import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.pojo.MailTokenResponse;
 import com.seidor.seidor.pojo.TokenRequest;
+import com.seidor.seidor.repository.UserJdbcRepository;
+import com.seidor.seidor.repository.UserTokenJdbcRepository;
 import com.seidor.seidor.repository.UserTokenRepository;
+import com.seidor.seidor.store.JpaTokenStore;
+import com.seidor.seidor.token.TokenSigner;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
 class UserTokenServiceTest {
 
     private UserTokenRepository repo;
+    private UserTokenJdbcRepository jdbcRepo;
+    private UserJdbcRepository subscriptions;
+    private TokenLookupCache cache;
+    private TokenWriteBuffer writes;
+    private TokenBloomFilter known;
+    private SimpleMeterRegistry registry;
     private UserTokenService service;
 
     @BeforeEach
     void setup() {
         repo = mock(UserTokenRepository.class);
-        service = new UserTokenService(repo);
+        jdbcRepo = mock(UserTokenJdbcRepository.class);
+        subscriptions = mock(UserJdbcRepository.class);
+        cache = new TokenLookupCache(100, Duration.ofMinutes(5), new SimpleMeterRegistry());
+        writes = mock(TokenWriteBuffer.class);
+        registry = new SimpleMeterRegistry();
+        known = new TokenBloomFilter(true, 1000, 0.01, registry);
+        service = new UserTokenService(new JpaTokenStore(repo, jdbcRepo, writes), subscriptions, cache,
+                new TokenSigner(false, "", "", Duration.ofDays(30), false, false), new MailNormalizer(0),
+                known, registry);
+    }
+
+    private static final String KEYS = "k1:" + Base64.getEncoder().encodeToString(new byte[32]);
+
+    private UserTokenService signingService(boolean checkRevocation) {
+        return new UserTokenService(new JpaTokenStore(repo, jdbcRepo, writes), subscriptions, cache,
+                new TokenSigner(true, "k1", KEYS, Duration.ofDays(30), checkRevocation, false), new MailNormalizer(0),
+                known, registry);
+    }
+
+    @Test
+    void findByToken_signedToken_isDecodedWithoutRepoCall() {
+        UserTokenService signing = signingService(false);
+        when(repo.save(any(UserToken.class))).thenAnswer(inv -> inv.getArgument(0));
+        TokenRequest req = new TokenRequest();
+        req.setMailBase64("test@test.com");
+        req.setCategory("promo");
+        req.setSubcategory("bf");
+
+        UserToken saved = signing.create(req);
+        Optional<UserToken> found = signing.findByToken(saved.getToken());
+
+        assertThat(found).isPresent();
+        assertThat(found.get().getMailBase64()).isEqualTo(saved.getMailBase64());
+        assertThat(found.get().getCategory()).isEqualTo("promo");
+        assertThat(found.get().getDateSent()).isEqualTo(saved.getDateSent());
+        verify(repo, never()).findByToken(anyString());
+    }
+
+    @Test
+    void findByToken_signedToken_withRevocationCheck_requiresRow() {
+        UserTokenService signing = signingService(true);
+        when(repo.save(any(UserToken.class))).thenAnswer(inv -> inv.getArgument(0));
+        TokenRequest req = new TokenRequest();
+        req.setMailBase64("test@test.com");
+        req.setCategory("promo");
+        req.setSubcategory("bf");
+        String token = signing.create(req).getToken();
+        when(repo.findByToken(token)).thenReturn(Optional.empty());
+
+        assertThat(signing.findByToken(token)).isEmpty();
+        verify(repo).findByToken(token);
     }
 
     @Test
@@ -54,6 +130,63 @@ class UserTokenServiceTest {
         verify(repo, times(1)).save(any(UserToken.class));
     }
 
+    @Test
+    void create_withWriteBuffer_returnsRowOnceItsBatchCommits() {
+        when(writes.isEnabled()).thenReturn(true);
+        when(writes.submit(any(UserToken.class))).thenAnswer(inv -> {
+            UserToken t = inv.getArgument(0);
+            t.setId(77L);
+            return CompletableFuture.completedFuture(t);
+        });
+        TokenRequest req = new TokenRequest();
+        req.setMailBase64("test@test.com");
+        req.setCategory("promo");
+        req.setSubcategory("bf");
+
+        UserToken saved = service.create(req);
+
+        assertThat(saved.getId()).isEqualTo(77L);
+        assertThat(saved.getToken()).isNotNull();
+        assertThat(saved.getDateSent()).isNotNull();
+        verify(repo, never()).save(any());
+    }
+
+    @Test
+    void create_withWriteBuffer_rethrowsBatchFailureAndRejection() {
+        when(writes.isEnabled()).thenReturn(true);
+        var failure = new DataIntegrityViolationException("duplicate token");
+        when(writes.submit(any(UserToken.class)))
+                .thenReturn(CompletableFuture.failedFuture(failure))
+                .thenThrow(new RejectedExecutionException("full"));
+        TokenRequest req = new TokenRequest();
+        req.setCategory("promo");
+        req.setSubcategory("bf");
+
+        assertThatThrownBy(() -> service.create(req)).isSameAs(failure);
+        assertThatThrownBy(() -> service.create(req)).isInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    void tokenFilter_answersUnknownTokensWithoutRepository_butKnowsNewOnes() {
+        known.beginRebuild(0).publish();
+        when(repo.save(any(UserToken.class))).thenAnswer(inv -> inv.getArgument(0));
+        TokenRequest req = new TokenRequest();
+        req.setMailBase64("test@test.com");
+        req.setCategory("promo");
+        req.setSubcategory("bf");
+        UserToken created = service.create(req);
+        when(repo.findByToken(created.getToken())).thenReturn(Optional.of(created));
+        when(repo.deleteByToken(created.getToken())).thenReturn(1L);
+
+        assertThat(service.findByToken("never-issued")).isEmpty();
+        assertThat(service.deleteByToken("never-issued")).isFalse();
+        assertThat(service.findByToken(created.getToken())).containsSame(created);
+        assertThat(service.deleteByToken(created.getToken())).isTrue();
+
+        verify(repo, never()).findByToken("never-issued");
+        verify(repo, never()).deleteByToken("never-issued");
+    }
+
     @Test
     void create_allowsNullMail_andStillSaves() {
         TokenRequest req = new TokenRequest();
@@ -81,7 +214,7 @@ class UserTokenServiceTest {
 
     @Test
     void findByMailCategorySubcategory_encodesPlainEmailToBase64() {
-        when(repo.findByMailBase64AndCategoryAndSubcategory(anyString(), anyString(), anyString()))
+        when(repo.findSummariesByMailBase64AndCategoryAndSubcategory(anyString(), anyString(), anyString(), anyBoolean()))
                 .thenReturn(List.of());
 
         var result = service.findByMailCategorySubcategory("test@test.com", "promo", "bf");
@@ -90,10 +223,11 @@ class UserTokenServiceTest {
 
         ArgumentCaptor<String> mailCaptor = ArgumentCaptor.forClass(String.class);
 
-        verify(repo).findByMailBase64AndCategoryAndSubcategory(
+        verify(repo).findSummariesByMailBase64AndCategoryAndSubcategory(
                 mailCaptor.capture(),
                 eq("promo"),
-                eq("bf")
+                eq("bf"),
+                eq(false)
         );
 
         String expectedB64 = Base64.getEncoder().encodeToString("test@test.com".getBytes());
@@ -104,7 +238,7 @@ class UserTokenServiceTest {
     void findByMailCategorySubcategory_ifAlreadyB64_usesItDirectly() {
         String alreadyB64 = "dGVzdEB0ZXN0LmNvbQ==";
 
-        when(repo.findByMailBase64AndCategoryAndSubcategory(anyString(), anyString(), anyString()))
+        when(repo.findSummariesByMailBase64AndCategoryAndSubcategory(anyString(), anyString(), anyString(), anyBoolean()))
                 .thenReturn(List.of());
 
         var result = service.findByMailCategorySubcategory(alreadyB64, "x", "y");
@@ -112,10 +246,11 @@ class UserTokenServiceTest {
 
         ArgumentCaptor<String> mailCaptor = ArgumentCaptor.forClass(String.class);
 
-        verify(repo).findByMailBase64AndCategoryAndSubcategory(
+        verify(repo).findSummariesByMailBase64AndCategoryAndSubcategory(
                 mailCaptor.capture(),
                 eq("x"),
-                eq("y")
+                eq("y"),
+                eq(false)
         );
 
         assertThat(mailCaptor.getValue()).isEqualTo(alreadyB64);
@@ -127,16 +262,17 @@ class UserTokenServiceTest {
         String category = "promo";
         String subcat = "bf";
 
-        when(repo.findTopByMailBase64AndCategoryAndSubcategoryOrderByDateSentDesc(
-                anyString(), anyString(), anyString()
-        )).thenReturn(Optional.empty());
-
-        when(repo.save(any(UserToken.class))).thenAnswer(invocation -> {
-            UserToken tok = invocation.getArgument(0);
-            tok.setId(321L);
-            tok.setDateSent(LocalDateTime.now());
-            return tok;
-        });
+        when(jdbcRepo.refreshOrCreate(anyString(), anyString(), anyString(), anyString(), any(), any()))
+                .thenAnswer(inv -> {
+                    UserToken tok = new UserToken();
+                    tok.setId(321L);
+                    tok.setMailBase64(inv.getArgument(0));
+                    tok.setCategory(inv.getArgument(1));
+                    tok.setSubcategory(inv.getArgument(2));
+                    tok.setToken(inv.getArgument(3));
+                    tok.setDateSent(inv.getArgument(4));
+                    return new UserTokenJdbcRepository.RefreshRow(tok, true, true, null);
+                });
 
         UserTokenService.RefreshResult result = service.refreshOrCreate(mail, category, subcat);
 
@@ -146,61 +282,85 @@ class UserTokenServiceTest {
         assertThat(result.tokenRow.getCategory()).isEqualTo("promo");
         assertThat(result.tokenRow.getSubcategory()).isEqualTo("bf");
         assertThat(result.tokenRow.getToken()).isNotNull();
+        assertThat(result.tokenRow.getMailBase64())
+                .isEqualTo(Base64.getEncoder().encodeToString(mail.getBytes()));
     }
 
     @Test
-    void refreshOrCreate_existingRecentToken_keepsIt() {
-        String category = "promo";
-        String subcat = "bf";
+    void refreshOrCreate_concurrentCallsForSameTriple_shareOneRepositoryCall() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        UserToken tok = new UserToken();
+        tok.setId(5L);
+        tok.setToken("shared-token");
+        when(jdbcRepo.refreshOrCreate(anyString(), anyString(), anyString(), anyString(), any(), any()))
+                .thenAnswer(inv -> {
+                    entered.countDown();
+                    release.await();
+                    return new UserTokenJdbcRepository.RefreshRow(tok, false, true, "old-token");
+                });
+        String plain = "test@test.com";
+        String b64 = Base64.getEncoder().encodeToString(plain.getBytes());
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<UserTokenService.RefreshResult>> calls = new ArrayList<>();
+            calls.add(pool.submit(() -> service.refreshOrCreate(plain, "promo", "bf")));
+            assertThat(entered.await(2, TimeUnit.SECONDS)).isTrue();
+            for (int i = 0; i < 3; i++) {
+                String mail = i % 2 == 0 ? b64 : plain;
+                calls.add(pool.submit(() -> service.refreshOrCreate(mail, "promo", "bf")));
+            }
+            while (registry.get("tokens.refresh.calls").tag("result", "coalesced").counter().count() < 3) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            UserTokenService.RefreshResult first = calls.get(0).get(2, TimeUnit.SECONDS);
+            for (Future<UserTokenService.RefreshResult> call : calls) {
+                assertThat(call.get(2, TimeUnit.SECONDS)).isSameAs(first);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        verify(jdbcRepo, times(1)).refreshOrCreate(anyString(), anyString(), anyString(), anyString(), any(), any());
+    }
 
+    @Test
+    void refreshOrCreate_passes48hCutoff_inOneRepositoryCall() {
         UserToken fresh = new UserToken();
         fresh.setId(1000L);
-        fresh.setCategory(category);
-        fresh.setSubcategory(subcat);
-        fresh.setMailBase64("dGVzdEB0ZXN0LmNvbQ==");
         fresh.setToken("same-token");
-        fresh.setDateSent(LocalDateTime.now().minusHours(1));
 
-        when(repo.findTopByMailBase64AndCategoryAndSubcategoryOrderByDateSentDesc(
-                anyString(), anyString(), anyString()
-        )).thenReturn(Optional.of(fresh));
+        ArgumentCaptor<LocalDateTime> now = ArgumentCaptor.forClass(LocalDateTime.class);
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        when(jdbcRepo.refreshOrCreate(anyString(), anyString(), anyString(), anyString(),
+                now.capture(), cutoff.capture()))
+                .thenReturn(new UserTokenJdbcRepository.RefreshRow(fresh, false, false, null));
 
         UserTokenService.RefreshResult result =
-                service.refreshOrCreate("test@test.com", category, subcat);
+                service.refreshOrCreate("test@test.com", "promo", "bf");
 
         assertThat(result.created).isFalse();
         assertThat(result.refreshed).isFalse();
-        assertThat(result.tokenRow.getId()).isEqualTo(1000L);
         assertThat(result.tokenRow.getToken()).isEqualTo("same-token");
+        assertThat(cutoff.getValue()).isEqualTo(now.getValue().minusHours(48));
 
+        verify(jdbcRepo, times(1)).refreshOrCreate(anyString(), anyString(), anyString(), anyString(), any(), any());
         verify(repo, never()).save(any(UserToken.class));
     }
 
     @Test
     void refreshOrCreate_existingOldToken_refreshesUuid() {
-        String category = "promo";
-        String subcat = "bf";
-
-        UserToken old = new UserToken();
-        old.setId(2000L);
-        old.setCategory(category);
-        old.setSubcategory(subcat);
-        old.setMailBase64("dGVzdEB0ZXN0LmNvbQ==");
-        old.setToken("old-token-123");
-        old.setDateSent(LocalDateTime.now().minusHours(72));
-
-        when(repo.findTopByMailBase64AndCategoryAndSubcategoryOrderByDateSentDesc(
-                anyString(), anyString(), anyString()
-        )).thenReturn(Optional.of(old));
+        UserToken rotated = new UserToken();
+        rotated.setId(2000L);
+        rotated.setToken("new-token-456");
 
-        when(repo.save(any(UserToken.class))).thenAnswer(invocation -> {
-            UserToken updated = invocation.getArgument(0);
-            updated.setDateSent(LocalDateTime.now());
-            return updated;
-        });
+        when(jdbcRepo.refreshOrCreate(anyString(), anyString(), anyString(), anyString(), any(), any()))
+                .thenReturn(new UserTokenJdbcRepository.RefreshRow(rotated, false, true, "old-token-123"));
 
         UserTokenService.RefreshResult result =
-                service.refreshOrCreate("test@test.com", category, subcat);
+                service.refreshOrCreate("test@test.com", "promo", "bf");
 
         assertThat(result.created).isFalse();
         assertThat(result.refreshed).isTrue();
@@ -228,6 +388,82 @@ class UserTokenServiceTest {
         verify(repo, times(1)).findByToken("abc-123");
     }
 
+    @Test
+    void findByToken_secondLookupIsServedFromCache() {
+        UserToken t = new UserToken();
+        t.setId(5L);
+        t.setToken("cached-1");
+
+        when(repo.findByToken("cached-1")).thenReturn(Optional.of(t));
+
+        assertThat(service.findByToken("cached-1")).contains(t);
+        assertThat(service.findByToken("cached-1")).contains(t);
+
+        verify(repo, times(1)).findByToken("cached-1");
+    }
+
+    @Test
+    void findByToken_missIsNotCached() {
+        when(repo.findByToken("ghost")).thenReturn(Optional.empty());
+
+        assertThat(service.findByToken("ghost")).isEmpty();
+        assertThat(service.findByToken("ghost")).isEmpty();
+
+        verify(repo, times(2)).findByToken("ghost");
+    }
+
+    @Test
+    void deleteByToken_evictsCachedRow() {
+        UserToken t = new UserToken();
+        t.setToken("doomed");
+
+        when(repo.findByToken("doomed")).thenReturn(Optional.of(t), Optional.empty());
+        when(repo.deleteByToken("doomed")).thenReturn(1L);
+
+        assertThat(service.findByToken("doomed")).isPresent();
+        assertThat(service.deleteByToken("doomed")).isTrue();
+        assertThat(service.findByToken("doomed")).isEmpty();
+
+        verify(repo, times(2)).findByToken("doomed");
+    }
+
+    @Test
+    void deleteByToken_lookupRacingTheDelete_doesNotRecacheTheRow() {
+        UserToken t = new UserToken();
+        t.setToken("raced");
+
+        when(repo.findByToken("raced")).thenReturn(Optional.of(t), Optional.empty());
+        when(repo.deleteByToken("raced")).thenAnswer(inv -> {
+            // a concurrent GET reads the row before the delete commits
+            assertThat(service.findByToken("raced")).isPresent();
+            return 1L;
+        });
+
+        assertThat(service.deleteByToken("raced")).isTrue();
+        assertThat(service.findByToken("raced")).isEmpty();
+
+        verify(repo, times(2)).findByToken("raced");
+    }
+
+    @Test
+    void refreshOrCreate_rotation_evictsOldTokenFromCache() {
+        UserToken old = new UserToken();
+        old.setToken("rotate-me");
+        UserToken rotated = new UserToken();
+        rotated.setToken("rotated");
+
+        when(repo.findByToken("rotate-me")).thenReturn(Optional.of(old), Optional.empty());
+        when(jdbcRepo.refreshOrCreate(anyString(), anyString(), anyString(), anyString(), any(), any()))
+                .thenReturn(new UserTokenJdbcRepository.RefreshRow(rotated, false, true, "rotate-me"));
+
+        assertThat(service.findByToken("rotate-me")).isPresent();
+
+        service.refreshOrCreate("test@test.com", "promo", "bf");
+
+        assertThat(service.findByToken("rotate-me")).isEmpty();
+        verify(repo, times(2)).findByToken("rotate-me");
+    }
+
     @Test
     void deleteByToken_returnsTrueIfRowDeleted() {
         when(repo.deleteByToken("kill-me")).thenReturn(1L);
@@ -249,20 +485,62 @@ class UserTokenServiceTest {
     }
 
     @Test
-    void findByCategoryAndSubcategory_delegatesToRepo() {
-        UserToken t = new UserToken();
-        t.setId(9L);
+    void findMailsAndTokensByCategoryAndSubcategory_delegatesToRepo() {
+        when(repo.findMailsAndTokensByCategoryAndSubcategory("promo", "black-friday"))
+                .thenReturn(List.of(new MailTokenResponse("bWFpbA==", "tok-9")));
 
-        when(repo.findByCategoryAndSubcategory("promo", "black-friday"))
-                .thenReturn(List.of(t));
-
-        List<UserToken> res =
-                service.findByCategoryAndSubcategory("promo", "black-friday");
+        List<MailTokenResponse> res =
+                service.findMailsAndTokensByCategoryAndSubcategory("promo", "black-friday");
 
         assertThat(res).hasSize(1);
-        assertThat(res.get(0).getId()).isEqualTo(9L);
+        assertThat(res.get(0).token()).isEqualTo("tok-9");
 
         verify(repo, times(1))
-                .findByCategoryAndSubcategory("promo", "black-friday");
+                .findMailsAndTokensByCategoryAndSubcategory("promo", "black-friday");
+    }
+
+    @Test
+    void streamMailsAndTokens_delegatesToJdbcRepo() {
+        java.util.function.BiConsumer<String, String> sink = (m, t) -> { };
+
+        service.streamMailsAndTokens("promo", "black-friday", sink);
+
+        verify(jdbcRepo, times(1)).streamMailsAndTokens("promo", "black-friday", sink);
+        verifyNoInteractions(repo);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void issueForSegment_insertsInBatches_andEmitsEveryPairAfterItsBatch() {
+        doAnswer(inv -> {
+            java.util.function.Consumer<String> sink = inv.getArgument(2);
+            for (int i = 0; i < 2500; i++) sink.accept("mail-" + i);
+            return null;
+        }).when(subscriptions).streamDistinctMailsBySegment(eq("promo"), eq("bf"), any());
+
+        List<Integer> batchSizes = new ArrayList<>();
+        doAnswer(inv -> {
+            List<UserToken> rows = inv.getArgument(0);
+            batchSizes.add(rows.size());
+            assertThat(rows).allSatisfy(t -> {
+                assertThat(t.getCategory()).isEqualTo("promo");
+                assertThat(t.getSubcategory()).isEqualTo("bf");
+                assertThat(t.getDateSent()).isNotNull();
+            });
+            return null;
+        }).when(jdbcRepo).insertAll(anyList());
+
+        List<String> emitted = new ArrayList<>();
+        HashSet<String> tokens = new HashSet<>();
+        int issued = service.issueForSegment("promo", "bf", (mail, token) -> {
+            emitted.add(mail);
+            tokens.add(token);
+        });
+
+        assertThat(issued).isEqualTo(2500);
+        assertThat(batchSizes).containsExactly(1000, 1000, 500);
+        assertThat(emitted).hasSize(2500).startsWith("mail-0").endsWith("mail-2499");
+        assertThat(tokens).hasSize(2500);
+        verify(repo, never()).save(any(UserToken.class));
     }
 }
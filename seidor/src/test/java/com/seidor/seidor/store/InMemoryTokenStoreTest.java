@@ -0,0 +1,113 @@
+package com.seidor.seidor.store;
+
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.service.UserTokenService;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InMemoryTokenStoreTest extends TokenStoreContractTest {
+
+    @Override
+    protected TokenStore emptyStore() {
+        return new InMemoryTokenStore(Duration.ofDays(30));
+    }
+
+    @Test
+    void expiredRows_areInvisible_untilSweptAway() {
+        Clock clock = Clock.fixed(NOW.atZone(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault());
+        InMemoryTokenStore store = new InMemoryTokenStore(Duration.ofDays(3), clock);
+        store.create(token("bWFpbA==", "promo", "bf", "tok-old", NOW.minusDays(4)));
+        store.create(token("bWFpbA==", "promo", "bf", "tok-new", NOW));
+
+        assertThat(store.findByToken("tok-old")).isEmpty();
+        assertThat(store.findByTriple("bWFpbA==", "promo", "bf")).hasSize(1);
+        assertThat(store.findBySegment("promo", "bf")).hasSize(1);
+        assertThat(store.deleteByToken("tok-old")).isFalse();
+
+        assertThat(store.evictExpired()).isEqualTo(1);
+        assertThat(store.count()).isEqualTo(1);
+    }
+
+    @Test
+    void refreshOrCreate_ignoresExpiredRows() {
+        Clock clock = Clock.fixed(NOW.atZone(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault());
+        InMemoryTokenStore store = new InMemoryTokenStore(Duration.ofDays(3), clock);
+        store.create(token("bWFpbA==", "promo", "bf", "tok-old", NOW.minusDays(4)));
+
+        TokenStore.RefreshRow row = store.refreshOrCreate("bWFpbA==", "promo", "bf", "tok-new", NOW,
+                NOW.minusHours(48));
+
+        assertThat(row.created()).isTrue();
+        assertThat(row.tokenRow().getToken()).isEqualTo("tok-new");
+    }
+
+    @Test
+    void ttlShorterThanTheRefreshAge_isRejected() {
+        assertThatThrownBy(() -> new InMemoryTokenStore(Duration.ofDays(1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void tokenPastTheRefreshAge_isStillThere_andRotatedLikeInTheDatabase() {
+        Clock clock = Clock.fixed(NOW.atZone(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault());
+        InMemoryTokenStore store = new InMemoryTokenStore(UserTokenService.REFRESH_AFTER, clock);
+        store.create(token("bWFpbA==", "promo", "bf", "tok-old", NOW.minus(UserTokenService.REFRESH_AFTER)));
+
+        assertThat(store.findByToken("tok-old")).isPresent();
+        TokenStore.RefreshRow row = store.refreshOrCreate("bWFpbA==", "promo", "bf", "tok-new", NOW,
+                NOW.minus(UserTokenService.REFRESH_AFTER).plusSeconds(1));
+
+        assertThat(row.created()).isFalse();
+        assertThat(row.refreshed()).isTrue();
+        assertThat(row.previousToken()).isEqualTo("tok-old");
+    }
+
+    @Test
+    void refreshOrCreate_concurrentCallsForOneTriple_insertOnce() throws Exception {
+        InMemoryTokenStore store = new InMemoryTokenStore(Duration.ofDays(30));
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<TokenStore.RefreshRow>> calls = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String minted = "tok-" + i;
+                calls.add(pool.submit(() -> store.refreshOrCreate("bWFpbA==", "promo", "bf", minted, NOW,
+                        NOW.minusHours(48))));
+            }
+
+            int created = 0;
+            List<String> seen = new ArrayList<>();
+            for (Future<TokenStore.RefreshRow> call : calls) {
+                TokenStore.RefreshRow row = call.get();
+                created += row.created() ? 1 : 0;
+                seen.add(row.tokenRow().getToken());
+            }
+            assertThat(created).isEqualTo(1);
+            assertThat(seen).containsOnly(seen.get(0));
+            assertThat(store.count()).isEqualTo(1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void returnedRows_areCopies() {
+        InMemoryTokenStore store = new InMemoryTokenStore(Duration.ofDays(30));
+        store.create(token("bWFpbA==", "promo", "bf", "tok-1", NOW));
+
+        UserToken found = store.findByToken("tok-1").orElseThrow();
+        found.setCategory("changed");
+
+        assertThat(store.findByToken("tok-1")).get().extracting(UserToken::getCategory).isEqualTo("promo");
+    }
+}
@@ -0,0 +1,52 @@
+package com.seidor.seidor.store;
+
+import com.seidor.seidor.repository.LookupKeyBackfillState;
+import com.seidor.seidor.repository.SqlDialect;
+import com.seidor.seidor.repository.TokenBinBackfillState;
+import com.seidor.seidor.repository.TokenIndexes;
+import com.seidor.seidor.repository.UserTokenJdbcRepository;
+import com.seidor.seidor.service.TokenWriteBuffer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+// no test transaction: every store call has to commit on its own, as it does in production
+@DataJpaTest(properties = "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect")
+@Import({JpaTokenStore.class, TokenWriteBuffer.class, UserTokenJdbcRepository.class, SqlDialect.class,
+        LookupKeyBackfillState.class, TokenBinBackfillState.class, TokenIndexes.class,
+        JpaTokenStoreTest.Metrics.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class JpaTokenStoreTest extends TokenStoreContractTest {
+
+    @Autowired
+    private JpaTokenStore store;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private TokenIndexes indexes;
+
+    @Override
+    protected TokenStore emptyStore() {
+        // the unique token indexes come from TokenIndexes, not from the schema update
+        indexes.ensure();
+        jdbc.update("DELETE FROM USERS_TOKEN");
+        return store;
+    }
+
+    @TestConfiguration
+    static class Metrics {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.seidor.seidor.store;
+
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.pojo.TokenSummaryResponse;
+import com.seidor.seidor.token.TokenCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedFileTokenStoreTest extends TokenStoreContractTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<MappedFileTokenStore> opened = new ArrayList<>();
+
+    @Override
+    protected TokenStore emptyStore() {
+        return open(4);
+    }
+
+    @AfterEach
+    void closeStores() throws IOException {
+        for (MappedFileTokenStore store : opened) {
+            store.close();
+        }
+    }
+
+    @Test
+    void reopen_replaysRows_acrossSegments() throws IOException {
+        MappedFileTokenStore store = open(4);
+        for (int i = 0; i < 10; i++) {
+            store.create(token("bWFpbA==", "promo", "bf", "tok-" + i, NOW.minusHours(i)));
+        }
+        store.deleteByToken("tok-3");
+        store.close();
+
+        MappedFileTokenStore reopened = open(4);
+
+        assertThat(reopened.count()).isEqualTo(9);
+        assertThat(reopened.findByToken("tok-3")).isEmpty();
+        assertThat(reopened.findByToken("tok-9")).get().satisfies(t -> {
+            assertThat(t.getId()).isEqualTo(10);
+            assertThat(t.getDateSent()).isEqualTo(NOW.minusHours(9));
+        });
+        assertThat(reopened.findByTriple("bWFpbA==", "promo", "bf")).hasSize(9);
+        assertThat(reopened.create(token("bWFpbA==", "promo", "bf", "tok-new", NOW)).getId()).isEqualTo(11);
+    }
+
+    @Test
+    void reopen_compactsWhenMostRecordsAreDead() throws IOException {
+        MappedFileTokenStore store = open(4);
+        for (int i = 0; i < 8; i++) {
+            store.create(token("bWFpbA==", "promo", "seg" + i, "tok-" + i, NOW));
+        }
+        for (int i = 0; i < 6; i++) {
+            store.deleteByToken("tok-" + i);
+        }
+        store.close();
+
+        MappedFileTokenStore reopened = open(4);
+
+        // two live records, one segment of four
+        assertThat(Files.size(dir.resolve("tokens.log"))).isEqualTo(4L * MappedFileTokenStore.RECORD_SIZE);
+        assertThat(reopened.count()).isEqualTo(2);
+        assertThat(reopened.findByToken("tok-7")).get().extracting(UserToken::getSubcategory).isEqualTo("seg7");
+        assertThat(reopened.findByTriple("bWFpbA==", "promo", "seg6")).hasSize(1);
+    }
+
+    @Test
+    void reopen_keepsRotationsOfOneTriple() throws IOException {
+        MappedFileTokenStore store = open(4);
+        store.create(token("bWFpbA==", "promo", "bf", "tok-old", NOW.minusDays(3)));
+        store.refreshOrCreate("bWFpbA==", "promo", "bf", "tok-new", NOW, NOW.minusHours(48));
+        store.close();
+
+        MappedFileTokenStore reopened = open(4);
+
+        assertThat(reopened.findByTriple("bWFpbA==", "promo", "bf"))
+                .extracting(TokenSummaryResponse::token)
+                .containsExactly("tok-new");
+        assertThat(reopened.refreshOrCreate("bWFpbA==", "promo", "bf", "tok-other", NOW, NOW.minusHours(48))
+                .refreshed()).isFalse();
+    }
+
+    @Test
+    void tokens_areReadBackExactly_whateverTheirForm() {
+        MappedFileTokenStore store = open(4);
+        String uuid = TokenCodec.random(false);
+        String compact = TokenCodec.random(true);
+        String upper = TokenCodec.random(false).toUpperCase();
+        String signed = "k1.cGF5bG9hZA.c2ln";
+        for (String value : List.of(uuid, compact, upper, signed)) {
+            store.create(token("bWFpbA==", "promo", "bf", value, NOW));
+        }
+
+        for (String value : List.of(uuid, compact, upper, signed)) {
+            assertThat(store.findByToken(value)).get().extracting(UserToken::getToken).isEqualTo(value);
+        }
+        assertThat(store.findByToken(upper.toLowerCase())).isEmpty();
+    }
+
+    @Test
+    void reopen_ignoresATornLastRecord() throws IOException {
+        MappedFileTokenStore store = open(4);
+        store.create(token("bWFpbA==", "promo", "bf", "tok-1", NOW));
+        store.close();
+        // a record whose state byte never made it: everything but byte 0
+        byte[] torn = new byte[MappedFileTokenStore.RECORD_SIZE];
+        torn[16] = 42;
+        try (var out = Files.newByteChannel(dir.resolve("tokens.log"), StandardOpenOption.WRITE)) {
+            out.position(MappedFileTokenStore.RECORD_SIZE).write(java.nio.ByteBuffer.wrap(torn));
+        }
+
+        MappedFileTokenStore reopened = open(4);
+
+        assertThat(reopened.count()).isEqualTo(1);
+        assertThat(reopened.create(token("bWFpbA==", "promo", "bf", "tok-2", NOW)).getId()).isEqualTo(2);
+    }
+
+    @Test
+    void rejectedDuplicates_leaveTheStringTableAlone() throws IOException {
+        MappedFileTokenStore store = open(4);
+        store.create(token("bWFpbA==", "promo", "bf", "k1.cGF5bG9hZA.c2ln", NOW.minusDays(3)));
+        long before = Files.size(dir.resolve("strings.dat"));
+
+        assertThatThrownBy(() -> store.create(token("b3Rybw==", "news", "x", "k1.cGF5bG9hZA.c2ln", NOW)))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        assertThatThrownBy(() -> store.insertAll(List.of(
+                token("b3Rybw==", "news", "x", "k1.bmV3.c2ln", NOW),
+                token("b3Rybw==", "news", "x", "k1.cGF5bG9hZA.c2ln", NOW))))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        assertThatThrownBy(() -> store.refreshOrCreate("bWFpbA==", "promo", "bf", "k1.cGF5bG9hZA.c2ln", NOW,
+                NOW.minusHours(48)))
+                .isInstanceOf(DataIntegrityViolationException.class);
+
+        assertThat(Files.size(dir.resolve("strings.dat"))).isEqualTo(before);
+    }
+
+    @Test
+    void reopen_compactsTheStringTableWithTheLog() throws IOException {
+        MappedFileTokenStore store = open(4);
+        for (int i = 0; i < 8; i++) {
+            store.create(token("bWFpbA==", "promo", "seg" + i, "k1.cGF5bG9hZA.sig" + i, NOW));
+        }
+        for (int i = 0; i < 6; i++) {
+            store.deleteByToken("k1.cGF5bG9hZA.sig" + i);
+        }
+        store.close();
+        long before = Files.size(dir.resolve("strings.dat"));
+
+        MappedFileTokenStore reopened = open(4);
+
+        assertThat(Files.size(dir.resolve("strings.dat"))).isLessThan(before);
+        assertThat(reopened.findByToken("k1.cGF5bG9hZA.sig7")).get().satisfies(t -> {
+            assertThat(t.getMailBase64()).isEqualTo("bWFpbA==");
+            assertThat(t.getCategory()).isEqualTo("promo");
+            assertThat(t.getSubcategory()).isEqualTo("seg7");
+        });
+        assertThat(reopened.findByTriple("bWFpbA==", "promo", "seg6"))
+                .extracting(TokenSummaryResponse::token)
+                .containsExactly("k1.cGF5bG9hZA.sig6");
+        assertThat(reopened.findByToken("k1.cGF5bG9hZA.sig0")).isEmpty();
+    }
+
+    @Test
+    void reopen_finishesACompactionThatGotPastItsMarker() throws IOException {
+        MappedFileTokenStore store = open(4);
+        store.create(token("bWFpbA==", "promo", "bf", "k1.cGF5bG9hZA.c2ln", NOW));
+        store.close();
+        // died after moving strings.dat, before moving tokens.log
+        Files.move(dir.resolve("tokens.log"), dir.resolve("tokens.log.compact"));
+        Files.write(dir.resolve("tokens.log"), new byte[0]);
+        Files.createFile(dir.resolve("compacted"));
+
+        MappedFileTokenStore reopened = open(4);
+
+        assertThat(reopened.findByToken("k1.cGF5bG9hZA.c2ln")).isPresent();
+        assertThat(dir.resolve("compacted")).doesNotExist();
+        assertThat(dir.resolve("tokens.log.compact")).doesNotExist();
+    }
+
+    @Test
+    void reopen_dropsACompactionCutShortBeforeItsMarker() throws IOException {
+        MappedFileTokenStore store = open(4);
+        store.create(token("bWFpbA==", "promo", "bf", "tok-1", NOW));
+        store.close();
+        Files.write(dir.resolve("tokens.log.compact"), new byte[0]);
+        Files.write(dir.resolve("strings.dat.compact"), new byte[0]);
+
+        MappedFileTokenStore reopened = open(4);
+
+        assertThat(reopened.findByToken("tok-1")).isPresent();
+        assertThat(dir.resolve("tokens.log.compact")).doesNotExist();
+        assertThat(dir.resolve("strings.dat.compact")).doesNotExist();
+    }
+
+    @Test
+    void deleteSentBefore_resumesWhereTheLastChunkStopped_andWrapsAround() {
+        MappedFileTokenStore store = open(4);
+        store.create(token("bWFpbA==", "promo", "a", "tok-0", NOW.minusDays(1)));
+        store.create(token("bWFpbA==", "promo", "b", "tok-1", NOW.minusDays(5)));
+        store.create(token("bWFpbA==", "promo", "c", "tok-2", NOW.minusDays(5)));
+
+        assertThat(store.deleteSentBefore(NOW.minusDays(2), 1)).isEqualTo(1);
+        assertThat(store.findByToken("tok-1")).isEmpty();
+        // starts after tok-1, then comes back round for tok-0
+        assertThat(store.deleteSentBefore(NOW, 5)).isEqualTo(2);
+        assertThat(store.count()).isZero();
+        assertThat(store.deleteSentBefore(NOW, 5)).isZero();
+    }
+
+    private MappedFileTokenStore open(int segmentRecords) {
+        try {
+            MappedFileTokenStore store = new MappedFileTokenStore(dir, 16, 0.5, segmentRecords,
+                    new SimpleMeterRegistry());
+            opened.add(store);
+            return store;
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.seidor.seidor.store;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OffHeapHashIndexTest {
+
+    @Test
+    void keepsEveryValueOfAKey_throughResizes() {
+        OffHeapHashIndex index = new OffHeapHashIndex(1);
+        for (long v = 0; v < 1000; v++) {
+            index.put(v % 10, v);
+        }
+
+        assertThat(index.size()).isEqualTo(1000);
+        assertThat(index.find(3, v -> v == 993)).isEqualTo(993);
+        assertThat(index.find(3, v -> v == 994)).isEqualTo(-1);
+        assertThat(index.find(42, v -> true)).isEqualTo(-1);
+    }
+
+    @Test
+    void replaceAndRemove_touchOnlyTheGivenEntry() {
+        OffHeapHashIndex index = new OffHeapHashIndex(16);
+        index.put(7, 1);
+        index.put(7, 2);
+
+        assertThat(index.replace(7, 1, 5)).isTrue();
+        assertThat(index.remove(7, 2)).isTrue();
+        assertThat(index.remove(7, 2)).isFalse();
+
+        assertThat(index.find(7, v -> true)).isEqualTo(5);
+        assertThat(index.size()).isEqualTo(1);
+    }
+}
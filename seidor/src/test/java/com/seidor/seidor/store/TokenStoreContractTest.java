@@ -0,0 +1,228 @@
+package com.seidor.seidor.store;
+
+import com.seidor.seidor.model.UserToken;
+import com.seidor.seidor.pojo.MailTokenResponse;
+import com.seidor.seidor.pojo.TokenSummaryResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Behaviour every {@link TokenStore} must have; subclasses only say how to get an empty store. */
+abstract class TokenStoreContractTest {
+
+    protected static final LocalDateTime NOW = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+    private static final LocalDateTime CUTOFF = NOW.minusHours(48);
+
+    private TokenStore store;
+
+    /** A store with no rows. */
+    protected abstract TokenStore emptyStore();
+
+    @BeforeEach
+    void setupStore() {
+        store = emptyStore();
+    }
+
+    @Test
+    void create_assignsId_andIsFoundByToken() {
+        UserToken created = store.create(token("bWFpbA==", "promo", "bf", "tok-1", NOW));
+
+        assertThat(created.getId()).isPositive();
+        assertThat(store.findByToken("tok-1")).get().satisfies(t -> {
+            assertThat(t.getId()).isEqualTo(created.getId());
+            assertThat(t.getMailBase64()).isEqualTo("bWFpbA==");
+            assertThat(t.getCategory()).isEqualTo("promo");
+            assertThat(t.getSubcategory()).isEqualTo("bf");
+            assertThat(t.getDateSent()).isEqualTo(NOW);
+        });
+    }
+
+    @Test
+    void findByToken_unknown_isEmpty() {
+        store.create(token("bWFpbA==", "promo", "bf", "tok-1", NOW));
+
+        assertThat(store.findByToken("nope")).isEmpty();
+    }
+
+    @Test
+    void create_duplicateToken_fails() {
+        store.create(token("bWFpbA==", "promo", "bf", "tok-1", NOW));
+
+        assertThatThrownBy(() -> store.create(token("b3Rybw==", "promo", "bf", "tok-1", NOW)))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(store.count()).isEqualTo(1);
+    }
+
+    @Test
+    void findByTriple_listsOnlyThatTriple() {
+        store.create(token("bWFpbA==", "promo", "bf", "tok-1", NOW.minusHours(2)));
+        store.create(token("bWFpbA==", "promo", "bf", "tok-2", NOW.minusHours(1)));
+        store.create(token("bWFpbA==", "promo", "xmas", "tok-3", NOW));
+        store.create(token("b3Rybw==", "promo", "bf", "tok-4", NOW));
+
+        assertThat(store.findByTriple("bWFpbA==", "promo", "bf"))
+                .extracting(TokenSummaryResponse::token)
+                .containsExactlyInAnyOrder("tok-1", "tok-2");
+        assertThat(store.findByTriple("bm9uZQ==", "promo", "bf")).isEmpty();
+    }
+
+    @Test
+    void refreshOrCreate_insertsWhenTripleUnknown() {
+        TokenStore.RefreshRow row = store.refreshOrCreate("bWFpbA==", "promo", "bf", "tok-1", NOW, CUTOFF);
+
+        assertThat(row.created()).isTrue();
+        assertThat(row.refreshed()).isTrue();
+        assertThat(row.previousToken()).isNull();
+        assertThat(row.tokenRow().getId()).isPositive();
+        assertThat(row.tokenRow().getToken()).isEqualTo("tok-1");
+        assertThat(row.tokenRow().getDateSent()).isEqualTo(NOW);
+        assertThat(store.findByToken("tok-1")).isPresent();
+    }
+
+    @Test
+    void refreshOrCreate_keepsRecentToken() {
+        store.create(token("bWFpbA==", "promo", "bf", "tok-old", NOW.minusHours(3)));
+        store.create(token("bWFpbA==", "promo", "bf", "tok-recent", NOW.minusHours(1)));
+
+        TokenStore.RefreshRow row = store.refreshOrCreate("bWFpbA==", "promo", "bf", "tok-new", NOW, CUTOFF);
+
+        assertThat(row.created()).isFalse();
+        assertThat(row.refreshed()).isFalse();
+        assertThat(row.previousToken()).isNull();
+        assertThat(row.tokenRow().getToken()).isEqualTo("tok-recent");
+        assertThat(store.findByToken("tok-new")).isEmpty();
+        assertThat(store.count()).isEqualTo(2);
+    }
+
+    @Test
+    void refreshOrCreate_rotatesStaleToken() {
+        UserToken stale = store.create(token("bWFpbA==", "promo", "bf", "tok-old", NOW.minusDays(3)));
+
+        TokenStore.RefreshRow row = store.refreshOrCreate("bWFpbA==", "promo", "bf", "tok-new", NOW, CUTOFF);
+
+        assertThat(row.created()).isFalse();
+        assertThat(row.refreshed()).isTrue();
+        assertThat(row.previousToken()).isEqualTo("tok-old");
+        assertThat(row.tokenRow().getId()).isEqualTo(stale.getId());
+        assertThat(row.tokenRow().getToken()).isEqualTo("tok-new");
+        assertThat(row.tokenRow().getDateSent()).isEqualTo(NOW);
+        assertThat(store.findByToken("tok-old")).isEmpty();
+        assertThat(store.findByToken("tok-new")).get().extracting(UserToken::getId).isEqualTo(stale.getId());
+        assertThat(store.count()).isEqualTo(1);
+    }
+
+    @Test
+    void deleteByToken_removesOnlyThatRow() {
+        store.create(token("bWFpbA==", "promo", "bf", "tok-1", NOW));
+        store.create(token("bWFpbA==", "promo", "bf", "tok-2", NOW));
+
+        assertThat(store.deleteByToken("tok-1")).isTrue();
+        assertThat(store.deleteByToken("tok-1")).isFalse();
+        assertThat(store.findByToken("tok-1")).isEmpty();
+        assertThat(store.findByTriple("bWFpbA==", "promo", "bf"))
+                .extracting(TokenSummaryResponse::token)
+                .containsExactly("tok-2");
+    }
+
+    @Test
+    void findBySegment_andStreamBySegment_returnTheSameRows() {
+        store.create(token("bWFpbA==", "promo", "bf", "tok-1", NOW));
+        store.create(token("b3Rybw==", "promo", "bf", "tok-2", NOW));
+        store.create(token("bWFpbA==", "promo", "xmas", "tok-3", NOW));
+
+        Map<String, String> streamed = new HashMap<>();
+        store.streamBySegment("promo", "bf", streamed::put);
+
+        assertThat(store.findBySegment("promo", "bf")).containsExactlyInAnyOrder(
+                new MailTokenResponse("bWFpbA==", "tok-1"),
+                new MailTokenResponse("b3Rybw==", "tok-2"));
+        assertThat(streamed).containsOnly(Map.entry("bWFpbA==", "tok-1"), Map.entry("b3Rybw==", "tok-2"));
+    }
+
+    @Test
+    void insertAll_storesEveryRow() {
+        List<UserToken> rows = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            rows.add(token("bWFpbA==", "promo", "seg" + i, "tok-" + i, NOW));
+        }
+
+        store.insertAll(rows);
+
+        assertThat(store.count()).isEqualTo(5);
+        assertThat(store.findByToken("tok-4")).get().extracting(UserToken::getSubcategory).isEqualTo("seg4");
+    }
+
+    @Test
+    void insertAll_withADuplicate_storesNothing() {
+        store.create(token("bWFpbA==", "promo", "bf", "tok-taken", NOW));
+        List<UserToken> rows = List.of(
+                token("bWFpbA==", "promo", "seg1", "tok-1", NOW),
+                token("bWFpbA==", "promo", "seg2", "tok-taken", NOW),
+                token("bWFpbA==", "promo", "seg3", "tok-3", NOW));
+
+        assertThatThrownBy(() -> store.insertAll(rows)).isInstanceOf(DataIntegrityViolationException.class);
+
+        assertThat(store.count()).isEqualTo(1);
+        assertThat(store.findByToken("tok-1")).isEmpty();
+        assertThat(store.findByTriple("bWFpbA==", "promo", "seg1")).isEmpty();
+    }
+
+    @Test
+    void insertAll_withADuplicateInsideTheBatch_storesNothing() {
+        List<UserToken> rows = List.of(
+                token("bWFpbA==", "promo", "seg1", "tok-1", NOW),
+                token("b3Rybw==", "promo", "seg1", "tok-1", NOW));
+
+        assertThatThrownBy(() -> store.insertAll(rows)).isInstanceOf(DataIntegrityViolationException.class);
+
+        assertThat(store.count()).isZero();
+    }
+
+    @Test
+    void deleteSentBefore_respectsCutoffAndLimit() {
+        store.create(token("bWFpbA==", "promo", "bf", "tok-1", NOW.minusDays(3)));
+        store.create(token("bWFpbA==", "promo", "bf", "tok-2", NOW.minusDays(4)));
+        store.create(token("bWFpbA==", "promo", "bf", "tok-3", NOW.minusDays(5)));
+        store.create(token("bWFpbA==", "promo", "bf", "tok-4", NOW));
+
+        assertThat(store.deleteSentBefore(NOW.minusDays(1), 2)).isEqualTo(2);
+        assertThat(store.deleteSentBefore(NOW.minusDays(1), 2)).isEqualTo(1);
+        assertThat(store.deleteSentBefore(NOW.minusDays(1), 2)).isZero();
+        assertThat(store.findByTriple("bWFpbA==", "promo", "bf"))
+                .extracting(TokenSummaryResponse::token)
+                .containsExactly("tok-4");
+    }
+
+    @Test
+    void count_andStreamTokens_coverEveryRow() {
+        store.create(token("bWFpbA==", "promo", "bf", "tok-1", NOW));
+        store.create(token("b3Rybw==", "news", "weekly", "tok-2", NOW));
+
+        List<String> tokens = new ArrayList<>();
+        store.streamTokens(tokens::add);
+
+        assertThat(store.count()).isEqualTo(2);
+        assertThat(tokens).containsExactlyInAnyOrder("tok-1", "tok-2");
+    }
+
+    protected static UserToken token(String mail, String category, String subcategory, String value,
+                                     LocalDateTime dateSent) {
+        UserToken t = new UserToken();
+        t.setMailBase64(mail);
+        t.setCategory(category);
+        t.setSubcategory(subcategory);
+        t.setToken(value);
+        t.setDateSent(dateSent);
+        return t;
+    }
+}
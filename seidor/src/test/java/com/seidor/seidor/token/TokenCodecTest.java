@@ -0,0 +1,88 @@
+package com.seidor.seidor.token;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenCodecTest {
+
+    @Test
+    void toBinary_uuidString_isItsSixteenBytes() {
+        UUID uuid = UUID.fromString("123e4567-e89b-12d3-a456-426614174000");
+
+        byte[] bin = TokenCodec.toBinary(uuid.toString());
+
+        ByteBuffer buf = ByteBuffer.wrap(bin);
+        assertThat(bin).hasSize(16);
+        assertThat(buf.getLong()).isEqualTo(uuid.getMostSignificantBits());
+        assertThat(buf.getLong()).isEqualTo(uuid.getLeastSignificantBits());
+        assertThat(TokenCodec.toBinary(uuid.toString().toUpperCase())).isEqualTo(bin);
+    }
+
+    @Test
+    void random_compact_is22UrlSafeChars_withBinaryForm() {
+        String token = TokenCodec.random(true);
+
+        assertThat(token).hasSize(22).matches("[A-Za-z0-9_-]+");
+        assertThat(TokenCodec.toBinary(token)).hasSize(16);
+    }
+
+    @Test
+    void random_uuid_isParsableByUuid() {
+        String token = TokenCodec.random(false);
+
+        assertThat(UUID.fromString(token).toString()).isEqualTo(token);
+        assertThat(TokenCodec.toBinary(token)).hasSize(16);
+    }
+
+    @Test
+    void toBinary_otherValues_haveNoBinaryForm() {
+        assertThat(TokenCodec.toBinary(null)).isNull();
+        assertThat(TokenCodec.toBinary("abc-123")).isNull();
+        assertThat(TokenCodec.toBinary("k1.cGF5bG9hZA.c2ln")).isNull();
+        assertThat(TokenCodec.toBinary("123e4567+e89b-12d3-a456-426614174000")).isNull();
+        assertThat(TokenCodec.toBinary("123e4567-e89b-12d3-a456-42661417400g")).isNull();
+        assertThat(TokenCodec.toBinary("AAAAAAAAAAAAAAAAAAAA=A")).isNull();
+    }
+
+    @Test
+    void toBinary_compact_rejectsNonCanonicalTrailingBits() {
+        String token = TokenCodec.random(true);
+        char last = token.charAt(21);
+        // flip one of the two spare low bits of the final sextet
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        String tweaked = token.substring(0, 21) + alphabet.charAt(alphabet.indexOf(last) ^ 1);
+
+        assertThat(TokenCodec.toBinary(tweaked)).isNull();
+    }
+
+    @Test
+    void fromBinary_spellsBothFormsBack() {
+        String uuid = TokenCodec.random(false);
+        String compact = TokenCodec.random(true);
+
+        assertThat(TokenCodec.fromBinary(TokenCodec.toBinary(uuid), false)).isEqualTo(uuid);
+        assertThat(TokenCodec.fromBinary(TokenCodec.toBinary(compact), true)).isEqualTo(compact);
+        assertThat(TokenCodec.fromBinary(TokenCodec.toBinary(uuid.toUpperCase()), false)).isEqualTo(uuid);
+    }
+
+    @Test
+    void toText_isNullOnlyWhenTheBinaryFormSpellsTheTokenBack() {
+        String uuid = TokenCodec.random(false);
+        String compact = TokenCodec.random(true);
+
+        assertThat(TokenCodec.toText(uuid)).isNull();
+        assertThat(TokenCodec.toText(uuid.toUpperCase())).isEqualTo(uuid.toUpperCase());
+        assertThat(TokenCodec.toText(compact)).isEqualTo(compact);
+        assertThat(TokenCodec.toText("k1.cGF5bG9hZA.c2ln")).isEqualTo("k1.cGF5bG9hZA.c2ln");
+
+        for (String token : List.of(uuid, uuid.toUpperCase(), compact, "k1.cGF5bG9hZA.c2ln")) {
+            assertThat(TokenCodec.fromColumns(TokenCodec.toText(token), TokenCodec.toBinary(token)))
+                    .isEqualTo(token);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.seidor.seidor.token;
+
+import com.seidor.seidor.model.UserToken;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenSignerTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 11, 10, 12, 0, 0, 123_456_000);
+    private static final Clock CLOCK = Clock.fixed(NOW.toInstant(ZoneOffset.UTC), ZoneId.of("UTC"));
+
+    private static final String K1 = "k1:" + secret(1);
+    private static final String K2 = "k2:" + secret(2);
+
+    @Test
+    void mint_thenVerify_roundTripsRowValues() {
+        TokenSigner signer = signer("k1", K1);
+
+        String token = signer.mint("dGVzdEB0ZXN0LmNvbQ==", "promo", "black-friday", NOW);
+        UserToken t = signer.verify(token).orElseThrow();
+
+        assertThat(token).startsWith("k1.");
+        assertThat(t.getId()).isNull();
+        assertThat(t.getToken()).isEqualTo(token);
+        assertThat(t.getMailBase64()).isEqualTo("dGVzdEB0ZXN0LmNvbQ==");
+        assertThat(t.getCategory()).isEqualTo("promo");
+        assertThat(t.getSubcategory()).isEqualTo("black-friday");
+        assertThat(t.getDateSent()).isEqualTo(NOW);
+    }
+
+    @Test
+    void verify_rejectsTamperedPayload() {
+        TokenSigner signer = signer("k1", K1);
+        String token = signer.mint("bWFpbA==", "promo", "bf", NOW);
+        String[] parts = token.split("\\.");
+        String other = signer.mint("b3RoZXI=", "promo", "bf", NOW).split("\\.")[1];
+
+        assertThat(signer.verify(parts[0] + "." + other + "." + parts[2])).isEmpty();
+        assertThat(signer.verify(token.substring(0, token.length() - 2) + "AA")).isEmpty();
+        assertThat(signer.verify("k1.%%%.###")).isEmpty();
+    }
+
+    @Test
+    void verify_rejectsExpiredToken() {
+        TokenSigner signer = signer("k1", K1);
+
+        assertThat(signer.verify(signer.mint("bWFpbA==", "promo", "bf", NOW.minusDays(31)))).isEmpty();
+    }
+
+    @Test
+    void rotation_oldKeyStillVerifies_untilRemoved() {
+        String token = signer("k1", K1).mint("bWFpbA==", "promo", "bf", NOW);
+
+        TokenSigner rotated = signer("k2", K1 + "," + K2);
+        assertThat(rotated.verify(token)).isPresent();
+        assertThat(rotated.mint("bWFpbA==", "promo", "bf", NOW)).startsWith("k2.");
+
+        assertThat(signer("k2", K2).verify(token)).isEmpty();
+    }
+
+    @Test
+    void disabled_mintsUuid_andSignedShapeIsIgnored() {
+        TokenSigner signer = new TokenSigner(false, "", "", Duration.ofDays(30), false, false, CLOCK);
+
+        assertThat(signer.mint("bWFpbA==", "promo", "bf", NOW)).hasSize(36);
+        assertThat(signer.isSigned("k1.a.b")).isFalse();
+    }
+
+    @Test
+    void tooLongForColumn_fallsBackToUuid() {
+        TokenSigner signer = signer("k1", K1);
+
+        assertThat(signer.mint("x".repeat(300), "promo", "bf", NOW)).hasSize(36);
+    }
+
+    @Test
+    void unknownActiveKey_failsAtStartup() {
+        assertThatThrownBy(() -> signer("k9", K1)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static TokenSigner signer(String active, String keys) {
+        return new TokenSigner(true, active, keys, Duration.ofDays(30), false, false, CLOCK);
+    }
+
+    private static String secret(int seed) {
+        byte[] b = new byte[32];
+        java.util.Arrays.fill(b, (byte) seed);
+        return Base64.getEncoder().encodeToString(b);
+    }
+}
@@ -0,0 +1,10 @@
+-- VARCHAR_IGNORECASE stands in for SQL Server's default case-insensitive collation
+CREATE TABLE USER_SUBSCRIPTION (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    mail_base64 VARCHAR_IGNORECASE(512) NOT NULL,
+    category VARCHAR_IGNORECASE(100) NOT NULL,
+    subcategory VARCHAR_IGNORECASE(100) NOT NULL,
+    date_subscribed TIMESTAMP(6) NOT NULL,
+    lookup_key BIGINT
+);
+CREATE INDEX IX_USER_SUBSCRIPTION_LOOKUP_KEY ON USER_SUBSCRIPTION (lookup_key);
@@ -0,0 +1,15 @@
+-- VARCHAR_IGNORECASE stands in for SQL Server's default case-insensitive collation
+CREATE TABLE USERS_TOKEN (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    mail_base64 VARCHAR_IGNORECASE(512) NOT NULL,
+    token VARCHAR(256),
+    token_bin BINARY(16),
+    date_sent TIMESTAMP(6) NOT NULL,
+    category VARCHAR_IGNORECASE(100) NOT NULL,
+    subcategory VARCHAR_IGNORECASE(100) NOT NULL,
+    lookup_key BIGINT
+);
+CREATE INDEX IX_USERS_TOKEN_DATE_SENT ON USERS_TOKEN (date_sent);
+CREATE INDEX IX_USERS_TOKEN_LOOKUP_KEY ON USERS_TOKEN (lookup_key, date_sent);
+CREATE UNIQUE INDEX IX_USERS_TOKEN_TOKEN ON USERS_TOKEN (token);
+CREATE UNIQUE INDEX IX_USERS_TOKEN_TOKEN_BIN ON USERS_TOKEN (token_bin);